@@ -4,6 +4,7 @@ import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Properties;
 import java.io.FileInputStream;
@@ -33,31 +34,43 @@ import org.json.JSONArray;
  * 
  * 1. Look for an immediate winning move
  * 2. Block opponent's winning move
- * 3. Look for diagonal threats (both creating them and blocking them)
+ * 3. Look for double threats in any direction (both creating them and blocking
+ *    them), preferring threats on the right odd/even row
  * 4. Score all possible moves based on strategic value
  *    - Prefer center columns
  *    - Connect with existing pieces
  *    - Block opponent setups
  * 
  * The Smart AI doesn't use any external libraries for decision making - it's
- * entirely implemented in this file with custom algorithms. The recent
- * improvements focus on enhancing diagonal threat detection, which is a common
- * blind spot for Connect 4 players.
+ * entirely implemented in this file with custom algorithms.
+ *
+ * The board's size comes from the array it is given, so the same AI plays
+ * larger boards too; the line length to win is set when it is created.
  */
 public class ChatGPTAI {
     private static final String API_URL = "https://api.openai.com/v1/chat/completions";
+    private static final String MODEL = "gpt-3.5-turbo";
     private final String apiKey;
+    // Pieces in a row needed to win
+    private final int connect;
     private boolean usingChatGPT = true;
 
     public ChatGPTAI() {
+        this(4);
+    }
+
+    public ChatGPTAI(int connect) {
+        this.connect = connect;
         this.apiKey = loadApiKey();
         if (apiKey == null) {
-            System.out.println("⚠️ WARNING: No API key found. Using smart strategy only.");
+            Log.warn("⚠️ WARNING: No API key found. Using smart strategy only.");
             usingChatGPT = false;
         } else {
-            System.out.println("✅ API KEY LOADED SUCCESSFULLY (Length: " + apiKey.length() + " characters)");
-            System.out.println("   First 5 chars: " + apiKey.substring(0, Math.min(5, apiKey.length())));
-            System.out.println("   Last 5 chars: " + apiKey.substring(Math.max(0, apiKey.length() - 5)));
+            Log.info("✅ API KEY LOADED SUCCESSFULLY (Length: {} characters)", apiKey.length());
+            if (Log.isDebugEnabled()) {
+                Log.debug("First 5 chars: {}", apiKey.substring(0, Math.min(5, apiKey.length())));
+                Log.debug("Last 5 chars: {}", apiKey.substring(Math.max(0, apiKey.length() - 5)));
+            }
         }
     }
 
@@ -72,11 +85,11 @@ public class ChatGPTAI {
                     return key.trim().replaceAll("\\s+", ""); // Remove any whitespace
                 }
             } catch (Exception e) {
-                System.out.println("⚠️ Could not load API key with Properties: " + e.getMessage());
+                Log.warn("⚠️ Could not load API key with Properties: {}", e.getMessage());
             }
             
             // If that fails, try reading file directly
-            System.out.println("🔄 Attempting alternative API key loading method...");
+            Log.info("🔄 Attempting alternative API key loading method...");
             File envFile = new File("../.env");
             if (envFile.exists()) {
                 List<String> lines = Files.readAllLines(Paths.get("../.env"));
@@ -94,56 +107,70 @@ public class ChatGPTAI {
                 
                 String key = keyBuilder.toString().trim();
                 if (!key.isEmpty()) {
-                    System.out.println("📝 API key loaded from .env file with direct reading method");
+                    Log.info("📝 API key loaded from .env file with direct reading method");
                     return key.replaceAll("\\s+", ""); // Remove any whitespace
                 }
             } else {
-                System.out.println("❌ .env file not found at: " + envFile.getAbsolutePath());
+                Log.warn("❌ .env file not found at: {}", envFile.getAbsolutePath());
             }
             
-            System.out.println("❌ Failed to load API key from .env file");
+            Log.warn("❌ Failed to load API key from .env file");
             return null;
         } catch (Exception e) {
-            System.err.println("❌ Failed to load API key: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("❌ Failed to load API key", e);
             return null;
         }
     }
 
     public int getMove(int[][] board) {
         if (!usingChatGPT) {
-            System.out.println("\n🧠 USING SMART AI STRATEGY (ChatGPT disabled)\n");
+            Log.debug("🧠 USING SMART AI STRATEGY (ChatGPT disabled)");
             return getStrategicMove(board);
         }
 
+        LlmRequestEvent event = new LlmRequestEvent();
+        event.begin();
         try {
             String boardState = convertBoardToInput(board);
-            String prompt = createPrompt(boardState);
+            String prompt = createPrompt(boardState, board.length, board[0].length);
             
-            System.out.println("\n🔄 ATTEMPTING TO USE CHATGPT API...\n");
-            String response = callChatGPT(prompt);
-            int move = processResponse(response);
-            System.out.println("\n✅ MOVE SUCCESSFULLY MADE BY CHATGPT API\n");
+            Log.debug("🔄 ATTEMPTING TO USE CHATGPT API...");
+            String response = callChatGPT(prompt, event);
+            int move = processResponse(response, board[0].length);
+            if (move == -1) {
+                Log.warn("⚠️ INVALID CHATGPT RESPONSE - USING SMART AI INSTEAD");
+                event.fallback = true;
+                return getStrategicMove(board);
+            }
+            Log.debug("✅ MOVE SUCCESSFULLY MADE BY CHATGPT API");
             return move;
         } catch (Exception e) {
-            System.err.println("ChatGPT API call failed: " + e.getMessage());
-            System.out.println("\n❌ API CALL FAILED - FALLING BACK TO SMART AI STRATEGY\n");
+            Log.warn("ChatGPT API call failed: {}", e.getMessage());
+            Log.warn("❌ API CALL FAILED - FALLING BACK TO SMART AI STRATEGY");
             usingChatGPT = false;
+            event.fallback = true;
             return getStrategicMove(board);
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.model = MODEL;
+                event.commit();
+            }
         }
     }
 
-    private String createPrompt(String boardState) {
+    private String createPrompt(String boardState, int rows, int cols) {
         return String.format(
-            "You are playing Connect 4. The current board state is: %s\n" +
-            "Analyze the board and return only the column number (0-6) where you would place your piece.\n" +
+            "You are playing Connect %d on a board of %d columns and %d rows. " +
+            "The current board state, row by row from the top, is: %s\n" +
+            "Analyze the board and return only the column number (0-%d) where you would place your piece.\n" +
             "Consider winning moves, blocking opponent's winning moves, and creating opportunities.\n" +
             "Return only the number, nothing else.",
-            boardState
+            connect, cols, rows, boardState, cols - 1
         );
     }
 
-    private String callChatGPT(String prompt) throws Exception {
+    private String callChatGPT(String prompt, LlmRequestEvent event) throws Exception {
         URL url = new URL(API_URL);
         HttpURLConnection conn = (HttpURLConnection) url.openConnection();
         conn.setRequestMethod("POST");
@@ -152,7 +179,7 @@ public class ChatGPTAI {
         conn.setDoOutput(true);
 
         JSONObject requestBody = new JSONObject();
-        requestBody.put("model", "gpt-3.5-turbo");
+        requestBody.put("model", MODEL);
         
         JSONArray messages = new JSONArray();
         JSONObject message = new JSONObject();
@@ -164,9 +191,11 @@ public class ChatGPTAI {
         requestBody.put("temperature", 0.2);
         requestBody.put("max_tokens", 100);
 
-        System.out.println("📤 Sending request to ChatGPT API...");
-        System.out.println("🔑 Using API key starting with: " + apiKey.substring(0, Math.min(10, apiKey.length())) + "...");
-        System.out.println("📝 Prompt: " + prompt);
+        Log.debug("📤 Sending request to ChatGPT API...");
+        if (Log.isDebugEnabled()) {
+            Log.debug("🔑 Using API key starting with: {}...", apiKey.substring(0, Math.min(10, apiKey.length())));
+        }
+        Log.debug("📝 Prompt: {}", prompt);
 
         try (OutputStream os = conn.getOutputStream()) {
             byte[] input = requestBody.toString().getBytes("utf-8");
@@ -174,7 +203,8 @@ public class ChatGPTAI {
         }
 
         int responseCode = conn.getResponseCode();
-        System.out.println("🔢 API Response Code: " + responseCode);
+        event.statusCode = responseCode;
+        Log.debug("🔢 API Response Code: {}", responseCode);
         
         if (responseCode != 200) {
             String errorResponse = "";
@@ -184,7 +214,7 @@ public class ChatGPTAI {
                     errorResponse += responseLine;
                 }
             }
-            System.err.println("❌ API ERROR RESPONSE: " + errorResponse);
+            Log.warn("❌ API ERROR RESPONSE: {}", errorResponse);
             
             // Provide more detailed error information based on response code
             switch (responseCode) {
@@ -207,11 +237,11 @@ public class ChatGPTAI {
             }
         }
 
-        System.out.println("✅ Received response from ChatGPT API");
+        Log.debug("✅ Received response from ChatGPT API");
         return response.toString();
     }
 
-    private int processResponse(String response) {
+    private int processResponse(String response, int cols) {
         try {
             JSONObject jsonResponse = new JSONObject(response);
             String content = jsonResponse.getJSONArray("choices")
@@ -220,18 +250,17 @@ public class ChatGPTAI {
                                       .getString("content")
                                       .trim();
             
-            System.out.println("ChatGPT suggested move: " + content);
+            Log.debug("ChatGPT suggested move: {}", content);
             
             int move = Integer.parseInt(content);
-            if (move >= 0 && move <= 6) {
+            if (move >= 0 && move < cols) {
                 return move;
             }
         } catch (Exception e) {
-            System.err.println("Invalid response format: " + response);
+            Log.warn("Invalid response format: {}", response);
         }
         
-        System.out.println("\n⚠️ INVALID CHATGPT RESPONSE - USING SMART AI INSTEAD\n");
-        return getStrategicMove(null);
+        return -1;
     }
 
     private String convertBoardToInput(int[][] board) {
@@ -245,16 +274,17 @@ public class ChatGPTAI {
     }
 
     private int getStrategicMove(int[][] board) {
-        System.out.println("SMART AI STRATEGY: Analyzing board position...");
+        Log.debug("SMART AI STRATEGY: Analyzing board position...");
+        int cols = board[0].length;
         
         // First, check for winning moves
-        for (int col = 0; col < 7; col++) {
+        for (int col = 0; col < cols; col++) {
             if (isValidMove(board, col)) {
                 int row = getNextRow(board, col);
                 board[row][col] = 2; // Try AI's move
                 if (checkWin(board, row, col)) {
                     board[row][col] = 0; // Undo move
-                    System.out.println("SMART AI STRATEGY: Found winning move at column " + col);
+                    Log.debug("SMART AI STRATEGY: Found winning move at column {}", col);
                     return col;
                 }
                 board[row][col] = 0; // Undo move
@@ -262,31 +292,31 @@ public class ChatGPTAI {
         }
 
         // Then, block opponent's winning moves
-        for (int col = 0; col < 7; col++) {
+        for (int col = 0; col < cols; col++) {
             if (isValidMove(board, col)) {
                 int row = getNextRow(board, col);
                 board[row][col] = 1; // Try opponent's move
                 if (checkWin(board, row, col)) {
                     board[row][col] = 0; // Undo move
-                    System.out.println("SMART AI STRATEGY: Blocking opponent's win at column " + col);
+                    Log.debug("SMART AI STRATEGY: Blocking opponent's win at column {}", col);
                     return col;
                 }
                 board[row][col] = 0; // Undo move
             }
         }
 
-        // Check for potential diagonal threats from player with 3 in a row (highest priority for diagonal threats)
-        int blockDiagonalCol = findDiagonalThreats(board, 1);
-        if (blockDiagonalCol != -1) {
-            System.out.println("SMART AI STRATEGY: Blocking diagonal threat at column " + blockDiagonalCol);
-            return blockDiagonalCol;
+        // Check for double threats the player could set up next move, in any direction
+        int blockThreatCol = findThreats(board, 1, 2, 1);
+        if (blockThreatCol != -1) {
+            Log.debug("SMART AI STRATEGY: Blocking threat at column {}", blockThreatCol);
+            return blockThreatCol;
         }
 
-        // Check for potential diagonal opportunities for AI with 3 in a row
-        int createDiagonalCol = findDiagonalThreats(board, 2);
-        if (createDiagonalCol != -1) {
-            System.out.println("SMART AI STRATEGY: Creating diagonal opportunity at column " + createDiagonalCol);
-            return createDiagonalCol;
+        // Check for double threats the AI can set up
+        int createThreatCol = findThreats(board, 2, 2, 1);
+        if (createThreatCol != -1) {
+            Log.debug("SMART AI STRATEGY: Creating threat at column {}", createThreatCol);
+            return createThreatCol;
         }
 
         // Now look for 2 in a row setups with higher priority on diagonals
@@ -294,7 +324,7 @@ public class ChatGPTAI {
         int bestScore = -1;
         
         // Analyze each possible move
-        for (int col = 0; col < 7; col++) {
+        for (int col = 0; col < cols; col++) {
             if (isValidMove(board, col)) {
                 int row = getNextRow(board, col);
                 
@@ -306,7 +336,7 @@ public class ChatGPTAI {
                 int score = consecutive;
                 
                 // Prefer center column
-                if (col == 3) score += 2;
+                if (col == cols / 2) score += 2;
                 
                 // Check if this move blocks opponent's potential setup
                 board[row][col] = 0;  // Undo move
@@ -317,15 +347,15 @@ public class ChatGPTAI {
                 board[row][col] = 1;  // Simulate player move here
                 int diagonalThreatUpRight = countDirection(board, row, col, -1, 1) + countDirection(board, row, col, 1, -1) + 1;
                 int diagonalThreatUpLeft = countDirection(board, row, col, -1, -1) + countDirection(board, row, col, 1, 1) + 1;
-                if (diagonalThreatUpRight >= 3 || diagonalThreatUpLeft >= 3) {
+                if (diagonalThreatUpRight >= connect - 1 || diagonalThreatUpLeft >= connect - 1) {
                     score += 10;  // Very high priority to blocking diagonal threats
                     blocksDiagonal = true;
-                    System.out.println("SMART AI STRATEGY: Detected potential diagonal setup at column " + col);
+                    Log.debug("SMART AI STRATEGY: Detected potential diagonal setup at column {}", col);
                 }
                 
                 // Check overall opponent power at this position
                 int opponentScore = countConsecutive(board, row, col);
-                if (opponentScore >= 3 && !blocksDiagonal) score += 5;  // Higher priority to blocking potential wins
+                if (opponentScore >= connect - 1 && !blocksDiagonal) score += 5;  // Higher priority to blocking potential wins
                 
                 board[row][col] = 0;  // Undo move
                 
@@ -337,35 +367,38 @@ public class ChatGPTAI {
         }
         
         if (bestCol != -1) {
-            System.out.println("SMART AI STRATEGY: Creating opportunity or blocking setup at column " + bestCol + " (score: " + bestScore + ")");
+            if (Log.isDebugEnabled()) {
+                Log.debug("SMART AI STRATEGY: Creating opportunity or blocking setup at column {} (score: {})", bestCol, bestScore);
+            }
             return bestCol;
         }
 
         // If no strategic moves, choose randomly from available columns
         List<Integer> availableColumns = new ArrayList<>();
-        for (int col = 0; col < 7; col++) {
+        for (int col = 0; col < cols; col++) {
             if (isValidMove(board, col)) {
                 availableColumns.add(col);
             }
         }
         
         if (availableColumns.isEmpty()) {
-            System.out.println("SMART AI STRATEGY: No valid moves available!");
+            Log.debug("SMART AI STRATEGY: No valid moves available!");
             return -1;
         }
         
         // Prefer the center columns to edge columns for random choices
-        int[] columnPreference = {3, 2, 4, 1, 5, 0, 6}; // Center to edges
-        for (int preferredCol : columnPreference) {
+        for (int i = 0; i < cols; i++) {
+            // Center to edges: 3, 2, 4, 1, 5, 0, 6 on the standard board
+            int preferredCol = cols / 2 + (i % 2 == 1 ? -(i + 1) / 2 : i / 2);
             if (availableColumns.contains(preferredCol)) {
-                System.out.println("SMART AI STRATEGY: No clear strategic move, choosing preferred column " + preferredCol);
+                Log.debug("SMART AI STRATEGY: No clear strategic move, choosing preferred column {}", preferredCol);
                 return preferredCol;
             }
         }
         
         int randomIndex = (int) (Math.random() * availableColumns.size());
         int randomCol = availableColumns.get(randomIndex);
-        System.out.println("SMART AI STRATEGY: No clear strategic move, choosing random column " + randomCol);
+        Log.debug("SMART AI STRATEGY: No clear strategic move, choosing random column {}", randomCol);
         return randomCol;
     }
 
@@ -374,7 +407,7 @@ public class ChatGPTAI {
     }
 
     private int getNextRow(int[][] board, int col) {
-        for (int row = 5; row >= 0; row--) {
+        for (int row = board.length - 1; row >= 0; row--) {
             if (board[row][col] == 0) {
                 return row;
             }
@@ -382,54 +415,9 @@ public class ChatGPTAI {
         return -1;
     }
 
+    // Only lines through the new piece can have become a win
     private boolean checkWin(int[][] board, int row, int col) {
-        int player = board[row][col];
-        
-        // Check horizontal
-        for (int c = 0; c <= 3; c++) {
-            if (board[row][c] == player && 
-                board[row][c+1] == player && 
-                board[row][c+2] == player && 
-                board[row][c+3] == player) {
-                return true;
-            }
-        }
-        
-        // Check vertical
-        for (int r = 0; r <= 2; r++) {
-            if (board[r][col] == player && 
-                board[r+1][col] == player && 
-                board[r+2][col] == player && 
-                board[r+3][col] == player) {
-                return true;
-            }
-        }
-        
-        // Check diagonal (positive slope)
-        for (int r = 0; r <= 2; r++) {
-            for (int c = 0; c <= 3; c++) {
-                if (board[r][c] == player && 
-                    board[r+1][c+1] == player && 
-                    board[r+2][c+2] == player && 
-                    board[r+3][c+3] == player) {
-                    return true;
-                }
-            }
-        }
-        
-        // Check diagonal (negative slope)
-        for (int r = 3; r <= 5; r++) {
-            for (int c = 0; c <= 3; c++) {
-                if (board[r][c] == player && 
-                    board[r-1][c+1] == player && 
-                    board[r-2][c+2] == player && 
-                    board[r-3][c+3] == player) {
-                    return true;
-                }
-            }
-        }
-        
-        return false;
+        return countConsecutive(board, row, col) >= connect;
     }
 
     private int countConsecutive(int[][] board, int row, int col) {
@@ -469,7 +457,7 @@ public class ChatGPTAI {
         int c = col + colDir;
         
         // Count consecutive pieces of the same player
-        while (r >= 0 && r < 6 && c >= 0 && c < 7 && board[r][c] == player) {
+        while (r >= 0 && r < board.length && c >= 0 && c < board[0].length && board[r][c] == player) {
             count++;
             r += rowDir;
             c += colDir;
@@ -478,117 +466,102 @@ public class ChatGPTAI {
         return count;
     }
 
-    // Finds if a player can create a potential diagonal threat in the next move
-    private int findDiagonalThreats(int[][] board, int player) {
-        // Check diagonals (positive slope)
-        for (int r = 0; r <= 5; r++) {
-            for (int c = 0; c <= 6; c++) {
-                int count = 0;
-                
-                // Count diagonal up-right (↗)
-                if (r <= 2 && c <= 3) {
-                    for (int i = 0; i < 3; i++) {
-                        if (board[r+i][c+i] == player) {
-                            count++;
-                        } else if (board[r+i][c+i] != 0) {
-                            count = -1; // Blocked by opponent
-                            break;
-                        }
-                    }
-                    
-                    if (count == 2) {
-                        // Check if we can place a piece to complete a threat
-                        for (int i = 0; i < 3; i++) {
-                            int checkRow = r+i;
-                            int checkCol = c+i;
-                            if (board[checkRow][checkCol] == 0) {
-                                // Make sure there's either a piece below or it's the bottom row
-                                if (checkRow == 5 || board[checkRow+1][checkCol] != 0) {
-                                    return checkCol;
-                                }
-                            }
-                        }
-                    }
+    // Horizontal, vertical and both diagonals
+    private static final int[][] DIRECTIONS = {{0, 1}, {1, 0}, {1, 1}, {-1, 1}};
+    private static final int DOUBLE_THREAT_SCORE = 100;
 
-                    // Also check for a potential 4th piece to complete diagonal win
-                    if (count == 2 && r+3 < 6 && c+3 < 7 && board[r+3][c+3] == 0) {
-                        // Check if the position is playable (has support below)
-                        if (r+3 == 5 || board[r+4][c+3] != 0) {
-                            return c+3;
-                        }
-                    }
+    // Finds the move that gives a player the most new threats (all but one
+    // cell of a window of connect cells, the last one empty) in any direction,
+    // if it makes a double threat: two or more threats from one move. Single
+    // threats are left to the strategic scoring. Threats on the player's own
+    // parity row (odd rows from the bottom for player 1, even rows for player
+    // 2) score higher because those are the ones that win the endgame.
+    // dropped is the piece that will actually be played in the cell (the AI's,
+    // when it takes the player's threat cell) and winsAbove the side that
+    // must not get a win on the cell above it.
+    private int findThreats(int[][] board, int player, int dropped, int winsAbove) {
+        int rows = board.length;
+        int cols = board[0].length;
+        int bestCol = -1;
+        int bestScore = 0;
+
+        for (int col = 0; col < cols; col++) {
+            if (!isValidMove(board, col)) {
+                continue;
+            }
+            int row = getNextRow(board, col);
+
+            // Don't set up a threat by giving the opponent the cell above
+            if (row > 0) {
+                board[row][col] = dropped;
+                board[row - 1][col] = winsAbove;
+                boolean givesWin = checkWin(board, row - 1, col);
+                board[row - 1][col] = 0;
+                board[row][col] = 0;
+                if (givesWin) {
+                    continue;
                 }
-                
-                // Count diagonal down-right (↘)
-                count = 0;
-                if (r >= 3 && c <= 3) {
-                    for (int i = 0; i < 3; i++) {
-                        if (board[r-i][c+i] == player) {
+            }
+
+            board[row][col] = player;
+            BitSet threatCells = new BitSet(rows * cols);
+            for (int[] dir : DIRECTIONS) {
+                // Every window of connect cells in this direction that contains (row, col)
+                for (int offset = 0; offset < connect; offset++) {
+                    int startRow = row - offset * dir[0];
+                    int startCol = col - offset * dir[1];
+                    int endRow = startRow + (connect - 1) * dir[0];
+                    int endCol = startCol + (connect - 1) * dir[1];
+                    if (startRow < 0 || startRow >= rows || endRow < 0 || endRow >= rows || startCol < 0
+                            || endCol >= cols) {
+                        continue;
+                    }
+
+                    int count = 0;
+                    int emptyCell = -1;
+                    for (int i = 0; i < connect; i++) {
+                        int cell = board[startRow + i * dir[0]][startCol + i * dir[1]];
+                        if (cell == player) {
                             count++;
-                        } else if (board[r-i][c+i] != 0) {
-                            count = -1; // Blocked by opponent
+                        } else if (cell == 0) {
+                            emptyCell = (startRow + i * dir[0]) * cols + startCol + i * dir[1];
+                        } else {
+                            count = -1;
                             break;
                         }
                     }
-                    
-                    if (count == 2) {
-                        // Check if we can place a piece to complete a threat
-                        for (int i = 0; i < 3; i++) {
-                            int checkRow = r-i;
-                            int checkCol = c+i;
-                            if (board[checkRow][checkCol] == 0) {
-                                // Make sure there's either a piece below or it's the bottom row
-                                if (checkRow == 5 || board[checkRow+1][checkCol] != 0) {
-                                    return checkCol;
-                                }
-                            }
-                        }
-                    }
-
-                    // Also check for a potential 4th piece to complete diagonal win
-                    if (count == 2 && r-3 >= 0 && c+3 < 7 && board[r-3][c+3] == 0) {
-                        // Check if the position is playable (has support below)
-                        if (r-3 == 5 || board[r-2][c+3] != 0) {
-                            return c+3;
-                        }
+                    if (count == connect - 1 && emptyCell != -1) {
+                        threatCells.set(emptyCell);
                     }
                 }
             }
-        }
-        
-        // Additional check for 3-in-a-row diagonals that need immediate blocking
-        for (int r = 0; r < 6; r++) {
-            for (int c = 0; c < 7; c++) {
-                if (board[r][c] == player) {
-                    // Check up-right diagonal
-                    if (r >= 2 && c <= 3) {
-                        if (board[r-1][c+1] == player && board[r-2][c+2] == player) {
-                            // Check if fourth position is open and playable
-                            if (r-3 >= 0 && c+3 < 7 && board[r-3][c+3] == 0) {
-                                if (r-3 == 5 || board[r-2][c+3] != 0) {
-                                    System.out.println("SMART AI STRATEGY: Detected 3-in-a-row diagonal threat at column " + (c+3));
-                                    return c+3;
-                                }
-                            }
-                        }
-                    }
-                    
-                    // Check down-right diagonal
-                    if (r <= 2 && c <= 3) {
-                        if (board[r+1][c+1] == player && board[r+2][c+2] == player) {
-                            // Check if fourth position is open and playable
-                            if (r+3 < 6 && c+3 < 7 && board[r+3][c+3] == 0) {
-                                if (r+3 == 5 || board[r+4][c+3] != 0) {
-                                    System.out.println("SMART AI STRATEGY: Detected 3-in-a-row diagonal threat at column " + (c+3));
-                                    return c+3;
-                                }
-                            }
-                        }
-                    }
+            board[row][col] = 0;
+
+            int threats = threatCells.cardinality();
+            if (threats == 0) {
+                continue;
+            }
+
+            int score = threats >= 2 ? DOUBLE_THREAT_SCORE : 10;
+            for (int cell = threatCells.nextSetBit(0); cell >= 0; cell = threatCells.nextSetBit(cell + 1)) {
+                int threatRow = cell / cols;
+                boolean oddRow = (rows - threatRow) % 2 == 1;
+                if (oddRow == (player == 1)) {
+                    score += 5;
                 }
             }
+            if (col == cols / 2) score += 1;
+
+            if (score > bestScore) {
+                bestScore = score;
+                bestCol = col;
+            }
         }
-        
-        return -1;
+
+        if (bestScore < DOUBLE_THREAT_SCORE) {
+            return -1;
+        }
+        Log.debug("SMART AI STRATEGY: Detected double threat for player {} at column {}", player, bestCol);
+        return bestCol;
     }
 } 
\ No newline at end of file
@@ -1,9 +1,11 @@
 public class ChatGPTGame {
-    private static final int ROWS = 6;
-    private static final int COLS = 7;
     private static final int EMPTY = 0;
     private static final int PLAYER = 1;
     private static final int AI = 2;
+    private final int rows;
+    private final int cols;
+    // Pieces in a row needed to win
+    private final int connect;
     private int[][] board;
     private int currentPlayer;
     private boolean gameOver;
@@ -12,33 +14,40 @@ public class ChatGPTGame {
     private ChatGPTAI ai;
 
     public ChatGPTGame() {
-        board = new int[ROWS][COLS];
+        this(6, 7, 4);
+    }
+
+    public ChatGPTGame(int rows, int cols, int connect) {
+        this.rows = rows;
+        this.cols = cols;
+        this.connect = connect;
+        board = new int[rows][cols];
         currentPlayer = 1;
         gameOver = false;
         winner = 0;
         winningPositions = null;
-        ai = new ChatGPTAI();
+        ai = new ChatGPTAI(connect);
     }
 
     public boolean makeMove(int col) {
-        if (gameOver || col < 0 || col >= COLS) {
-            System.out.println("Move rejected - Game over: " + gameOver + " or invalid column: " + col);
+        if (gameOver || col < 0 || col >= cols) {
+            Log.debug("Move rejected - Game over: {} or invalid column: {}", gameOver, col);
             return false;
         }
 
-        System.out.println("Attempting move in column " + col + " by player " + currentPlayer);
+        Log.debug("Attempting move in column {} by player {}", col, currentPlayer);
         
         // Find the lowest empty row in the selected column
-        for (int row = ROWS - 1; row >= 0; row--) {
+        for (int row = rows - 1; row >= 0; row--) {
             if (board[row][col] == 0) {
                 board[row][col] = currentPlayer;
-                System.out.println("Placed piece at row " + row + ", column " + col);
+                Log.debug("Placed piece at row {}, column {}", row, col);
                 
                 // Check for win after making the move
                 if (checkWin(row, col)) {
                     gameOver = true;
                     winner = currentPlayer;
-                    System.out.println("GAME OVER: Player " + currentPlayer + " wins!");
+                    Log.info("GAME OVER: Player {} wins!", currentPlayer);
                     return true;
                 }
                 
@@ -46,86 +55,56 @@ public class ChatGPTGame {
                 if (isBoardFull()) {
                     gameOver = true;
                     winner = 0; // 0 indicates a draw
-                    System.out.println("GAME OVER: It's a draw! The board is full.");
+                    Log.info("GAME OVER: It's a draw! The board is full.");
                     return true;
                 }
                 
                 // Switch players only if no win or draw
                 int previousPlayer = currentPlayer;
                 currentPlayer = currentPlayer == 1 ? 2 : 1;
-                System.out.println("Switching player from " + previousPlayer + " to " + currentPlayer);
+                Log.debug("Switching player from {} to {}", previousPlayer, currentPlayer);
                 return true;
             }
         }
-        System.out.println("Move rejected - column " + col + " is full.");
+        Log.debug("Move rejected - column {} is full.", col);
         return false;
     }
 
     private boolean checkWin(int row, int col) {
         int player = board[row][col];
-        
-        // Check horizontal
-        for (int c = 0; c <= COLS - 4; c++) {
-            if (board[row][c] == player &&
-                board[row][c + 1] == player &&
-                board[row][c + 2] == player &&
-                board[row][c + 3] == player) {
-                winningPositions = new int[][] {
-                    {row, c}, {row, c + 1}, {row, c + 2}, {row, c + 3}
-                };
-                return true;
+        // Horizontal, vertical, diagonal (positive slope), diagonal (negative slope)
+        int[][] directions = {{0, 1}, {1, 0}, {1, 1}, {-1, 1}};
+        for (int[] dir : directions) {
+            // Walk back to the first piece of the run through (row, col), then forward
+            int r = row;
+            int c = col;
+            while (isPlayerAt(r - dir[0], c - dir[1], player)) {
+                r -= dir[0];
+                c -= dir[1];
             }
-        }
-        
-        // Check vertical
-        for (int r = 0; r <= ROWS - 4; r++) {
-            if (board[r][col] == player &&
-                board[r + 1][col] == player &&
-                board[r + 2][col] == player &&
-                board[r + 3][col] == player) {
-                winningPositions = new int[][] {
-                    {r, col}, {r + 1, col}, {r + 2, col}, {r + 3, col}
-                };
-                return true;
+            int length = 0;
+            while (isPlayerAt(r + length * dir[0], c + length * dir[1], player)) {
+                length++;
             }
-        }
-        
-        // Check diagonal (positive slope)
-        for (int r = 0; r <= ROWS - 4; r++) {
-            for (int c = 0; c <= COLS - 4; c++) {
-                if (board[r][c] == player &&
-                    board[r + 1][c + 1] == player &&
-                    board[r + 2][c + 2] == player &&
-                    board[r + 3][c + 3] == player) {
-                    winningPositions = new int[][] {
-                        {r, c}, {r + 1, c + 1}, {r + 2, c + 2}, {r + 3, c + 3}
-                    };
-                    return true;
-                }
-            }
-        }
-        
-        // Check diagonal (negative slope)
-        for (int r = 3; r < ROWS; r++) {
-            for (int c = 0; c <= COLS - 4; c++) {
-                if (board[r][c] == player &&
-                    board[r - 1][c + 1] == player &&
-                    board[r - 2][c + 2] == player &&
-                    board[r - 3][c + 3] == player) {
-                    winningPositions = new int[][] {
-                        {r, c}, {r - 1, c + 1}, {r - 2, c + 2}, {r - 3, c + 3}
-                    };
-                    return true;
+            if (length >= connect) {
+                // The first connect pieces of the run
+                winningPositions = new int[connect][];
+                for (int i = 0; i < connect; i++) {
+                    winningPositions[i] = new int[] {r + i * dir[0], c + i * dir[1]};
                 }
+                return true;
             }
         }
-        
         return false;
     }
 
+    private boolean isPlayerAt(int row, int col, int player) {
+        return row >= 0 && row < rows && col >= 0 && col < cols && board[row][col] == player;
+    }
+
     // Check if the board is full (draw condition)
     private boolean isBoardFull() {
-        for (int col = 0; col < COLS; col++) {
+        for (int col = 0; col < cols; col++) {
             if (board[0][col] == 0) {
                 return false; // If any top row cell is empty, board is not full
             }
@@ -138,7 +117,7 @@ public class ChatGPTGame {
     }
 
     public void reset() {
-        board = new int[ROWS][COLS];
+        board = new int[rows][cols];
         currentPlayer = 1;
         gameOver = false;
         winner = 0;
@@ -22,7 +22,7 @@ public class ChatGPTGameServer {
         server.createContext("/ai-move", new AIMoveHandler());
 
         server.start();
-        System.out.println("ChatGPT Game Server started on port " + PORT);
+        Log.info("ChatGPT Game Server started on port {}", PORT);
     }
 
     private class MoveHandler implements HttpHandler {
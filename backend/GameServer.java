@@ -14,12 +14,12 @@ public class GameServer {
 
     public GameServer() {
         game = new ChatGPTGame();
-        System.out.println("\n--------------------------------------------------");
-        System.out.println("🎮 CONNECT 4 GAME SERVER");
-        System.out.println("--------------------------------------------------");
-        System.out.println("API Status: The system will attempt to use ChatGPT API first");
-        System.out.println("           If API call fails, it will fall back to Smart AI");
-        System.out.println("--------------------------------------------------\n");
+        Log.info("--------------------------------------------------");
+        Log.info("🎮 CONNECT 4 GAME SERVER");
+        Log.info("--------------------------------------------------");
+        Log.info("API Status: The system will attempt to use ChatGPT API first");
+        Log.info("If API call fails, it will fall back to Smart AI");
+        Log.info("--------------------------------------------------");
     }
 
     public void start() throws IOException {
@@ -78,7 +78,7 @@ public class GameServer {
 
         server.setExecutor(null);
         server.start();
-        System.out.println("Server started on port " + PORT);
+        Log.info("Server started on port {}", PORT);
     }
 
     private String getBoardState() {
@@ -116,30 +116,30 @@ public class GameServer {
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             if (exchange.getRequestMethod().equals("OPTIONS")) {
-                System.out.println("OPTIONS request received for /move");
+                Log.debug("OPTIONS request received for /move");
                 sendResponse(exchange, "", 200);
                 return;
             }
             if (!exchange.getRequestMethod().equals("POST")) {
-                System.out.println("Invalid method for /move: " + exchange.getRequestMethod());
+                Log.debug("Invalid method for /move: {}", exchange.getRequestMethod());
                 sendResponse(exchange, "Method not allowed", 405);
                 return;
             }
             
-            System.out.println("\n👤 Player move request received");
+            Log.debug("👤 Player move request received");
             String requestBody = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
-            System.out.println("Request body: " + requestBody);
+            Log.debug("Request body: {}", requestBody);
             
             String column = URLDecoder.decode(requestBody.split("=")[1], StandardCharsets.UTF_8);
-            System.out.println("Player column selected: " + column);
+            Log.debug("Player column selected: {}", column);
             
-            System.out.println("Game status before move - Game over: " + game.isGameOver());
+            Log.debug("Game status before move - Game over: {}", game.isGameOver());
             boolean validMove = game.makeMove(Integer.parseInt(column));
-            System.out.println("Move valid: " + validMove);
-            System.out.println("Game status after move - Game over: " + game.isGameOver() + ", Winner: " + game.getWinner());
+            Log.debug("Move valid: {}", validMove);
+            Log.debug("Game status after move - Game over: {}, Winner: {}", game.isGameOver(), game.getWinner());
             
             String response = getBoardState();
-            System.out.println("Response: " + response);
+            Log.debug("Response: {}", response);
             
             exchange.getResponseHeaders().set("Content-Type", "text/plain");
             exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
@@ -150,7 +150,7 @@ public class GameServer {
             try (OutputStream os = exchange.getResponseBody()) {
                 os.write(response.getBytes());
             }
-            System.out.println("Player move response sent");
+            Log.debug("Player move response sent");
         }
     }
 
@@ -158,39 +158,39 @@ public class GameServer {
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             if (exchange.getRequestMethod().equals("OPTIONS")) {
-                System.out.println("OPTIONS request received for /ai-move");
+                Log.debug("OPTIONS request received for /ai-move");
                 sendResponse(exchange, "", 200);
                 return;
             }
             if (!exchange.getRequestMethod().equals("POST")) {
-                System.out.println("Invalid method for /ai-move: " + exchange.getRequestMethod());
+                Log.debug("Invalid method for /ai-move: {}", exchange.getRequestMethod());
                 sendResponse(exchange, "Method not allowed", 405);
                 return;
             }
             
-            System.out.println("\n🤖🤖🤖 AI MOVE REQUEST RECEIVED 🤖🤖🤖");
-            System.out.println("==================================================");
+            Log.debug("🤖🤖🤖 AI MOVE REQUEST RECEIVED 🤖🤖🤖");
+            Log.debug("==================================================");
             
             try {
-                System.out.println("Getting AI move from game...");
+                Log.debug("Getting AI move from game...");
                 int aiMove = game.getAIMove();
-                System.out.println("AI selected column: " + aiMove);
+                Log.debug("AI selected column: {}", aiMove);
                 
                 boolean validMove = false;
                 if (aiMove != -1) {
-                    System.out.println("Attempting to make AI move in column " + aiMove);
+                    Log.debug("Attempting to make AI move in column {}", aiMove);
                     validMove = game.makeMove(aiMove);
-                    System.out.println("AI move valid: " + validMove);
+                    Log.debug("AI move valid: {}", validMove);
                 } else {
-                    System.out.println("AI returned invalid move -1!");
+                    Log.debug("AI returned invalid move -1!");
                 }
                 
                 String response = getBoardState();
-                System.out.println("AI move completed. Sending board state to client:");
-                System.out.println(response);
-                System.out.println("Game over status after move: " + game.isGameOver());
-                System.out.println("Winner after move: " + game.getWinner());
-                System.out.println("==================================================\n");
+                Log.debug("AI move completed. Sending board state to client:");
+                Log.debug("{}", response);
+                Log.debug("Game over status after move: {}", game.isGameOver());
+                Log.debug("Winner after move: {}", game.getWinner());
+                Log.debug("==================================================");
                 
                 exchange.getResponseHeaders().set("Content-Type", "text/plain");
                 exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
@@ -201,10 +201,9 @@ public class GameServer {
                 try (OutputStream os = exchange.getResponseBody()) {
                     os.write(response.getBytes());
                 }
-                System.out.println("AI move response sent to client");
+                Log.debug("AI move response sent to client");
             } catch (Exception e) {
-                System.out.println("❌ ERROR PROCESSING AI MOVE: " + e.getMessage());
-                e.printStackTrace();
+                Log.error("❌ ERROR PROCESSING AI MOVE", e);
                 sendResponse(exchange, "AI move failed: " + e.getMessage(), 500);
             }
         }
@@ -226,7 +225,7 @@ public class GameServer {
         try {
             new GameServer().start();
         } catch (IOException e) {
-            e.printStackTrace();
+            Log.error("Failed to start server", e);
         }
     }
 } 
\ No newline at end of file
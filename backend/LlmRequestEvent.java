@@ -0,0 +1,28 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for one call to the OpenAI API; the event duration is the
+ * request latency.
+ */
+@Name("connect4.LlmRequest")
+@Label("LLM Request")
+@Category("Connect 4")
+@Description("A chat completion request made to pick a move")
+@StackTrace(false)
+public class LlmRequestEvent extends Event {
+    @Label("Model")
+    public String model;
+
+    @Label("Status Code")
+    @Description("HTTP status, or 0 when no response arrived")
+    public int statusCode;
+
+    @Label("Fallback Used")
+    @Description("The move came from the fallback strategy instead of the model")
+    public boolean fallback;
+}
@@ -0,0 +1,62 @@
+/**
+ * Fixed corpus of positions shared by all benchmarks, as move strings of
+ * 1-based columns. None of them is already won.
+ */
+public class BenchmarkPositions {
+    static final String[] OPENING = {"", "4", "5361", "225141", "26624261"};
+    static final String[] MIDGAME = {
+        "2416141346324324",
+        "522147657754434247",
+        "57422635376125557722",
+    };
+    static final String[] ENDGAME = {
+        "673436656455251577165422422441",
+        "54773352654142164267541313717734",
+        "4367211417756466763245535577243651",
+    };
+
+    static String[] get(String phase) {
+        switch (phase) {
+            case "opening":
+                return OPENING;
+            case "midgame":
+                return MIDGAME;
+            case "endgame":
+                return ENDGAME;
+            default:
+                throw new IllegalArgumentException("Unknown phase: " + phase);
+        }
+    }
+
+    static Position[] positions(String phase) {
+        String[] corpus = get(phase);
+        Position[] positions = new Position[corpus.length];
+        for (int i = 0; i < corpus.length; i++) {
+            positions[i] = Position.fromMoves(corpus[i]);
+        }
+        return positions;
+    }
+
+    static int[][] toBoard(String moves) {
+        int[][] board = new int[Position.ROWS][Position.COLS];
+        int player = 1;
+        for (int i = 0; i < moves.length(); i++) {
+            int col = moves.charAt(i) - '1';
+            int row = Position.ROWS - 1;
+            while (board[row][col] != 0) {
+                row--;
+            }
+            board[row][col] = player;
+            player = player == 1 ? 2 : 1;
+        }
+        return board;
+    }
+
+    static Game toGame(String moves) {
+        Game game = new Game();
+        for (int i = 0; i < moves.length(); i++) {
+            game.makeMove(moves.charAt(i) - '1');
+        }
+        return game;
+    }
+}
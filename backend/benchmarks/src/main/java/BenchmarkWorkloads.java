@@ -0,0 +1,193 @@
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+import bench.Workload;
+
+/**
+ * Workloads measured by the JMH benchmarks in the bench package. They live in
+ * the default package so they can use the server classes directly.
+ */
+public class BenchmarkWorkloads {
+
+    // Replays every game in the corpus through Game.makeMove (which runs checkWin)
+    public static class MakeMove implements Workload {
+        private int[][] moves;
+        private Game game;
+
+        @Override
+        public void setup(String phase) {
+            String[] corpus = BenchmarkPositions.get(phase);
+            moves = new int[corpus.length][];
+            for (int i = 0; i < corpus.length; i++) {
+                moves[i] = corpus[i].chars().map(c -> c - '1').toArray();
+            }
+            game = new Game();
+        }
+
+        @Override
+        public long run() {
+            long placed = 0;
+            for (int[] line : moves) {
+                for (int col : line) {
+                    if (game.makeMove(col)) {
+                        placed++;
+                    }
+                }
+                game.reset();
+            }
+            return placed;
+        }
+    }
+
+    // Line-table win check through every cell of every corpus position
+    public static class CheckWin implements Workload {
+        private long[] pieces;
+
+        @Override
+        public void setup(String phase) {
+            String[] corpus = BenchmarkPositions.get(phase);
+            pieces = new long[corpus.length];
+            for (int i = 0; i < corpus.length; i++) {
+                Position position = Position.fromMoves(corpus[i]);
+                pieces[i] = position.getCurrent() ^ position.getMask();
+            }
+        }
+
+        @Override
+        public long run() {
+            long found = 0;
+            for (long p : pieces) {
+                for (int row = 0; row < Position.ROWS; row++) {
+                    for (int col = 0; col < Position.COLS; col++) {
+                        found += WinLines.findWin(p, row, col);
+                    }
+                }
+            }
+            return found;
+        }
+    }
+
+    // Every legal move and its undo from every corpus position
+    public static class PlayUndo implements Workload {
+        private Position[] positions;
+
+        @Override
+        public void setup(String phase) {
+            positions = BenchmarkPositions.positions(phase);
+        }
+
+        @Override
+        public long run() {
+            long keys = 0;
+            for (Position position : positions) {
+                for (int col = 0; col < Position.COLS; col++) {
+                    if (position.canPlay(col)) {
+                        position.play(col);
+                        keys += position.key();
+                        position.undo(col);
+                    }
+                }
+            }
+            return keys;
+        }
+    }
+
+    public static class EvaluateBoard implements Workload {
+        private Game[] games;
+
+        @Override
+        public void setup(String phase) {
+            String[] corpus = BenchmarkPositions.get(phase);
+            games = new Game[corpus.length];
+            for (int i = 0; i < corpus.length; i++) {
+                games[i] = BenchmarkPositions.toGame(corpus[i]);
+            }
+        }
+
+        @Override
+        public long run() {
+            long total = 0;
+            for (Game game : games) {
+                total += game.evaluateBoard();
+            }
+            return total;
+        }
+    }
+
+    public static class Threats implements Workload {
+        private Position[] positions;
+
+        @Override
+        public void setup(String phase) {
+            positions = BenchmarkPositions.positions(phase);
+        }
+
+        @Override
+        public long run() {
+            long total = 0;
+            for (Position position : positions) {
+                long own = position.getCurrent();
+                long mask = position.getMask();
+                total += ThreatAnalyzer.analyze(own, mask).threats;
+                total += ThreatAnalyzer.zugzwangWinner(own, own ^ mask, mask);
+            }
+            return total;
+        }
+    }
+
+    // ChatGPTAI.getStrategicMove is private; calling it through a method handle
+    // also guarantees no ChatGPT request is made even with an API key configured
+    public static class StrategicMove implements Workload {
+        private ChatGPTAI ai;
+        private MethodHandle strategicMove;
+        private int[][][] boards;
+
+        @Override
+        public void setup(String phase) throws Exception {
+            ai = new ChatGPTAI();
+            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(ChatGPTAI.class, MethodHandles.lookup());
+            strategicMove = lookup.findVirtual(ChatGPTAI.class, "getStrategicMove",
+                    MethodType.methodType(int.class, int[][].class));
+
+            String[] corpus = BenchmarkPositions.get(phase);
+            boards = new int[corpus.length][][];
+            for (int i = 0; i < corpus.length; i++) {
+                boards[i] = BenchmarkPositions.toBoard(corpus[i]);
+            }
+        }
+
+        @Override
+        public long run() throws Throwable {
+            long total = 0;
+            for (int[][] board : boards) {
+                total += (int) strategicMove.invokeExact(ai, board);
+            }
+            return total;
+        }
+    }
+
+    // MCTS from every corpus position; a fresh engine per run so tree reuse
+    // does not carry work over between invocations
+    public static class Mcts implements Workload {
+        private static final int PLAYOUTS = Integer.getInteger("bench.playouts", 2000);
+        private Position[] positions;
+
+        @Override
+        public void setup(String phase) {
+            positions = BenchmarkPositions.positions(phase);
+        }
+
+        @Override
+        public long run() {
+            MctsEngine engine = new MctsEngine(PLAYOUTS, 0, 1, MctsEngine.Parallelism.TREE, true);
+            long nodes = 0;
+            for (Position position : positions) {
+                engine.getMove(position);
+                nodes += engine.getLastPlayouts();
+            }
+            engine.close();
+            return nodes;
+        }
+    }
+}
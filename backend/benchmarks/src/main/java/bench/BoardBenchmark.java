@@ -0,0 +1,55 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Move generation and win detection: Game.makeMove (which runs checkWin),
+ * the line-table win check on its own, and Position play/undo.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BoardBenchmark {
+    @Param({"opening", "midgame", "endgame"})
+    public String phase;
+
+    private Workload makeMove;
+    private Workload checkWin;
+    private Workload playUndo;
+
+    @Setup
+    public void setup() {
+        makeMove = Workload.create("MakeMove", phase);
+        checkWin = Workload.create("CheckWin", phase);
+        playUndo = Workload.create("PlayUndo", phase);
+    }
+
+    @Benchmark
+    public long makeMove() throws Throwable {
+        return makeMove.run();
+    }
+
+    @Benchmark
+    public long checkWin() throws Throwable {
+        return checkWin.run();
+    }
+
+    @Benchmark
+    public long positionPlayUndo() throws Throwable {
+        return playUndo.run();
+    }
+}
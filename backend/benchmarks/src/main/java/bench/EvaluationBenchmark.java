@@ -0,0 +1,47 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Leaf evaluation (Game.evaluateBoard) and the bitboard threat analysis.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EvaluationBenchmark {
+    @Param({"opening", "midgame", "endgame"})
+    public String phase;
+
+    private Workload evaluateBoard;
+    private Workload threats;
+
+    @Setup
+    public void setup() {
+        evaluateBoard = Workload.create("EvaluateBoard", phase);
+        threats = Workload.create("Threats", phase);
+    }
+
+    @Benchmark
+    public long evaluateBoard() throws Throwable {
+        return evaluateBoard.run();
+    }
+
+    @Benchmark
+    public long threatAnalysis() throws Throwable {
+        return threats.run();
+    }
+}
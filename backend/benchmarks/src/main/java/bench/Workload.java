@@ -0,0 +1,32 @@
+package bench;
+
+/**
+ * One measured operation on the server code.
+ *
+ * JMH refuses benchmark classes in the default package, and named packages
+ * cannot see the server classes in the default package, so the benchmarks
+ * here only hold the JMH plumbing and call into implementations of this
+ * interface that live next to the server code (BenchmarkWorkloads).
+ */
+public interface Workload {
+    // Prepares the workload for one corpus phase: opening, midgame or endgame
+    void setup(String phase) throws Exception;
+
+    // Runs the operation over the whole corpus; the result goes to a blackhole
+    // (search workloads return the number of nodes visited)
+    long run() throws Throwable;
+
+    default void close() {
+    }
+
+    static Workload create(String name, String phase) {
+        try {
+            Workload workload = (Workload) Class.forName("BenchmarkWorkloads$" + name)
+                    .getDeclaredConstructor().newInstance();
+            workload.setup(phase);
+            return workload;
+        } catch (Exception e) {
+            throw new IllegalStateException("Cannot create workload " + name, e);
+        }
+    }
+}
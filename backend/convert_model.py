@@ -0,0 +1,103 @@
+#!/usr/bin/env python3
+"""
+Converts models/connect4_model.pt into the flat binary format read by
+NeuralEvaluator.java, so the Java server can run the model on the CPU
+without a Python process.
+
+The model must be a plain MLP: a sequence of nn.Linear layers with ReLU
+between them and nothing after the last one. Its input is 84 floats
+(42 cells for the side to move, then 42 for the opponent, row-major from
+the top row) and its output is 7 policy logits, 1 value, or both (8).
+A model with separate policy and value heads works too if each head is a
+single Linear layer on the shared trunk; the two are written as one layer
+with the 7 policy outputs first. Anything else is rejected.
+
+File format (little endian):
+    magic   4 bytes  "C4NN"
+    version int32    1
+    layers  int32    number of dense layers
+    per layer:
+        in      int32
+        out     int32
+        weights float32[out * in]   row-major, one row per output
+        bias    float32[out]
+
+Usage:
+    python3 convert_model.py models/connect4_model.pt models/connect4_model.bin
+"""
+import struct
+import sys
+
+import torch
+
+
+def load_layers(path):
+    state = torch.load(path, map_location="cpu")
+    if hasattr(state, "state_dict"):
+        state = state.state_dict()
+
+    layers = []
+    pending = None
+    for name, tensor in state.items():
+        if name.endswith("weight"):
+            if tensor.dim() != 2:
+                raise SystemExit("Only Linear layers are supported, found " + name
+                                 + " with shape " + str(tuple(tensor.shape)))
+            pending = tensor.float()
+        elif name.endswith("bias") and pending is not None:
+            layers.append((pending, tensor.float()))
+            pending = None
+    if pending is not None:
+        layers.append((pending, torch.zeros(pending.shape[0])))
+    if not layers:
+        raise SystemExit("No Linear layers found in " + path)
+    return check_chain(merge_heads(layers))
+
+
+def merge_heads(layers):
+    """Joins a final policy head (7 outputs) and value head (1 output) that
+    both read the trunk's output into one 8-output layer, policy first."""
+    if len(layers) < 2:
+        return layers
+    (w1, b1), (w2, b2) = layers[-2], layers[-1]
+    if w1.shape[1] != w2.shape[1] or {w1.shape[0], w2.shape[0]} != {7, 1}:
+        return layers
+    if w1.shape[0] == 1:
+        (w1, b1), (w2, b2) = (w2, b2), (w1, b1)
+    return layers[:-2] + [(torch.cat([w1, w2]), torch.cat([b1, b2]))]
+
+
+def check_chain(layers):
+    if layers[0][0].shape[1] != 84:
+        raise SystemExit("The first layer must take 84 inputs, not " + str(layers[0][0].shape[1]))
+    for i in range(1, len(layers)):
+        if layers[i][0].shape[1] != layers[i - 1][0].shape[0]:
+            raise SystemExit("Layer " + str(i) + " takes " + str(layers[i][0].shape[1]) + " inputs but layer "
+                             + str(i - 1) + " has " + str(layers[i - 1][0].shape[0]) + " outputs. Only a plain "
+                             "MLP, or one with single-layer policy and value heads, can be converted")
+    outputs = layers[-1][0].shape[0]
+    if outputs not in (1, 7, 8):
+        raise SystemExit("The model must output 7 policy logits, 1 value or both, not " + str(outputs))
+    return layers
+
+
+def main():
+    if len(sys.argv) != 3:
+        raise SystemExit("usage: convert_model.py <model.pt> <model.bin>")
+
+    layers = load_layers(sys.argv[1])
+    with open(sys.argv[2], "wb") as out:
+        out.write(b"C4NN")
+        out.write(struct.pack("<ii", 1, len(layers)))
+        for weight, bias in layers:
+            rows, cols = weight.shape
+            out.write(struct.pack("<ii", cols, rows))
+            out.write(weight.contiguous().numpy().astype("<f4").tobytes())
+            out.write(bias.contiguous().numpy().astype("<f4").tobytes())
+
+    sizes = " -> ".join([str(layers[0][0].shape[1])] + [str(w.shape[0]) for w, _ in layers])
+    print("Wrote " + str(len(layers)) + " layers (" + sizes + ") to " + sys.argv[2])
+
+
+if __name__ == "__main__":
+    main()
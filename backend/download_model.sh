@@ -3,7 +3,11 @@
 # Create models directory if it doesn't exist
 mkdir -p models
 
-# Download the pre-trained model
-curl -L "https://huggingface.co/connect4/connect4-model/resolve/main/connect4_model.pt" -o models/connect4_model.pt
+# Download the pre-trained model; -f fails on an HTTP error instead of saving the error page as the model
+if ! curl -fL "https://huggingface.co/connect4/connect4-model/resolve/main/connect4_model.pt" -o models/connect4_model.pt; then
+    rm -f models/connect4_model.pt
+    echo "Model download failed" >&2
+    exit 1
+fi
 
 echo "Model downloaded successfully!" 
\ No newline at end of file
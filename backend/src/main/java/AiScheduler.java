@@ -0,0 +1,386 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Shares the CPU spent on AI moves fairly between tenants (clients or
+ * games), so one heavy user can't starve the others.
+ *
+ * At most slots AI moves run at once. Each tenant has its recent CPU usage,
+ * measured per move with ThreadMXBean (wall time where the JVM can't
+ * measure thread CPU time) and decaying with a half-life of halfLifeSeconds.
+ * When a slot frees up it goes to the waiting tenant with the least usage
+ * for its weight, and to that tenant's oldest move: weighted fair queuing
+ * where a tenant's finish time is its usage. A tenant with twice the weight
+ * gets twice the CPU while both are busy. Only the move given the slot is
+ * woken.
+ *
+ * A tenant's share is its usage as a fraction of what all slots could have
+ * done over the same decay window. Over maxShare, while other moves are
+ * waiting for a slot (its own or anyone's), its move is not rejected but
+ * played one difficulty level lower (see DifficultyProfile.easier), and two
+ * levels lower past twice maxShare. That only makes the move cheaper with
+ * SearchEngine, whose budgets shrink with the difficulty; other engines
+ * only blunder more often (MoveEngine.search(board, difficulty)). On an
+ * idle server nobody is held back.
+ *
+ * Moves run on the caller's thread while it holds a Slot, so the CPU time
+ * charged is that thread's. Work done for a tenant without a slot, such as
+ * pondering its games, is charged with charge(), and a tenant over its
+ * share (isOverShare) shouldn't be given more of it.
+ */
+public class AiScheduler {
+    // Tenants beyond this get one "other" series in the metrics
+    private static final int MAX_TENANT_SERIES = 100;
+    // Idle tenants are forgotten once this many are known
+    private static final int MAX_TENANTS = 4096;
+
+    private final int slots;
+    private final double halfLifeNanos;
+    private final double maxShare;
+    private final Map<String, Double> weights;
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final boolean cpuTime;
+
+    // Guarded by this
+    private final Map<String, Tenant> tenants = new HashMap<>();
+    private int running;
+    private int waiting;
+    private long arrivals;
+
+    private final Map<String, Series> series = new HashMap<>();
+    private Series otherSeries;
+    private final LatencyHistogram waitTime = Metrics.histogram("connect4_scheduler_wait_seconds",
+            "Time AI moves waited for a scheduler slot", "");
+
+    /**
+     * @param slots AI moves that may run at once, usually the number of cores
+     * @param halfLifeSeconds how quickly past usage is forgotten
+     * @param maxShare share of the slots' CPU a tenant may use before its
+     *        moves get cheaper while other moves are waiting
+     * @param weights tenant -> weight; tenants not listed weigh 1
+     */
+    public AiScheduler(int slots, double halfLifeSeconds, double maxShare, Map<String, Double> weights) {
+        if (slots < 1 || halfLifeSeconds <= 0 || maxShare <= 0) {
+            throw new IllegalArgumentException("slots, halfLifeSeconds and maxShare must be positive");
+        }
+        this.slots = slots;
+        this.halfLifeNanos = halfLifeSeconds * 1e9;
+        this.maxShare = maxShare;
+        this.weights = weights;
+        boolean supported = threads.isCurrentThreadCpuTimeSupported();
+        if (supported && !threads.isThreadCpuTimeEnabled()) {
+            try {
+                threads.setThreadCpuTimeEnabled(true);
+            } catch (UnsupportedOperationException e) {
+                supported = false;
+            }
+        }
+        this.cpuTime = supported;
+        if (!cpuTime) {
+            Log.warn("Thread CPU time is not available, charging AI moves by wall time");
+        }
+        Metrics.gauge("connect4_scheduler_queue", "AI moves waiting for a scheduler slot", "", () -> queued());
+        Metrics.gauge("connect4_scheduler_running", "AI moves holding a scheduler slot", "", () -> active());
+    }
+
+    /**
+     * Parses -Dscheduler.weights, e.g. "10.0.0.5:2,tournament:0.5"; an
+     * empty or null spec gives no weights.
+     */
+    public static Map<String, Double> parseWeights(String spec) {
+        Map<String, Double> weights = new HashMap<>();
+        if (spec == null || spec.isEmpty()) {
+            return weights;
+        }
+        for (String entry : spec.split(",")) {
+            int colon = entry.lastIndexOf(':');
+            double weight;
+            try {
+                weight = colon > 0 ? Double.parseDouble(entry.substring(colon + 1)) : -1;
+            } catch (NumberFormatException e) {
+                weight = -1;
+            }
+            if (weight <= 0) {
+                throw new IllegalArgumentException("Weights must be TENANT:WEIGHT with a positive weight: " + entry);
+            }
+            weights.put(entry.substring(0, colon).trim(), weight);
+        }
+        return weights;
+    }
+
+    /**
+     * Waits until a slot is free and it's this tenant's turn, and returns
+     * the slot; close it once the AI move is made. Acquire it before taking
+     * the game's lock, so a waiting move holds up nothing but its own
+     * request.
+     */
+    public Slot acquire(String tenant) throws InterruptedException {
+        Slot slot;
+        synchronized (this) {
+            Tenant t = tenants.computeIfAbsent(tenant, Tenant::new);
+            slot = new Slot(t, arrivals++);
+            t.queue.addLast(slot);
+            waiting++;
+            dispatch();
+        }
+        try {
+            synchronized (slot) {
+                while (!slot.granted) {
+                    slot.wait();
+                }
+            }
+        } catch (InterruptedException e) {
+            synchronized (this) {
+                if (slot.granted) {
+                    release(slot.tenant, 0, System.nanoTime());
+                } else {
+                    slot.tenant.queue.remove(slot);
+                    waiting--;
+                }
+            }
+            throw e;
+        }
+        slot.start();
+        return slot;
+    }
+
+    /**
+     * Hands free slots to the waiting tenants with the least usage for their
+     * weight, each to its oldest move, and wakes only those moves. Caller
+     * holds the lock.
+     */
+    private void dispatch() {
+        while (running < slots && waiting > 0) {
+            Tenant t = next();
+            Slot slot = t.queue.removeFirst();
+            waiting--;
+            running++;
+            t.running++;
+            // Over its share while others still wait: the move gets cheaper
+            double share = share(t, System.nanoTime());
+            int steps = share <= maxShare || waiting == 0 ? 0 : share <= 2 * maxShare ? 1 : 2;
+            synchronized (slot) {
+                slot.steps = steps;
+                slot.granted = true;
+                slot.notify();
+            }
+        }
+    }
+
+    // Charges a finished move and passes its slot on; caller holds the lock
+    private void release(Tenant tenant, long used, long now) {
+        tenant.charge(used, now);
+        tenant.running--;
+        running--;
+        if (tenants.size() > MAX_TENANTS) {
+            forgetIdle(now);
+        }
+        dispatch();
+    }
+
+    // Waiting tenant that gets the next slot: least usage for its weight. Caller holds the lock
+    private Tenant next() {
+        long now = System.nanoTime();
+        Tenant best = null;
+        double bestUsage = 0;
+        for (Tenant t : tenants.values()) {
+            if (t.queue.isEmpty()) {
+                continue;
+            }
+            double usage = t.usage(now) / t.weight;
+            // Ties go to the tenant whose oldest move came first
+            if (best == null || usage < bestUsage
+                    || usage == bestUsage && t.queue.peekFirst().arrival < best.queue.peekFirst().arrival) {
+                best = t;
+                bestUsage = usage;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Fraction of the slots' CPU the tenant used lately. A tenant using r
+     * nanoseconds per second settles at a usage of r * halfLife / ln 2, so
+     * this is usage over what every slot running flat out would reach.
+     * Caller holds the lock.
+     */
+    private double share(Tenant tenant, long now) {
+        return tenant.usage(now) * Math.log(2) / (halfLifeNanos * slots);
+    }
+
+    // Drops tenants with nothing running or waiting and under a millisecond of usage left
+    private void forgetIdle(long now) {
+        for (Iterator<Tenant> it = tenants.values().iterator(); it.hasNext();) {
+            Tenant t = it.next();
+            if (t.queue.isEmpty() && t.running == 0 && t.usage(now) < 1e6) {
+                it.remove();
+            }
+        }
+    }
+
+    /** The current thread's CPU time (or wall time), to pass to charge. */
+    public long threadTime() {
+        return cpuTime ? threads.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    /**
+     * Charges the tenant with the current thread's CPU time since start
+     * (from threadTime), for work done on its behalf outside a slot.
+     */
+    public void charge(String tenant, long start) {
+        long used = threadTime() - start;
+        Series s;
+        synchronized (this) {
+            tenants.computeIfAbsent(tenant, Tenant::new).charge(used, System.nanoTime());
+            s = series(tenant);
+        }
+        s.cpu.add(used / 1000);
+    }
+
+    // Whether the tenant has used more than maxShare lately
+    public synchronized boolean isOverShare(String tenant) {
+        Tenant t = tenants.get(tenant);
+        return t != null && share(t, System.nanoTime()) > maxShare;
+    }
+
+    private synchronized int queued() {
+        return waiting;
+    }
+
+    private synchronized int active() {
+        return running;
+    }
+
+    // The tenant's current share, for its gauge; 0 once it's forgotten
+    private synchronized double shareOf(String tenant) {
+        Tenant t = tenants.get(tenant);
+        return t == null ? 0 : share(t, System.nanoTime());
+    }
+
+    // Metric series for a tenant; caller holds the lock
+    private Series series(String tenant) {
+        Series s = series.get(tenant);
+        if (s == null) {
+            if (series.size() >= MAX_TENANT_SERIES) {
+                if (otherSeries == null) {
+                    otherSeries = new Series("other");
+                }
+                s = otherSeries;
+            } else {
+                s = new Series(tenant);
+                series.put(tenant, s);
+                Metrics.gauge("connect4_tenant_share", "Share of the AI's CPU each tenant used lately",
+                        s.label, () -> shareOf(tenant));
+            }
+        }
+        return s;
+    }
+
+    /**
+     * A scheduler slot held by one AI move. Closing it charges the tenant
+     * with the thread's CPU time since it was granted and passes it on.
+     */
+    public class Slot implements AutoCloseable {
+        final Tenant tenant;
+        final long arrival;
+        final long queuedAt = System.nanoTime();
+        // Set by dispatch under the slot's lock
+        boolean granted;
+        // Difficulty levels to drop, decided when the slot is granted
+        int steps;
+        private Series series;
+        private long cpuStart;
+
+        Slot(Tenant tenant, long arrival) {
+            this.tenant = tenant;
+            this.arrival = arrival;
+        }
+
+        public String getTenant() {
+            return tenant.name;
+        }
+
+        void start() {
+            long now = System.nanoTime();
+            waitTime.record((now - queuedAt) / 1000);
+            synchronized (AiScheduler.this) {
+                series = series(tenant.name);
+            }
+            cpuStart = cpuTime ? threads.getCurrentThreadCpuTime() : now;
+        }
+
+        /**
+         * The difficulty to play this move at: requested (null for the
+         * engine's own strength), or a cheaper one when the tenant is over
+         * its share and other moves are waiting.
+         */
+        public DifficultyProfile difficulty(DifficultyProfile requested) {
+            DifficultyProfile profile = requested;
+            for (int i = 0; i < steps; i++) {
+                profile = DifficultyProfile.easier(profile);
+            }
+            if (profile != requested) {
+                series.degraded.increment();
+            }
+            return profile;
+        }
+
+        @Override
+        public void close() {
+            long now = System.nanoTime();
+            long used = (cpuTime ? threads.getCurrentThreadCpuTime() : now) - cpuStart;
+            series.cpu.add(used / 1000);
+            series.tasks.increment();
+            synchronized (AiScheduler.this) {
+                release(tenant, used, now);
+            }
+        }
+    }
+
+    private class Tenant {
+        final String name;
+        final double weight;
+        // The tenant's waiting moves, oldest first
+        final ArrayDeque<Slot> queue = new ArrayDeque<>();
+        int running;
+        // Decayed CPU nanoseconds as of updated
+        double usage;
+        long updated = System.nanoTime();
+
+        Tenant(String name) {
+            this.name = name;
+            this.weight = weights.getOrDefault(name, 1.0);
+        }
+
+        double usage(long now) {
+            return usage * Math.pow(0.5, (now - updated) / halfLifeNanos);
+        }
+
+        void charge(long nanos, long now) {
+            usage = usage(now) + nanos;
+            updated = now;
+        }
+    }
+
+    private static class Series {
+        final String label;
+        final LongAdder cpu;
+        final LongAdder tasks;
+        final LongAdder degraded;
+
+        Series(String tenant) {
+            this.label = "tenant=\"" + tenant.replace("\\", "\\\\").replace("\"", "\\\"")
+                    .replace("\n", "\\n") + "\"";
+            this.cpu = Metrics.counter("connect4_tenant_cpu_microseconds_total",
+                    "CPU time spent on each tenant's AI moves and pondering", label);
+            this.tasks = Metrics.counter("connect4_tenant_ai_moves_total", "AI moves run for each tenant", label);
+            this.degraded = Metrics.counter("connect4_tenant_degraded_total",
+                    "AI moves played at a lower difficulty because the tenant was over its share", label);
+        }
+    }
+}
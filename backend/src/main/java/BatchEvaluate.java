@@ -0,0 +1,295 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Offline bulk evaluation: streams positions from a file, searches them on a
+ * pool of threads sharing one transposition table, and writes one result line
+ * per position in input order.
+ *
+ * Input lines are move strings ("4453") or 42-cell boards ("0,0,...,1,2,");
+ * blank lines and lines starting with # are skipped. Output lines are
+ * tab-separated: input, best column, score, outcome, depth, nodes; or input,
+ * "error" and the reason.
+ *
+ * Memory stays bounded however big the file is: the reader may only run a
+ * fixed window of lines ahead of the writer, and results waiting for an
+ * earlier line sit in a ring of that size. Every --checkpoint-every lines the
+ * output is flushed and a checkpoint records how many input lines and output
+ * bytes are done, so --resume continues an interrupted run where it stopped.
+ *
+ * Usage: java BatchEvaluate --input positions.txt --output results.tsv
+ *        [--threads N] [--depth 14] [--time-ms 0] [--tt-size 4194304]
+ *        [--checkpoint-every 100000] [--resume]
+ */
+public class BatchEvaluate {
+    private static final String SKIP = "";
+
+    private final Path input;
+    private final Path output;
+    private final Path checkpoint;
+    private final int threads;
+    private final int depth;
+    private final long timeMillis;
+    private final long checkpointEvery;
+    private final SearchEngine engine;
+
+    // Reorder window: results for lines [written, written + window)
+    private final int window;
+    private final AtomicReferenceArray<String> results;
+    private final Semaphore permits;
+    private final Object resultReady = new Object();
+
+    private final AtomicLong nodes = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private volatile long totalLines = -1;
+    private volatile IOException readError;
+
+    public BatchEvaluate(Path input, Path output, int threads, int depth, long timeMillis,
+                         int tableSize, long checkpointEvery) {
+        this.input = input;
+        this.output = output;
+        this.checkpoint = Paths.get(output + ".checkpoint");
+        this.threads = threads;
+        this.depth = depth;
+        this.timeMillis = timeMillis;
+        this.checkpointEvery = checkpointEvery;
+        this.engine = new SearchEngine(depth, timeMillis, new TranspositionTable(tableSize), null);
+        this.window = threads * 256;
+        this.results = new AtomicReferenceArray<>(window);
+        this.permits = new Semaphore(window);
+    }
+
+    public void run(boolean resume) throws IOException, InterruptedException {
+        long startLine = 0;
+        long startBytes = 0;
+        if (resume && Files.exists(checkpoint)) {
+            Properties saved = new Properties();
+            try (BufferedReader reader = Files.newBufferedReader(checkpoint)) {
+                saved.load(reader);
+            }
+            // The output is cut back to the checkpoint, so it must be this input's
+            String savedInput = saved.getProperty("input");
+            if (savedInput == null || !Paths.get(savedInput).toAbsolutePath().normalize()
+                    .equals(input.toAbsolutePath().normalize())) {
+                throw new IOException("Checkpoint " + checkpoint + " is for input " + savedInput + ", not " + input);
+            }
+            startLine = Long.parseLong(saved.getProperty("lines"));
+            startBytes = Long.parseLong(saved.getProperty("outputBytes"));
+            System.err.printf("Resuming after line %d (%d output bytes)%n", startLine, startBytes);
+        }
+
+        FileChannel channel = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        // Drop anything written after the last checkpoint
+        channel.truncate(startBytes);
+        channel.position(startBytes);
+        Writer out = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel),
+                StandardCharsets.UTF_8), 1 << 16);
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long skip = startLine;
+        Thread reader = new Thread(() -> readLines(skip, pool), "batch-reader");
+        reader.start();
+
+        long start = System.nanoTime();
+        long lastReport = start;
+        long line = startLine;
+        long bytes = startBytes;
+        long evaluated = 0;
+        try {
+            while (true) {
+                String result = awaitResult(line);
+                if (result == null) {
+                    break;
+                }
+                results.set((int) (line % window), null);
+                permits.release();
+                if (!result.isEmpty()) {
+                    out.write(result);
+                    bytes += result.getBytes(StandardCharsets.UTF_8).length;
+                    evaluated++;
+                }
+                line++;
+
+                if (checkpointEvery > 0 && line % checkpointEvery == 0) {
+                    out.flush();
+                    channel.force(false);
+                    saveCheckpoint(line, bytes);
+                }
+                long now = System.nanoTime();
+                if (now - lastReport > 5_000_000_000L) {
+                    report(evaluated, now - start, false);
+                    lastReport = now;
+                }
+            }
+            if (readError != null) {
+                throw readError;
+            }
+            out.flush();
+            channel.force(false);
+            saveCheckpoint(line, bytes);
+        } finally {
+            pool.shutdownNow();
+            out.close();
+        }
+        report(evaluated, System.nanoTime() - start, true);
+    }
+
+    // Reads lines after the first `skip`, handing each to the pool once the window has room
+    private void readLines(long skip, ExecutorService pool) {
+        long line = 0;
+        try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+            String text;
+            while ((text = reader.readLine()) != null) {
+                if (line < skip) {
+                    line++;
+                    continue;
+                }
+                permits.acquire();
+                long index = line++;
+                String position = text;
+                pool.execute(() -> publish(index, evaluate(position)));
+            }
+        } catch (IOException e) {
+            readError = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            totalLines = line;
+            synchronized (resultReady) {
+                resultReady.notifyAll();
+            }
+        }
+    }
+
+    private String evaluate(String line) {
+        String text = line.trim();
+        if (text.isEmpty() || text.startsWith("#")) {
+            return SKIP;
+        }
+        try {
+            Position position = text.indexOf(',') >= 0 ? Position.fromCsv(text) : Position.fromMoves(text);
+            SearchResult result = engine.search(position, depth, timeMillis);
+            nodes.addAndGet(result.nodes);
+            return text + '\t' + result.move + '\t' + (result.hasScore ? result.score : 0) + '\t'
+                + (result.hasScore ? SearchEngine.describeScore(result.score, position.getMoves()) : "none")
+                + '\t' + result.depth + '\t' + result.nodes + '\n';
+        } catch (RuntimeException e) {
+            // Any failure still needs a row, or the writer would wait for this line forever
+            errors.incrementAndGet();
+            String reason = e instanceof IllegalArgumentException ? e.getMessage() : e.toString();
+            return text + "\terror\t" + reason + '\n';
+        }
+    }
+
+    private void publish(long index, String result) {
+        results.set((int) (index % window), result);
+        synchronized (resultReady) {
+            resultReady.notifyAll();
+        }
+    }
+
+    // Result for this line once it is ready, or null after the last line
+    private String awaitResult(long line) throws InterruptedException {
+        int slot = (int) (line % window);
+        synchronized (resultReady) {
+            while (true) {
+                String result = results.get(slot);
+                if (result != null) {
+                    return result;
+                }
+                long total = totalLines;
+                if (total >= 0 && line >= total) {
+                    return null;
+                }
+                resultReady.wait(100);
+            }
+        }
+    }
+
+    // Written to a temporary file and renamed, so a crash never leaves half a checkpoint
+    private void saveCheckpoint(long lines, long outputBytes) throws IOException {
+        Properties state = new Properties();
+        state.setProperty("input", input.toString());
+        state.setProperty("lines", Long.toString(lines));
+        state.setProperty("outputBytes", Long.toString(outputBytes));
+        Path temp = Paths.get(checkpoint + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            state.store(writer, "BatchEvaluate progress");
+        }
+        Files.move(temp, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void report(long evaluated, long elapsedNanos, boolean last) {
+        double seconds = elapsedNanos / 1e9;
+        System.err.printf("%s%d positions in %.1fs, %.0f positions/s, %.0f nodes/s, %d errors%n",
+                last ? "Done: " : "", evaluated, seconds, evaluated / Math.max(seconds, 1e-9),
+                nodes.get() / Math.max(seconds, 1e-9), errors.get());
+    }
+
+    public static void main(String[] args) throws Exception {
+        String input = null;
+        String output = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int depth = 14;
+        long timeMillis = 0;
+        int tableSize = 1 << 22;
+        long checkpointEvery = 100_000;
+        boolean resume = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--input":
+                    input = args[++i];
+                    break;
+                case "--output":
+                    output = args[++i];
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--depth":
+                    depth = Integer.parseInt(args[++i]);
+                    break;
+                case "--time-ms":
+                    timeMillis = Long.parseLong(args[++i]);
+                    break;
+                case "--tt-size":
+                    tableSize = Integer.parseInt(args[++i]);
+                    break;
+                case "--checkpoint-every":
+                    checkpointEvery = Long.parseLong(args[++i]);
+                    break;
+                case "--resume":
+                    resume = true;
+                    break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(2);
+            }
+        }
+        if (input == null || output == null) {
+            System.err.println("Usage: java BatchEvaluate --input positions.txt --output results.tsv"
+                + " [--threads N] [--depth 14] [--time-ms 0] [--tt-size N] [--checkpoint-every N] [--resume]");
+            System.exit(2);
+        }
+
+        new BatchEvaluate(Paths.get(input), Paths.get(output), Math.max(1, threads), depth, timeMillis,
+                tableSize, checkpointEvery).run(resume);
+    }
+}
@@ -0,0 +1,316 @@
+import java.util.Arrays;
+
+/**
+ * Size and winning length of a board: ROWS x COLS with CONNECT in a row to
+ * win, for variants such as 8x7 or Connect-5 on 9x6.
+ *
+ * Like WinLines, it lists every winning line once and keeps the lines
+ * through each cell. Their bitboard masks use the same layout: one column of
+ * rows + 1 bits per board column, bottom row first, with a spare bit on
+ * top. Columns are packed into 64-bit words without crossing a word
+ * boundary, so boards of up to 64 bits (like 7x6 and 8x7) take one word,
+ * 9x7 and 10x6 take two, and larger boards take as many as they need. Line
+ * masks hold one long per word.
+ *
+ * The layout says which of those it is, and VariantPosition, VariantEngine
+ * and the win checks here switch on it: one-word boards find wins with
+ * shifts as Position does, two-word boards read both words directly, and
+ * only larger boards loop over a word array. Within MAX_CELLS every board
+ * fits in two words, so the word-array path is only a fallback.
+ *
+ * The standard 7x6 board keeps its own fast path in WinLines, Position and
+ * SearchEngine, whose sizes are compile-time constants; STANDARD describes
+ * the same board and WinLines takes its tables from it.
+ */
+public final class BoardGeometry {
+    public static final BoardGeometry STANDARD = new BoardGeometry(6, 7, 4);
+
+    // Columns are stored as move + 1 in four bits of a TranspositionTable entry
+    public static final int MAX_SIZE = 15;
+    // A win scores WIN_SCORE - (its move number), and only scores within 100 of
+    // WIN_SCORE count as wins (SearchEngine.WIN_THRESHOLD)
+    public static final int MAX_CELLS = SearchEngine.WIN_SCORE - SearchEngine.WIN_THRESHOLD - 1;
+
+    /** How positions on this board are stored, and so which code path plays them. */
+    public enum Layout {
+        ONE_LONG, TWO_LONGS, MULTI_WORD
+    }
+
+    public final int rows;
+    public final int cols;
+    public final int connect;
+    public final int cells;
+    // Bits per column in a bitboard word, including the spare one
+    public final int height;
+    public final int colsPerWord;
+    public final int words;
+    public final Layout layout;
+
+    // line index -> cell indices (row * cols + col) of that line
+    final int[][] lineCells;
+    // cell index -> indices of every line passing through that cell
+    final int[][] linesByCell;
+    // line index * words + word -> mask of the line's cells in that word
+    final long[] lineMasks;
+    // Columns from the centre out, for move ordering
+    final int[] columnOrder;
+
+    public BoardGeometry(int rows, int cols, int connect) {
+        if (rows < 2 || cols < 2 || rows > MAX_SIZE || cols > MAX_SIZE) {
+            throw new IllegalArgumentException("Board must be 2 to " + MAX_SIZE + " rows and columns");
+        }
+        if (rows * cols > MAX_CELLS) {
+            throw new IllegalArgumentException("Board can't have more than " + MAX_CELLS + " cells");
+        }
+        if (connect < 2 || connect > Math.max(rows, cols)) {
+            throw new IllegalArgumentException("Can't make " + connect + " in a row on " + cols + "x" + rows);
+        }
+        this.rows = rows;
+        this.cols = cols;
+        this.connect = connect;
+        this.cells = rows * cols;
+        this.height = rows + 1;
+        this.colsPerWord = 64 / height;
+        this.words = (cols + colsPerWord - 1) / colsPerWord;
+        this.layout = words == 1 ? Layout.ONE_LONG : words == 2 ? Layout.TWO_LONGS : Layout.MULTI_WORD;
+
+        int[][] lines = new int[cells * 4][];
+        int count = 0;
+        // Horizontal, vertical, diagonal (positive slope), diagonal (negative slope)
+        int[][] directions = {{0, 1}, {1, 0}, {1, 1}, {-1, 1}};
+        for (int[] dir : directions) {
+            for (int row = 0; row < rows; row++) {
+                for (int col = 0; col < cols; col++) {
+                    int endRow = row + (connect - 1) * dir[0];
+                    int endCol = col + (connect - 1) * dir[1];
+                    if (endRow < 0 || endRow >= rows || endCol >= cols) {
+                        continue;
+                    }
+                    int[] line = new int[connect];
+                    for (int i = 0; i < connect; i++) {
+                        line[i] = cell(row + i * dir[0], col + i * dir[1]);
+                    }
+                    lines[count++] = line;
+                }
+            }
+        }
+        lineCells = Arrays.copyOf(lines, count);
+
+        lineMasks = new long[count * words];
+        for (int line = 0; line < count; line++) {
+            for (int c : lineCells[line]) {
+                lineMasks[line * words + wordOf(colOf(c))] |= bit(rowOf(c), colOf(c));
+            }
+        }
+
+        int[] perCell = new int[cells];
+        for (int[] line : lineCells) {
+            for (int c : line) {
+                perCell[c]++;
+            }
+        }
+        linesByCell = new int[cells][];
+        for (int c = 0; c < cells; c++) {
+            linesByCell[c] = new int[perCell[c]];
+            perCell[c] = 0;
+        }
+        for (int line = 0; line < count; line++) {
+            for (int c : lineCells[line]) {
+                linesByCell[c][perCell[c]++] = line;
+            }
+        }
+
+        // Centre first, then alternating outwards, left before right
+        columnOrder = new int[cols];
+        for (int i = 0; i < cols; i++) {
+            if (cols % 2 == 1) {
+                int offset = (i + 1) / 2;
+                columnOrder[i] = cols / 2 + (i % 2 == 1 ? -offset : offset);
+            } else {
+                int offset = i / 2;
+                columnOrder[i] = i % 2 == 0 ? cols / 2 - 1 - offset : cols / 2 + offset;
+            }
+        }
+    }
+
+    /**
+     * Parses "COLSxROWS" or "COLSxROWSxCONNECT", e.g. "9x7" or "9x6x5";
+     * CONNECT defaults to 4. The standard size gives STANDARD itself.
+     */
+    public static BoardGeometry parse(String variant) {
+        String[] parts = variant.trim().toLowerCase().split("x");
+        if (parts.length < 2 || parts.length > 3) {
+            throw new IllegalArgumentException("Variant must be COLSxROWS or COLSxROWSxCONNECT: " + variant);
+        }
+        int cols;
+        int rows;
+        int connect;
+        try {
+            cols = Integer.parseInt(parts[0]);
+            rows = Integer.parseInt(parts[1]);
+            connect = parts.length == 3 ? Integer.parseInt(parts[2]) : 4;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Variant must be COLSxROWS or COLSxROWSxCONNECT: " + variant);
+        }
+        BoardGeometry geometry = new BoardGeometry(rows, cols, connect);
+        return geometry.isStandard() ? STANDARD : geometry;
+    }
+
+    public boolean isStandard() {
+        return rows == STANDARD.rows && cols == STANDARD.cols && connect == STANDARD.connect;
+    }
+
+    public int lineCount() {
+        return lineCells.length;
+    }
+
+    public int cell(int row, int col) {
+        return row * cols + col;
+    }
+
+    public int rowOf(int cell) {
+        return cell / cols;
+    }
+
+    public int colOf(int cell) {
+        return cell % cols;
+    }
+
+    // Bitboard word holding this column
+    public int wordOf(int col) {
+        return col / colsPerWord;
+    }
+
+    // Bit for a cell within its column's word; row 0 is the top of the board
+    public long bit(int row, int col) {
+        return 1L << ((col % colsPerWord) * height + (rows - 1 - row));
+    }
+
+    /**
+     * Index of the line through (row, col) that pieces (one long per word)
+     * fully cover, or -1.
+     */
+    public int findWin(long[] pieces, int row, int col) {
+        for (int line : linesByCell[cell(row, col)]) {
+            if (covers(pieces, line)) {
+                return line;
+            }
+        }
+        return -1;
+    }
+
+    // Whether a piece at (row, col) on top of pieces would complete a line through it
+    public boolean completes(long[] pieces, int row, int col) {
+        int word = wordOf(col);
+        long bit = bit(row, col);
+        switch (layout) {
+            case ONE_LONG:
+                return completes(pieces[0] | bit, bit);
+            case TWO_LONGS:
+                long first = word == 0 ? pieces[0] | bit : pieces[0];
+                long second = word == 1 ? pieces[1] | bit : pieces[1];
+                for (int line : linesByCell[cell(row, col)]) {
+                    long mask0 = lineMasks[2 * line];
+                    long mask1 = lineMasks[2 * line + 1];
+                    if ((first & mask0) == mask0 && (second & mask1) == mask1) {
+                        return true;
+                    }
+                }
+                return false;
+            default:
+                break;
+        }
+        for (int line : linesByCell[cell(row, col)]) {
+            int base = line * words;
+            boolean covered = true;
+            for (int w = 0; w < words && covered; w++) {
+                long mask = lineMasks[base + w];
+                long own = w == word ? pieces[w] | bit : pieces[w];
+                covered = (own & mask) == mask;
+            }
+            if (covered) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * One-word boards: whether pieces (with bit set) hold connect in a row
+     * through bit, found with shifts like Position's win check. The spare
+     * bit on top of each column keeps runs from wrapping into the next one.
+     */
+    private boolean completes(long pieces, long bit) {
+        // Vertical, horizontal and both diagonals
+        return run(pieces, bit, 1) || run(pieces, bit, height) || run(pieces, bit, height - 1)
+            || run(pieces, bit, height + 1);
+    }
+
+    private boolean run(long pieces, long bit, int shift) {
+        if (shift * (connect - 1) >= 64) {
+            // No line of this direction fits on the board
+            return false;
+        }
+        // Lowest bit of every run of connect, then whether one of them covers bit
+        long starts = pieces;
+        for (int i = 1; i < connect; i++) {
+            starts &= pieces >>> (shift * i);
+        }
+        for (int i = 0; i < connect && starts != 0; i++) {
+            if ((starts & (bit >>> (shift * i))) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    boolean covers(long[] pieces, int line) {
+        int base = line * words;
+        if (layout == Layout.ONE_LONG) {
+            long mask = lineMasks[base];
+            return (pieces[0] & mask) == mask;
+        }
+        if (layout == Layout.TWO_LONGS) {
+            long mask0 = lineMasks[base];
+            long mask1 = lineMasks[base + 1];
+            return (pieces[0] & mask0) == mask0 && (pieces[1] & mask1) == mask1;
+        }
+        for (int w = 0; w < words; w++) {
+            long mask = lineMasks[base + w];
+            if ((pieces[w] & mask) != mask) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // {row, col} of each cell of a line
+    public int[][] positions(int line) {
+        int[] cellsOfLine = lineCells[line];
+        int[][] positions = new int[cellsOfLine.length][];
+        for (int i = 0; i < cellsOfLine.length; i++) {
+            positions[i] = new int[] {rowOf(cellsOfLine[i]), colOf(cellsOfLine[i])};
+        }
+        return positions;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof BoardGeometry)) {
+            return false;
+        }
+        BoardGeometry other = (BoardGeometry) o;
+        return rows == other.rows && cols == other.cols && connect == other.connect;
+    }
+
+    @Override
+    public int hashCode() {
+        return (rows * 31 + cols) * 31 + connect;
+    }
+
+    // COLSxROWS, with xCONNECT unless it's 4
+    @Override
+    public String toString() {
+        return cols + "x" + rows + (connect == 4 ? "" : "x" + connect);
+    }
+}
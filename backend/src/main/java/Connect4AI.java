@@ -6,14 +6,20 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
 import java.io.FileInputStream;
+import java.util.concurrent.atomic.LongAdder;
 
-public class Connect4AI {
+public class Connect4AI implements MoveEngine {
     private static final String OPENAI_API_URL = "https://api.openai.com/v1/chat/completions";
     private static final String MODEL = "gpt-3.5-turbo";
     private final OkHttpClient client;
     private final ObjectMapper objectMapper;
     private final String apiKey;
 
+    private static final LatencyHistogram llmLatency = Metrics.histogram("connect4_llm_request_duration_seconds",
+            "Latency of OpenAI API calls", "");
+    private static final LongAdder llmFailures = Metrics.counter("connect4_llm_failures_total",
+            "OpenAI calls that failed and fell back to a random move", "");
+
     public Connect4AI() {
         this.client = new OkHttpClient();
         this.objectMapper = new ObjectMapper();
@@ -26,25 +32,43 @@ public class Connect4AI {
             props.load(new FileInputStream("../.env"));
             return props.getProperty("OPENAI_API_KEY");
         } catch (IOException e) {
-            System.err.println("Failed to load API key: " + e.getMessage());
+            Log.warn("Failed to load API key: {}", e.getMessage());
             return null;
         }
     }
 
+    @Override
     public int getMove(int[][] board) {
         if (apiKey == null) {
             return getRandomMove(board);
         }
 
+        LlmRequestEvent event = new LlmRequestEvent();
+        event.begin();
         try {
             String boardState = convertBoardToInput(board);
             String prompt = createPrompt(boardState);
             
-            String response = callOpenAI(prompt);
-            return processOpenAIResponse(response);
+            String response = callOpenAI(prompt, event);
+            int move = processOpenAIResponse(response);
+            if (move == -1) {
+                // An answer we can't use is as much a failure as no answer
+                llmFailures.increment();
+                event.fallback = true;
+                return getRandomMove(board);
+            }
+            return move;
         } catch (Exception e) {
-            System.err.println("AI prediction failed: " + e.getMessage());
+            llmFailures.increment();
+            event.fallback = true;
+            Log.warn("AI prediction failed: {}", e.getMessage());
             return getRandomMove(board);
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.model = MODEL;
+                event.commit();
+            }
         }
     }
 
@@ -58,7 +82,7 @@ public class Connect4AI {
         );
     }
 
-    private String callOpenAI(String prompt) throws IOException {
+    private String callOpenAI(String prompt, LlmRequestEvent event) throws IOException {
         String jsonBody = String.format(
             "{\"model\": \"%s\", \"messages\": [{\"role\": \"user\", \"content\": \"%s\"}]}",
             MODEL, prompt
@@ -71,11 +95,17 @@ public class Connect4AI {
             .post(RequestBody.create(MediaType.parse("application/json"), jsonBody))
             .build();
 
+        long start = System.nanoTime();
         try (Response response = client.newCall(request).execute()) {
+            event.statusCode = response.code();
+            Metrics.counter("connect4_llm_requests_total", "OpenAI API calls by HTTP status",
+                    "status=\"" + response.code() + "\"").increment();
             if (!response.isSuccessful()) {
                 throw new IOException("Unexpected response code: " + response);
             }
             return response.body().string();
+        } finally {
+            llmLatency.record((System.nanoTime() - start) / 1000);
         }
     }
 
@@ -89,10 +119,10 @@ public class Connect4AI {
                 return move;
             }
         } catch (NumberFormatException e) {
-            System.err.println("Invalid move format from AI: " + content);
+            Log.warn("Invalid move format from AI: {}", content);
         }
         
-        return getRandomMove(null);
+        return -1;
     }
 
     private String convertBoardToInput(int[][] board) {
@@ -121,6 +151,7 @@ public class Connect4AI {
         return availableColumns.get(randomIndex);
     }
 
+    @Override
     public void close() {
         client.dispatcher().executorService().shutdown();
         client.connectionPool().evictAll();
@@ -0,0 +1,133 @@
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * How strongly the AI plays a game, as the resources and accuracy it gets
+ * rather than a choice of engine.
+ *
+ * A profile follows from one skill value between 0 and 1. The node and time
+ * budgets grow geometrically with it, from 1,000 nodes and 50 ms at 0 to
+ * 4,000,000 nodes and a second at 1. Evaluation noise and the chance to
+ * blunder shrink to nothing on the way. An easy move therefore costs a
+ * thousandth of the CPU of an expert one, and a blunder costs no search at
+ * all. The named profiles are fixed points on that scale; an adaptive game
+ * moves its skill after every game toward a target win rate for the player
+ * (see adapt).
+ */
+public final class DifficultyProfile {
+    public static final DifficultyProfile EASY = forSkill("easy", 0);
+    public static final DifficultyProfile MEDIUM = forSkill("medium", 0.4);
+    public static final DifficultyProfile HARD = forSkill("hard", 0.75);
+    public static final DifficultyProfile EXPERT = forSkill("expert", 1);
+    // Name of profiles that adapt to the player
+    public static final String AUTO = "auto";
+
+    private static final long MIN_NODES = 1_000;
+    private static final long MAX_NODES = 4_000_000;
+    private static final long MIN_TIME_MILLIS = 50;
+    private static final long MAX_TIME_MILLIS = 1_000;
+    private static final int MAX_NOISE = 400;
+    private static final double MAX_BLUNDER = 0.25;
+
+    public final String name;
+    public final double skill;
+    public final long nodeBudget;
+    public final long timeBudgetMillis;
+    // Leaf scores are off by up to this much either way
+    public final int evalNoise;
+    // Chance of playing a random safe move without searching
+    public final double blunderProbability;
+
+    // Looked up once per profile name; adaptive profiles share theirs
+    final LongAdder moves;
+    final LongAdder nodes;
+
+    private DifficultyProfile(String name, double skill) {
+        this.name = name;
+        this.skill = skill;
+        this.nodeBudget = Math.round(MIN_NODES * Math.pow((double) MAX_NODES / MIN_NODES, skill));
+        this.timeBudgetMillis = Math.round(MIN_TIME_MILLIS * Math.pow((double) MAX_TIME_MILLIS / MIN_TIME_MILLIS, skill));
+        this.evalNoise = (int) Math.round(MAX_NOISE * (1 - skill) * (1 - skill));
+        this.blunderProbability = MAX_BLUNDER * (1 - skill) * (1 - skill);
+        String label = "difficulty=\"" + name + "\"";
+        this.moves = Metrics.counter("connect4_ai_difficulty_moves_total", "AI moves played, by difficulty", label);
+        this.nodes = Metrics.counter("connect4_ai_difficulty_nodes_total",
+                "Nodes searched for AI moves, by difficulty", label);
+    }
+
+    public static DifficultyProfile forSkill(String name, double skill) {
+        return new DifficultyProfile(name, Math.max(0, Math.min(1, skill)));
+    }
+
+    // easy, medium, hard or expert; auto starts at medium
+    public static DifficultyProfile named(String name) {
+        switch (name.toLowerCase()) {
+            case "easy":
+                return EASY;
+            case "medium":
+                return MEDIUM;
+            case "hard":
+                return HARD;
+            case "expert":
+                return EXPERT;
+            case AUTO:
+                return forSkill(AUTO, MEDIUM.skill);
+            default:
+                throw new IllegalArgumentException("Unknown difficulty: " + name);
+        }
+    }
+
+    /**
+     * The next named profile below this one, or easy itself; null (the
+     * engine's own strength) counts as expert.
+     */
+    public static DifficultyProfile easier(DifficultyProfile profile) {
+        if (profile == null) {
+            profile = EXPERT;
+        }
+        DifficultyProfile[] ladder = {HARD, MEDIUM, EASY};
+        for (DifficultyProfile lower : ladder) {
+            if (lower.skill < profile.skill) {
+                return lower;
+            }
+        }
+        return EASY;
+    }
+
+    public boolean isAdaptive() {
+        return AUTO.equals(name);
+    }
+
+    /**
+     * The profile for the next game after one the player scored
+     * playerScore in (1 win, 0.5 draw, 0 loss): stronger when the player
+     * does better than targetWinRate, weaker when worse, by step per game
+     * at most. Over many games the player's score settles at the target.
+     */
+    public DifficultyProfile adapt(double playerScore, double targetWinRate, double step) {
+        return forSkill(name, skill + step * (playerScore - targetWinRate));
+    }
+
+    public boolean blunders() {
+        return blunderProbability > 0 && ThreadLocalRandom.current().nextDouble() < blunderProbability;
+    }
+
+    // Same noise for the same position within one search (salt), so the table stays consistent
+    int noise(long key, long salt) {
+        if (evalNoise == 0) {
+            return 0;
+        }
+        long h = (key ^ salt) * 0x9E3779B97F4A7C15L;
+        return (int) Math.floorMod(h >>> 17, 2L * evalNoise + 1) - evalNoise;
+    }
+
+    // Value of GameHistory's difficulty column: 1 + skill in percent
+    public int getHistoryCode() {
+        return 1 + (int) Math.round(skill * 100);
+    }
+
+    @Override
+    public String toString() {
+        return isAdaptive() ? String.format("%s(%.2f)", name, skill) : name;
+    }
+}
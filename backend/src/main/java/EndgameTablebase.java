@@ -0,0 +1,162 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Exact win/draw/loss results for endgame positions, read from a file
+ * written by TablebaseGenerator and memory-mapped, so it costs no heap and
+ * the OS shares its pages between processes.
+ *
+ * File layout (big endian): magic "C4TB", version 1, the largest number of
+ * empty cells covered, the number of positions, the number of index bits,
+ * then the index: 2^bits + 1 ints, the first entry of each bucket. Then the
+ * hashed keys sorted ascending (8 bytes each), and the results, 2 bits
+ * each, four to a byte.
+ *
+ * Keys are hashed by multiplying with an odd constant modulo 2^49, which
+ * maps the 49-bit canonical keys one to one and spreads them evenly, so the
+ * top bits make a balanced index. Plain endgame keys would not: their high
+ * bits are the right-hand columns, which are nearly always full by then.
+ *
+ * Only positions the search can't settle by itself are stored: no
+ * immediate wins, no positions where every move loses, none with two or
+ * fewer empty cells.
+ */
+public class EndgameTablebase {
+    public static final int LOSS = 0;
+    public static final int DRAW = 1;
+    public static final int WIN = 2;
+    public static final int UNKNOWN = -1;
+
+    static final int MAGIC = 0x43345442; // "C4TB"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 20;
+    // Canonical keys are below 2^49
+    private static final int KEY_BITS = 49;
+    private static final long KEY_MASK = (1L << KEY_BITS) - 1;
+    private static final int MIN_INDEX_BITS = 4;
+    private static final int MAX_INDEX_BITS = 24;
+
+    private final int emptyCells;
+    private final int count;
+    private final int indexShift;
+    private final MappedByteBuffer data;
+    private final LongBuffer keys;
+    private final int valuesOffset;
+    private final LongAdder hits = Metrics.counter("connect4_tablebase_hits_total",
+            "Search nodes answered by the endgame tablebase", "");
+
+    public EndgameTablebase(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(path + " is too large to map");
+            }
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (data.getInt(0) != MAGIC || data.getInt(4) != VERSION) {
+            throw new IOException(path + " is not an endgame tablebase");
+        }
+        emptyCells = data.getInt(8);
+        count = data.getInt(12);
+        int indexBits = data.getInt(16);
+        if (indexBits < MIN_INDEX_BITS || indexBits > MAX_INDEX_BITS) {
+            throw new IOException(path + " has a bad index");
+        }
+        indexShift = KEY_BITS - indexBits;
+        int keysOffset = HEADER_BYTES + ((1 << indexBits) + 1) * 4;
+        keys = data.duplicate().position(keysOffset).slice().asLongBuffer();
+        valuesOffset = keysOffset + count * 8;
+        if (data.capacity() < valuesOffset + (count + 3) / 4) {
+            throw new IOException(path + " is truncated");
+        }
+    }
+
+    // Largest number of empty cells a stored position has
+    public int getEmptyCells() {
+        return emptyCells;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    // WIN, DRAW or LOSS for the side to move, or UNKNOWN when the position isn't stored
+    public int probe(Position position) {
+        if (Position.CELLS - position.getMoves() > emptyCells) {
+            return UNKNOWN;
+        }
+        long key = hash(position.canonicalKey());
+        int bucket = (int) (key >>> indexShift);
+        int low = data.getInt(HEADER_BYTES + bucket * 4);
+        int high = data.getInt(HEADER_BYTES + (bucket + 1) * 4) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long found = keys.get(mid);
+            if (found < key) {
+                low = mid + 1;
+            } else if (found > key) {
+                high = mid - 1;
+            } else {
+                hits.increment();
+                return data.get(valuesOffset + (mid >> 2)) >>> ((mid & 3) * 2) & 3;
+            }
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * Writes a tablebase file. entries holds key << 2 | result for each
+     * position and is sorted in place.
+     */
+    static void write(Path path, int emptyCells, long[] entries, int length) throws IOException {
+        for (int i = 0; i < length; i++) {
+            entries[i] = hash(entries[i] >>> 2) << 2 | (entries[i] & 3);
+        }
+        Arrays.parallelSort(entries, 0, length);
+        // About 8 keys per bucket
+        int indexBits = Math.max(MIN_INDEX_BITS, Math.min(MAX_INDEX_BITS,
+                32 - Integer.numberOfLeadingZeros(length / 8)));
+        int indexShift = KEY_BITS - indexBits;
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp),
+                1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(emptyCells);
+            out.writeInt(length);
+            out.writeInt(indexBits);
+            int next = 0;
+            for (int bucket = 0; bucket <= 1 << indexBits; bucket++) {
+                while (next < length && (entries[next] >>> 2 >>> indexShift) < bucket) {
+                    next++;
+                }
+                out.writeInt(next);
+            }
+            for (int i = 0; i < length; i++) {
+                out.writeLong(entries[i] >>> 2);
+            }
+            for (int i = 0; i < length; i += 4) {
+                int packed = 0;
+                for (int j = 0; j < 4 && i + j < length; j++) {
+                    packed |= (int) (entries[i + j] & 3) << (j * 2);
+                }
+                out.writeByte(packed);
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // One to one on 49-bit keys, since the multiplier is odd
+    private static long hash(long key) {
+        return key * 0x9E3779B97F4A7C15L & KEY_MASK;
+    }
+}
@@ -0,0 +1,125 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import jdk.jfr.ValueDescriptor;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingStream;
+
+/**
+ * GET /events streams the server's JFR events as they happen, one line per
+ * event, for as long as the client stays connected or until ?seconds=N
+ * (default 60, at most 3600) have passed.
+ *
+ * Each request opens its own RecordingStream with the connect4.* events
+ * enabled, so nothing is recorded while nobody is watching unless the JVM
+ * was started with -XX:StartFlightRecording. ?events=Search,LlmRequest limits
+ * the stream to some of the event types.
+ *
+ * Every stream holds a server thread while it's open, so at most maxStreams
+ * are open at once; further requests get 503.
+ */
+public class EventStreamHandler implements HttpHandler {
+    private static final String[] EVENTS = {"Move", "Search", "LlmRequest", "Session"};
+    private static final long MAX_SECONDS = 3600;
+
+    private final int maxStreams;
+    private final AtomicLong open = Metrics.gauge("connect4_event_streams", "Open /events streams", "");
+
+    public EventStreamHandler(int maxStreams) {
+        this.maxStreams = maxStreams;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("GET")) {
+            exchange.sendResponseHeaders(405, -1);
+            exchange.close();
+            return;
+        }
+
+        long seconds = 60;
+        String requested = GameServer.queryParam(exchange, "seconds");
+        try {
+            if (requested != null) {
+                seconds = Math.max(1, Math.min(MAX_SECONDS, Long.parseLong(requested)));
+            }
+        } catch (NumberFormatException e) {
+            exchange.sendResponseHeaders(400, -1);
+            exchange.close();
+            return;
+        }
+        String filter = GameServer.queryParam(exchange, "events");
+        String[] names = filter == null ? EVENTS : filter.split(",");
+
+        if (open.incrementAndGet() > maxStreams) {
+            open.decrementAndGet();
+            exchange.getResponseHeaders().set("Retry-After", "60");
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+            return;
+        }
+        try {
+            stream(exchange, names, seconds);
+        } finally {
+            open.decrementAndGet();
+        }
+    }
+
+    private void stream(HttpExchange exchange, String[] names, long seconds) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream os = exchange.getResponseBody();
+        // Not try-with-resources: the event callback closes it when the client goes away
+        RecordingStream stream = new RecordingStream();
+        try {
+            for (String name : names) {
+                stream.enable("connect4." + name.trim());
+            }
+            stream.setMaxAge(Duration.ofSeconds(10));
+            stream.onEvent(event -> {
+                try {
+                    os.write(format(event).getBytes(StandardCharsets.UTF_8));
+                    os.flush();
+                } catch (IOException e) {
+                    // Client went away
+                    stream.close();
+                }
+            });
+            stream.startAsync();
+            stream.awaitTermination(Duration.ofSeconds(seconds));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            stream.close();
+            try {
+                os.close();
+            } catch (IOException e) {
+                // Already disconnected
+            }
+        }
+    }
+
+    // "<time> connect4.Search duration=1.234ms engine=mcts column=3 ..."
+    static String format(RecordedEvent event) {
+        StringBuilder line = new StringBuilder(128);
+        line.append(event.getStartTime()).append(' ').append(event.getEventType().getName());
+        if (!event.getDuration().isZero()) {
+            line.append(" duration=").append(event.getDuration().toNanos() / 1000 / 1000.0).append("ms");
+        }
+        for (ValueDescriptor field : event.getEventType().getFields()) {
+            String name = field.getName();
+            if (name.equals("startTime") || name.equals("duration") || name.equals("eventThread")
+                    || name.equals("stackTrace")) {
+                continue;
+            }
+            Object value = event.getValue(name);
+            line.append(' ').append(name).append('=').append(value);
+        }
+        return line.append('\n').toString();
+    }
+}
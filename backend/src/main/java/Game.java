@@ -1,119 +1,157 @@
 public class Game {
-    private static final int ROWS = 6;
-    private static final int COLS = 7;
     private static final int EMPTY = 0;
     private static final int PLAYER = 1;
     private static final int AI = 2;
-    private static final int WINNING_SCORE = 100000;
     private static final int BLOCKING_SCORE = 10000;
-    private static final int THREE_IN_ROW = 1000;
-    private static final int TWO_IN_ROW = 100;
+    private static final int ZUGZWANG_SCORE = 500;
     private static final int MAX_DEPTH = 4;
+    // Largest change in an adaptive difficulty's skill after one game
+    private static final double ADAPT_STEP = 0.1;
+    private final BoardGeometry geometry;
+    private final int rows;
+    private final int cols;
     private int[][] board;
     private int currentPlayer;
     private boolean gameOver;
     private int winner;
-    private int[][] winningPositions;
-    private Connect4AI ai;
+    private int winningLine;
+    private long[] pieces;
+    // Pieces of each player on variant boards, one long per bitboard word;
+    // null on the standard board, which uses pieces and the evaluator
+    private long[][] variantPieces;
+    // Number of pieces in each column, so make/undo don't have to scan for the top
+    private int[] heights;
+    // Columns played so far, in order
+    private byte[] history;
+    private int historyLength;
+    // Wall-clock time of the first move made through makeMove, or 0
+    private long startMillis;
+    private WindowEvaluator evaluator;
+    // Exact endgame results for minimax, or null
+    private EndgameTablebase tablebase;
+    private MoveEngine ai;
+    private ResultCache cache;
+    // Replies searched on the player's time since the last AI move, or null
+    private Ponderer.Replies pondering;
+    // Strength the AI plays at, or null for the engine's own
+    private DifficultyProfile difficulty;
+    // Player win rate an adaptive difficulty aims for
+    private double targetWinRate;
 
     public Game() {
-        board = new int[ROWS][COLS];
+        this(new Connect4AI(), null);
+    }
+
+    // Game with a (possibly shared) engine; cache may be null
+    public Game(MoveEngine engine, ResultCache cache) {
+        this(BoardGeometry.STANDARD, engine, cache);
+    }
+
+    // Game on any board size. Minimax and the window evaluator only support the standard one.
+    public Game(BoardGeometry geometry, MoveEngine engine, ResultCache cache) {
+        this.geometry = geometry;
+        rows = geometry.rows;
+        cols = geometry.cols;
+        board = new int[rows][cols];
         currentPlayer = 1;
         gameOver = false;
         winner = 0;
-        winningPositions = null;
-        ai = new Connect4AI();
+        winningLine = -1;
+        pieces = new long[3];
+        if (!geometry.isStandard()) {
+            variantPieces = new long[3][geometry.words];
+        }
+        heights = new int[cols];
+        history = new byte[rows * cols];
+        if (variantPieces == null) {
+            evaluator = new WindowEvaluator();
+        }
+        ai = engine;
+        this.cache = cache;
     }
 
     public boolean makeMove(int col) {
-        if (gameOver || col < 0 || col >= COLS) {
+        if (!place(col)) {
             return false;
         }
-
-        // Find the lowest empty row in the selected column
-        for (int row = ROWS - 1; row >= 0; row--) {
-            if (board[row][col] == 0) {
-                board[row][col] = currentPlayer;
-                
-                // Check for win after making the move
-                if (checkWin(row, col)) {
-                    gameOver = true;
-                    winner = currentPlayer;
-                    return true;
-                }
-                
-                // Switch players only if no win
-                currentPlayer = currentPlayer == 1 ? 2 : 1;
-                return true;
-            }
+        if (pondering != null) {
+            pondering.played(col);
         }
-        return false;
+        if (historyLength == 1) {
+            startMillis = System.currentTimeMillis();
+        }
+        MoveEvent event = new MoveEvent();
+        if (event.shouldCommit()) {
+            int row = rows - heights[col];
+            event.column = col;
+            event.row = row;
+            event.player = board[row][col];
+            event.positionKey = positionKey();
+            event.gameOver = gameOver;
+            event.winner = winner;
+            event.commit();
+        }
+        return true;
     }
 
-    private boolean checkWin(int row, int col) {
-        int player = board[row][col];
-        
-        // Check horizontal
-        for (int c = 0; c <= COLS - 4; c++) {
-            if (board[row][c] == player &&
-                board[row][c + 1] == player &&
-                board[row][c + 2] == player &&
-                board[row][c + 3] == player) {
-                winningPositions = new int[][] {
-                    {row, c}, {row, c + 1}, {row, c + 2}, {row, c + 3}
-                };
-                return true;
-            }
+    // makeMove without the JFR event, for searches and perft that play
+    // and take back moves by the million
+    boolean place(int col) {
+        if (gameOver || col < 0 || col >= cols) {
+            return false;
         }
-        
-        // Check vertical
-        for (int r = 0; r <= ROWS - 4; r++) {
-            if (board[r][col] == player &&
-                board[r + 1][col] == player &&
-                board[r + 2][col] == player &&
-                board[r + 3][col] == player) {
-                winningPositions = new int[][] {
-                    {r, col}, {r + 1, col}, {r + 2, col}, {r + 3, col}
-                };
-                return true;
-            }
+
+        if (heights[col] == rows) {
+            return false;
         }
+
+        // Lowest empty row in the selected column
+        int row = rows - 1 - heights[col];
+        heights[col]++;
+        history[historyLength++] = (byte) col;
+        board[row][col] = currentPlayer;
+        setPiece(row, col, currentPlayer);
         
-        // Check diagonal (positive slope)
-        for (int r = 0; r <= ROWS - 4; r++) {
-            for (int c = 0; c <= COLS - 4; c++) {
-                if (board[r][c] == player &&
-                    board[r + 1][c + 1] == player &&
-                    board[r + 2][c + 2] == player &&
-                    board[r + 3][c + 3] == player) {
-                    winningPositions = new int[][] {
-                        {r, c}, {r + 1, c + 1}, {r + 2, c + 2}, {r + 3, c + 3}
-                    };
-                    return true;
-                }
-            }
+        // Check for win after making the move
+        if (checkWin(row, col)) {
+            gameOver = true;
+            winner = currentPlayer;
+            return true;
         }
         
-        // Check diagonal (negative slope)
-        for (int r = 3; r < ROWS; r++) {
-            for (int c = 0; c <= COLS - 4; c++) {
-                if (board[r][c] == player &&
-                    board[r - 1][c + 1] == player &&
-                    board[r - 2][c + 2] == player &&
-                    board[r - 3][c + 3] == player) {
-                    winningPositions = new int[][] {
-                        {r, c}, {r - 1, c + 1}, {r - 2, c + 2}, {r - 3, c + 3}
-                    };
-                    return true;
-                }
-            }
+        // Switch players only if no win
+        currentPlayer = currentPlayer == 1 ? 2 : 1;
+        return true;
+    }
+
+    // Only the (at most 16 on the standard board) lines through the new piece can have become a win
+    private boolean checkWin(int row, int col) {
+        int player = board[row][col];
+        winningLine = variantPieces == null ? WinLines.findWin(pieces[player], row, col)
+            : geometry.findWin(variantPieces[player], row, col);
+        return winningLine != -1;
+    }
+
+    private void setPiece(int row, int col, int player) {
+        if (variantPieces == null) {
+            pieces[player] |= WinLines.bit(row, col);
+            evaluator.place(row, col, player);
+        } else {
+            variantPieces[player][geometry.wordOf(col)] |= geometry.bit(row, col);
+        }
+    }
+
+    private void clearPiece(int row, int col, int player) {
+        if (variantPieces == null) {
+            evaluator.remove(row, col, player);
+            pieces[player] &= ~WinLines.bit(row, col);
+        } else {
+            variantPieces[player][geometry.wordOf(col)] &= ~geometry.bit(row, col);
         }
-        
-        return false;
     }
 
     private boolean isBoardFull() {
-        for (int col = 0; col < COLS; col++) {
+        for (int col = 0; col < cols; col++) {
             if (board[0][col] == 0) {
                 return false;
             }
@@ -125,12 +163,31 @@ public class Game {
         return board;
     }
 
+    public BoardGeometry getGeometry() {
+        return geometry;
+    }
+
     public void reset() {
-        board = new int[ROWS][COLS];
+        if (difficulty != null && difficulty.isAdaptive() && isFinished()) {
+            double playerScore = winner == PLAYER ? 1 : winner == AI ? 0 : 0.5;
+            difficulty = difficulty.adapt(playerScore, targetWinRate, ADAPT_STEP);
+        }
+        board = new int[rows][cols];
         currentPlayer = 1;
         gameOver = false;
         winner = 0;
-        winningPositions = null;
+        winningLine = -1;
+        pieces = new long[3];
+        if (variantPieces != null) {
+            variantPieces = new long[3][geometry.words];
+        }
+        heights = new int[cols];
+        historyLength = 0;
+        startMillis = 0;
+        if (evaluator != null) {
+            evaluator.reset();
+        }
+        setPondering(null);
     }
 
     public boolean isGameOver() {
@@ -141,12 +198,116 @@ public class Game {
         return winner;
     }
 
+    // Won, or drawn with the board full
+    public boolean isFinished() {
+        return gameOver || historyLength == rows * cols;
+    }
+
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    public String getEngineName() {
+        return ai == null ? "none" : ai.getName();
+    }
+
+    public int getWinningLine() {
+        return winningLine;
+    }
+
     public int[][] getWinningPositions() {
-        return winningPositions;
+        if (winningLine == -1) {
+            return null;
+        }
+        return variantPieces == null ? WinLines.positions(winningLine) : geometry.positions(winningLine);
     }
 
     public int getAIMove() {
-        return ai.getMove(board);
+        return searchAIMove().move;
+    }
+
+    // The AI's move with the statistics of the search (or cache hit) behind it
+    public SearchResult searchAIMove() {
+        return searchAIMove(difficulty);
+    }
+
+    /**
+     * searchAIMove at another strength for this move only, e.g. a cheaper
+     * one for a client over its CPU share; null is the engine's own.
+     */
+    public SearchResult searchAIMove(DifficultyProfile strength) {
+        SearchEvent event = new SearchEvent();
+        event.begin();
+        long key = positionKey();
+        SearchResult result = null;
+        if (pondering != null) {
+            SearchResult pondered = pondering.take(key);
+            pondering = null;
+            if (pondered != null && pondered.move != -1 && isValidMove(pondered.move)) {
+                result = pondered;
+            }
+        }
+        // The cache holds full-strength moves; a weaker game can't use them, but
+        // one only weakened for this move may, as a hit costs nothing
+        if (result == null && cache != null && difficulty == null) {
+            int cached = cache.get(key);
+            if (cached != -1 && isValidMove(cached)) {
+                result = new SearchResult(cached, ai.getName(), SearchResult.CACHE);
+                result.pv = new int[] {cached};
+                event.cached = true;
+            }
+        }
+        if (result == null && strength != null) {
+            result = ai.search(board, strength);
+            strength.moves.increment();
+            strength.nodes.add(result.nodes);
+        } else if (result == null) {
+            result = ai.search(board);
+            if (cache != null && result.move != -1) {
+                cache.put(key, result.move);
+            }
+        }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.engine = result.engine;
+            event.column = result.move;
+            event.depth = result.depth;
+            event.nodes = result.nodes;
+            event.ttHits = result.ttHits;
+            event.positionKey = key;
+            event.commit();
+        }
+        return result;
+    }
+
+    // Moves played so far as 1-based columns, e.g. "4453", the format Position.fromMoves reads
+    public String getMoveString() {
+        StringBuilder moves = new StringBuilder(historyLength);
+        for (int i = 0; i < historyLength; i++) {
+            moves.append((char) ('1' + history[i]));
+        }
+        return moves.toString();
+    }
+
+    public int getMoveCount() {
+        if (variantPieces != null) {
+            int count = 0;
+            for (int height : heights) {
+                count += height;
+            }
+            return count;
+        }
+        return Long.bitCount(pieces[PLAYER] | pieces[AI]);
+    }
+
+    // Unique for every position (own pieces plus the occupied mask); see
+    // VariantPosition.key() for boards of more than one word
+    long positionKey() {
+        if (variantPieces != null) {
+            return VariantPosition.fromBoard(geometry, board).key();
+        }
+        return pieces[currentPlayer] + (pieces[PLAYER] | pieces[AI]);
     }
 
     public void cleanup() {
@@ -155,16 +316,117 @@ public class Game {
         }
     }
 
+    // Replaces the position with this board; player 1 always moves first.
+    // The order the pieces were played in is unknown, so there is no move history.
+    void loadBoard(int[][] position) {
+        reset();
+        for (int row = rows - 1; row >= 0; row--) {
+            for (int col = 0; col < cols; col++) {
+                int player = position[row][col];
+                if (player != EMPTY) {
+                    board[row][col] = player;
+                    setPiece(row, col, player);
+                    heights[col]++;
+                }
+            }
+        }
+        currentPlayer = getMoveCount() % 2 == 0 ? PLAYER : AI;
+    }
+
+    // Replaces (and stops) the pondering for this game
+    void setPondering(Ponderer.Replies replies) {
+        if (pondering != null) {
+            pondering.drop();
+        }
+        pondering = replies;
+    }
+
+    public DifficultyProfile getDifficulty() {
+        return difficulty;
+    }
+
+    /**
+     * Plays at this strength from the next AI move on; null goes back to
+     * the engine's own. An adaptive profile moves toward targetWinRate after
+     * every finished game.
+     */
+    public void setDifficulty(DifficultyProfile difficulty, double targetWinRate) {
+        this.difficulty = difficulty;
+        this.targetWinRate = targetWinRate;
+    }
+
+    double getTargetWinRate() {
+        return targetWinRate;
+    }
+
+    // GameHistory's difficulty column: 0 for the engine's own strength
+    public int getDifficultyCode() {
+        return difficulty == null ? 0 : difficulty.getHistoryCode();
+    }
+
+    void setTablebase(EndgameTablebase tablebase) {
+        this.tablebase = tablebase;
+    }
+
+    // Best column for the side to move by the minimax search below, or -1
+    int minimaxMove(int depth) {
+        if (variantPieces != null) {
+            throw new IllegalStateException("Minimax only plays the standard board, not " + geometry);
+        }
+        boolean maximizing = currentPlayer == AI;
+        int best = -1;
+        int bestScore = 0;
+        for (int col = 0; col < cols; col++) {
+            if (isValidMove(col)) {
+                place(col);
+                int score = minimax(depth - 1, !maximizing, Integer.MIN_VALUE, Integer.MAX_VALUE);
+                undoMove(col);
+                if (best == -1 || (maximizing ? score > bestScore : score < bestScore)) {
+                    best = col;
+                    bestScore = score;
+                }
+            }
+        }
+        return best;
+    }
+
     private int minimax(int depth, boolean isMaximizing, int alpha, int beta) {
-        if (depth == 0 || isGameOver()) {
+        if (isGameOver()) {
+            return evaluateBoard();
+        }
+        // Once the board is nearly full the tablebase knows the result, so
+        // there's no need to search or guess
+        long mask = pieces[PLAYER] | pieces[AI];
+        if (tablebase != null && rows * cols - Long.bitCount(mask) <= tablebase.getEmptyCells()) {
+            int result = tablebase.probe(Position.fromBitboards(pieces[currentPlayer], mask));
+            if (result != EndgameTablebase.UNKNOWN) {
+                int score = result == EndgameTablebase.WIN ? WindowEvaluator.WINNING_SCORE
+                    : result == EndgameTablebase.LOSS ? -WindowEvaluator.WINNING_SCORE : 0;
+                return currentPlayer == AI ? score : -score;
+            }
+        }
+        if (depth == 0) {
             return evaluateBoard();
         }
+
+        // Threat pruning: skip moves that let the opponent win straight away
+        if (ThreatAnalyzer.playable(mask) == 0) {
+            return evaluateBoard();
+        }
+        // An immediate win comes first: nonLosingMoves would drop it if it is
+        // also the cell the opponent threatens, or not the forced block
+        long wins = ThreatAnalyzer.winningCells(pieces[currentPlayer], mask) & ThreatAnalyzer.playable(mask);
+        long opponent = pieces[currentPlayer == PLAYER ? AI : PLAYER];
+        long allowed = wins != 0 ? wins & -wins : ThreatAnalyzer.nonLosingMoves(pieces[currentPlayer], opponent, mask);
+        if (allowed == 0) {
+            allowed = ThreatAnalyzer.playable(mask);
+        }
         
         if (isMaximizing) {
             int maxScore = Integer.MIN_VALUE;
-            for (int col = 0; col < COLS; col++) {
-                if (isValidMove(col)) {
-                    makeMove(col);
+            for (int col = 0; col < cols; col++) {
+                if (isValidMove(col) && (allowed & ThreatAnalyzer.columnMask(col)) != 0) {
+                    place(col);
                     int score = minimax(depth - 1, false, alpha, beta);
                     undoMove(col);
                     maxScore = Math.max(maxScore, score);
@@ -175,9 +437,9 @@ public class Game {
             return maxScore;
         } else {
             int minScore = Integer.MAX_VALUE;
-            for (int col = 0; col < COLS; col++) {
-                if (isValidMove(col)) {
-                    makeMove(col);
+            for (int col = 0; col < cols; col++) {
+                if (isValidMove(col) && (allowed & ThreatAnalyzer.columnMask(col)) != 0) {
+                    place(col);
                     int score = minimax(depth - 1, true, alpha, beta);
                     undoMove(col);
                     minScore = Math.min(minScore, score);
@@ -189,66 +451,20 @@ public class Game {
         }
     }
 
-    private int evaluateBoard() {
-        int score = 0;
-        
-        // Evaluate horizontal
-        for (int row = 0; row < ROWS; row++) {
-            for (int col = 0; col <= COLS - 4; col++) {
-                score += evaluateWindow(row, col, 0, 1);
-            }
-        }
-        
-        // Evaluate vertical
-        for (int row = 0; row <= ROWS - 4; row++) {
-            for (int col = 0; col < COLS; col++) {
-                score += evaluateWindow(row, col, 1, 0);
-            }
-        }
-        
-        // Evaluate diagonal (positive slope)
-        for (int row = 0; row <= ROWS - 4; row++) {
-            for (int col = 0; col <= COLS - 4; col++) {
-                score += evaluateWindow(row, col, 1, 1);
-            }
-        }
-        
-        // Evaluate diagonal (negative slope)
-        for (int row = 3; row < ROWS; row++) {
-            for (int col = 0; col <= COLS - 4; col++) {
-                score += evaluateWindow(row, col, -1, 1);
-            }
-        }
-        
-        return score;
-    }
+    // Window scores are kept up to date by makeMove/undoMove, so a leaf
+    // evaluation no longer needs to rescan the board
+    int evaluateBoard() {
+        int score = evaluator.getScore();
 
-    private int evaluateWindow(int startRow, int startCol, int rowDelta, int colDelta) {
-        int aiCount = 0;
-        int playerCount = 0;
-        int emptyCount = 0;
-        
-        for (int i = 0; i < 4; i++) {
-            int row = startRow + (i * rowDelta);
-            int col = startCol + (i * colDelta);
-            
-            if (board[row][col] == AI) {
-                aiCount++;
-            } else if (board[row][col] == PLAYER) {
-                playerCount++;
-            } else {
-                emptyCount++;
-            }
+        // Odd/even threat parity decides who wins once the board fills up
+        long mask = pieces[PLAYER] | pieces[AI];
+        int favoured = ThreatAnalyzer.zugzwangWinner(pieces[PLAYER], pieces[AI], mask);
+        if (favoured == AI) {
+            score += ZUGZWANG_SCORE;
+        } else if (favoured == PLAYER) {
+            score -= ZUGZWANG_SCORE;
         }
-        
-        if (aiCount == 4) return WINNING_SCORE;
-        if (playerCount == 4) return -WINNING_SCORE;
-        if (aiCount == 3 && emptyCount == 1) return THREE_IN_ROW;
-        if (playerCount == 3 && emptyCount == 1) return -THREE_IN_ROW;
-        if (aiCount == 2 && emptyCount == 2) return TWO_IN_ROW;
-        if (playerCount == 2 && emptyCount == 2) return -TWO_IN_ROW;
-        
-        return 0;
+        return score;
     }
 
     private boolean isValidMove(int col) {
@@ -256,8 +472,8 @@ public class Game {
     }
 
     private int getLastMoveRow() {
-        for (int row = 0; row < ROWS; row++) {
-            for (int col = 0; col < COLS; col++) {
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
                 if (board[row][col] != EMPTY) {
                     return row;
                 }
@@ -266,13 +482,19 @@ public class Game {
         return -1;
     }
 
-    private void undoMove(int col) {
-        for (int row = 0; row < ROWS; row++) {
-            if (board[row][col] != EMPTY) {
-                board[row][col] = EMPTY;
-                break;
-            }
-        }
-        currentPlayer = currentPlayer == PLAYER ? AI : PLAYER;
+    // Exact inverse of a successful makeMove(col) or place(col), including one that ended the game
+    void undoMove(int col) {
+        int row = rows - heights[col];
+        int player = board[row][col];
+        heights[col]--;
+        historyLength--;
+        clearPiece(row, col, player);
+        board[row][col] = EMPTY;
+
+        // The piece removed was the last one played, so it is that player's turn again
+        currentPlayer = player;
+        gameOver = false;
+        winner = 0;
+        winningLine = -1;
     }
-} 
\ No newline at end of file
+}
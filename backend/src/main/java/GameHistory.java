@@ -0,0 +1,444 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Every finished game, kept for analytics and training.
+ *
+ * Games live in memory-mapped segment files with a column per field, each
+ * game 32 bytes in all: end time (8), duration (4), result, engine,
+ * difficulty and move count (1 each), and the moves packed 3 bits apiece
+ * into 16 bytes. A million games take 32 MB. Queries read the columns in
+ * place through a reusable {@link GameView}, so nothing is deserialized and
+ * scanning a column runs at memory speed.
+ *
+ * Games are appended in end-time order, so a date range is a binary search
+ * within each segment. Each segment also keeps the positions of its games by
+ * result, so "all AI wins in October" touches only those games.
+ *
+ * Segment layout: a 4 KB header (magic, capacity, count, engine names),
+ * then the columns, each sized for the segment's capacity.
+ */
+public class GameHistory implements AutoCloseable {
+    public static final int DRAW = 0;
+    public static final int PLAYER_WIN = 1;
+    public static final int AI_WIN = 2;
+
+    private static final int MAGIC = 0x43344847; // "C4HG"
+    private static final int HEADER_BYTES = 4096;
+    private static final int MAX_ENGINES = 64;
+    private static final int ENGINE_NAME_BYTES = 32;
+    private static final int ENGINES_OFFSET = 16;
+    private static final int BYTES_PER_GAME = 32;
+
+    private final Path dir;
+    private final int capacity;
+    private final List<Segment> segments = new ArrayList<>();
+    private long lastEndMillis;
+
+    /** Called for each matching game; return false to stop. */
+    public interface Visitor {
+        boolean visit(GameView game);
+    }
+
+    /**
+     * @param capacity games per segment file; a segment takes
+     *        capacity * 32 bytes plus 4 KB
+     */
+    public GameHistory(Path dir, int capacity) throws IOException {
+        this.dir = dir;
+        this.capacity = capacity;
+        Files.createDirectories(dir);
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "history-*.dat")) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        Collections.sort(files);
+        for (Path file : files) {
+            segments.add(new Segment(file, 0));
+        }
+        if (!segments.isEmpty()) {
+            Segment last = segments.get(segments.size() - 1);
+            lastEndMillis = last.count == 0 ? 0 : last.endMillis(last.count - 1);
+        }
+        Metrics.gauge("connect4_history_games", "Finished games in the history store", "", () -> size());
+    }
+
+    /**
+     * Appends a finished game. moves are 1-based columns ("4453"), result
+     * is DRAW, PLAYER_WIN or AI_WIN, and startMillis may be 0 when unknown.
+     */
+    public synchronized void add(String moves, int result, String engine, int difficulty, long startMillis) {
+        // End times never go backwards, even if the clock does, so date ranges stay a binary search
+        long end = Math.max(System.currentTimeMillis(), lastEndMillis);
+        Segment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (segment == null || segment.count == segment.capacity) {
+            try {
+                if (segment != null) {
+                    segment.force();
+                }
+                segment = new Segment(segmentFile(segments.size()), capacity);
+            } catch (IOException e) {
+                Log.error("Failed to open a new history segment", e);
+                return;
+            }
+            synchronized (segments) {
+                segments.add(segment);
+            }
+        }
+        segment.append(moves, result, segment.engineId(engine), difficulty,
+                startMillis == 0 ? 0 : (int) Math.min(end - startMillis, Integer.MAX_VALUE), end);
+        lastEndMillis = end;
+    }
+
+    public long size() {
+        long total = 0;
+        for (Segment segment : segments()) {
+            total += segment.count;
+        }
+        return total;
+    }
+
+    /**
+     * Visits the games with this result (or any result for -1) that ended
+     * in [fromMillis, toMillis), oldest first. Returns the number visited.
+     */
+    public long forEach(int result, long fromMillis, long toMillis, Visitor visitor) {
+        long visited = 0;
+        for (Segment segment : segments()) {
+            int count = segment.count;
+            if (count == 0 || segment.endMillis(0) >= toMillis || segment.endMillis(count - 1) < fromMillis) {
+                continue;
+            }
+            int from = segment.firstEndingAtOrAfter(fromMillis, count);
+            int to = segment.firstEndingAtOrAfter(toMillis, count);
+            GameView view = new GameView(segment);
+            if (result < 0) {
+                for (int i = from; i < to; i++) {
+                    view.index = i;
+                    visited++;
+                    if (!visitor.visit(view)) {
+                        return visited;
+                    }
+                }
+            } else {
+                int[] games;
+                int size;
+                synchronized (segment) {
+                    games = segment.byResult[result];
+                    size = segment.resultCounts[result];
+                }
+                int start = Arrays.binarySearch(games, 0, size, from);
+                for (int i = start < 0 ? -start - 1 : start; i < size && games[i] < to; i++) {
+                    view.index = games[i];
+                    visited++;
+                    if (!visitor.visit(view)) {
+                        return visited;
+                    }
+                }
+            }
+        }
+        return visited;
+    }
+
+    public synchronized void flush() {
+        for (Segment segment : segments()) {
+            segment.force();
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+
+    private List<Segment> segments() {
+        synchronized (segments) {
+            return new ArrayList<>(segments);
+        }
+    }
+
+    private Path segmentFile(int number) {
+        return dir.resolve(String.format("history-%06d.dat", number));
+    }
+
+    /**
+     * One stored game, read straight from the mapped columns. The same view
+     * moves from game to game during a query, so copy out anything to keep.
+     */
+    public static class GameView {
+        private final Segment segment;
+        private int index;
+
+        GameView(Segment segment) {
+            this.segment = segment;
+        }
+
+        public long getEndMillis() {
+            return segment.endMillis(index);
+        }
+
+        public int getDurationMillis() {
+            return segment.data.getInt(segment.durationOffset + index * 4);
+        }
+
+        public int getResult() {
+            return segment.data.get(segment.resultOffset + index);
+        }
+
+        public String getEngine() {
+            return segment.engines.get(segment.data.get(segment.engineOffset + index));
+        }
+
+        public int getDifficulty() {
+            return segment.data.get(segment.difficultyOffset + index);
+        }
+
+        public int getMoveCount() {
+            return segment.data.get(segment.moveCountOffset + index);
+        }
+
+        // 0-based column of move i
+        public int getMove(int i) {
+            int bit = i * 3;
+            long word = segment.data.getLong(segment.movesOffset + index * 16 + (bit >> 6 << 3));
+            int shift = bit & 63;
+            long bits = word >>> shift;
+            if (shift > 61) {
+                bits |= segment.data.getLong(segment.movesOffset + index * 16 + 8) << (64 - shift);
+            }
+            return (int) (bits & 7);
+        }
+
+        // 1-based move string, as Position.fromMoves reads
+        public String getMoveString() {
+            int count = getMoveCount();
+            char[] moves = new char[count];
+            for (int i = 0; i < count; i++) {
+                moves[i] = (char) ('1' + getMove(i));
+            }
+            return new String(moves);
+        }
+    }
+
+    private static class Segment {
+        final MappedByteBuffer data;
+        final int capacity;
+        final int durationOffset;
+        final int resultOffset;
+        final int engineOffset;
+        final int difficultyOffset;
+        final int moveCountOffset;
+        final int movesOffset;
+        // Written under the store's lock, read by queries at any time
+        final List<String> engines = new CopyOnWriteArrayList<>();
+        volatile int count;
+        // Game indexes by result, ascending; guarded by this
+        final int[][] byResult = new int[3][];
+        final int[] resultCounts = new int[3];
+
+        // capacity 0 opens an existing segment
+        Segment(Path file, int newCapacity) throws IOException {
+            try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+                if (newCapacity > 0) {
+                    raf.setLength(HEADER_BYTES + (long) newCapacity * BYTES_PER_GAME);
+                }
+                data = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+            }
+            if (newCapacity > 0) {
+                data.putInt(0, MAGIC);
+                data.putInt(4, newCapacity);
+            } else if (data.getInt(0) != MAGIC) {
+                throw new IOException(file + " is not a game history segment");
+            }
+            capacity = data.getInt(4);
+            count = data.getInt(8);
+            int engineCount = data.getInt(12);
+            for (int i = 0; i < engineCount; i++) {
+                int offset = ENGINES_OFFSET + i * ENGINE_NAME_BYTES;
+                byte[] name = new byte[data.get(offset)];
+                data.get(offset + 1, name);
+                engines.add(new String(name, StandardCharsets.UTF_8));
+            }
+
+            durationOffset = HEADER_BYTES + capacity * 8;
+            resultOffset = durationOffset + capacity * 4;
+            engineOffset = resultOffset + capacity;
+            difficultyOffset = engineOffset + capacity;
+            moveCountOffset = difficultyOffset + capacity;
+            movesOffset = moveCountOffset + capacity;
+
+            for (int r = 0; r < 3; r++) {
+                byResult[r] = new int[16];
+            }
+            for (int i = 0; i < count; i++) {
+                index(i, data.get(resultOffset + i));
+            }
+        }
+
+        long endMillis(int i) {
+            return data.getLong(HEADER_BYTES + i * 8);
+        }
+
+        // Binary search over the end-time column
+        int firstEndingAtOrAfter(long millis, int count) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (endMillis(mid) < millis) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        int engineId(String engine) {
+            int id = engines.indexOf(engine);
+            if (id >= 0) {
+                return id;
+            }
+            if (engines.size() == MAX_ENGINES) {
+                return engineId("other");
+            }
+            byte[] name = engine.getBytes(StandardCharsets.UTF_8);
+            int length = Math.min(name.length, ENGINE_NAME_BYTES - 1);
+            int offset = ENGINES_OFFSET + engines.size() * ENGINE_NAME_BYTES;
+            data.put(offset, (byte) length);
+            data.put(offset + 1, name, 0, length);
+            engines.add(new String(name, 0, length, StandardCharsets.UTF_8));
+            data.putInt(12, engines.size());
+            return engines.size() - 1;
+        }
+
+        void append(String moves, int result, int engine, int difficulty, int durationMillis, long endMillis) {
+            int i = count;
+            data.putLong(HEADER_BYTES + i * 8, endMillis);
+            data.putInt(durationOffset + i * 4, durationMillis);
+            data.put(resultOffset + i, (byte) result);
+            data.put(engineOffset + i, (byte) engine);
+            data.put(difficultyOffset + i, (byte) difficulty);
+            data.put(moveCountOffset + i, (byte) moves.length());
+            long low = 0;
+            long high = 0;
+            for (int m = 0; m < moves.length(); m++) {
+                long col = moves.charAt(m) - '1';
+                int bit = m * 3;
+                if (bit < 64) {
+                    low |= col << bit;
+                    if (bit > 61) {
+                        high |= col >>> (64 - bit);
+                    }
+                } else {
+                    high |= col << (bit - 64);
+                }
+            }
+            data.putLong(movesOffset + i * 16, low);
+            data.putLong(movesOffset + i * 16 + 8, high);
+            synchronized (this) {
+                index(i, result);
+            }
+            // The count goes last, so a reader never sees a half-written game
+            count = i + 1;
+            data.putInt(8, count);
+        }
+
+        private void index(int game, int result) {
+            if (resultCounts[result] == byResult[result].length) {
+                byResult[result] = Arrays.copyOf(byResult[result], byResult[result].length * 2);
+            }
+            byResult[result][resultCounts[result]++] = game;
+        }
+
+        void force() {
+            data.force();
+        }
+    }
+
+    /**
+     * Queries a history directory: prints matching games, one per line
+     * (end time, engine, difficulty, result, duration, moves), or only
+     * their count and the totals by result with --count.
+     *
+     * Usage: java GameHistory --dir data/history [--result draw|player|ai]
+     *        [--from 2026-10-01] [--to 2026-11-01] [--count]
+     */
+    public static void main(String[] args) throws IOException {
+        String dir = null;
+        int result = -1;
+        long from = Long.MIN_VALUE;
+        long to = Long.MAX_VALUE;
+        boolean countOnly = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--dir":
+                    dir = args[++i];
+                    break;
+                case "--result":
+                    result = Arrays.asList("draw", "player", "ai").indexOf(args[++i]);
+                    break;
+                case "--from":
+                    from = LocalDate.parse(args[++i]).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+                    break;
+                case "--to":
+                    to = LocalDate.parse(args[++i]).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+                    break;
+                case "--count":
+                    countOnly = true;
+                    break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(2);
+            }
+        }
+        if (dir == null || !Files.isDirectory(Paths.get(dir))) {
+            System.err.println("Usage: java GameHistory --dir data/history [--result draw|player|ai]"
+                + " [--from 2026-10-01] [--to 2026-11-01] [--count]");
+            System.exit(2);
+        }
+
+        GameHistory history = new GameHistory(Paths.get(dir), 1 << 20);
+        long start = System.nanoTime();
+        long[] byResult = new long[3];
+        boolean print = !countOnly;
+        StringBuilder line = new StringBuilder(128);
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out,
+                StandardCharsets.UTF_8), 1 << 16));
+        long visited = history.forEach(result, from, to, game -> {
+            byResult[game.getResult()]++;
+            if (print) {
+                line.setLength(0);
+                line.append(Instant.ofEpochMilli(game.getEndMillis())).append('\t').append(game.getEngine())
+                    .append('\t').append(game.getDifficulty()).append('\t')
+                    .append(new String[] {"draw", "player", "ai"}[game.getResult()]).append('\t')
+                    .append(game.getDurationMillis()).append('\t').append(game.getMoveString());
+                out.println(line);
+            }
+            return true;
+        });
+        out.flush();
+        System.err.printf("%d games (draw %d, player %d, ai %d) in %.1f ms%n", visited, byResult[DRAW],
+                byResult[PLAYER_WIN], byResult[AI_WIN], (System.nanoTime() - start) / 1e6);
+    }
+}
@@ -0,0 +1,425 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Append-only journal of every move and reset, so live games survive a
+ * restart or a crash.
+ *
+ * Records go into numbered segment files, one small record per event:
+ * type, game ID, generation (resets so far), ply and column, closed by a
+ * CRC32. Appends only copy the record into a buffer; a writer thread writes
+ * whatever has built up and fsyncs it once for the whole batch, so under load
+ * many requests share each fsync (group commit). A caller that must not
+ * answer before its record is on disk waits with {@link #awaitDurable}.
+ *
+ * A snapshot holds the move list of every live game. Writing one starts a
+ * new segment first and then deletes all older segments and snapshots, so
+ * the journal never grows much beyond one snapshot plus the moves since.
+ * Games are captured while play goes on, so a snapshot may already contain
+ * some of the records in the segments after it; records carry their
+ * generation and ply so that replaying them twice changes nothing.
+ */
+public class GameJournal implements AutoCloseable {
+    public static final byte MOVE = 1;
+    public static final byte RESET = 2;
+    public static final byte DROP = 3;
+
+    private static final int SNAPSHOT_MAGIC = 0x43345331; // "C4S1"
+
+    /** Receives the journal's contents on startup, oldest first. */
+    public interface Replay {
+        void game(String id, int generation, String moves);
+
+        void record(byte type, String id, int generation, int ply, int column);
+    }
+
+    /** A game as it goes into a snapshot. */
+    public static class GameState {
+        final String id;
+        final int generation;
+        final String moves;
+
+        public GameState(String id, int generation, String moves) {
+            this.id = id;
+            this.generation = generation;
+            this.moves = moves;
+        }
+    }
+
+    private final Path dir;
+    private final long segmentBytes;
+    private final Thread writer;
+
+    // Guarded by this: records not yet handed to the writer
+    private ByteBuffer pending = ByteBuffer.allocate(1 << 16);
+    private ByteBuffer spare = ByteBuffer.allocate(1 << 16);
+    private long appended;
+    private boolean closed;
+
+    // Guarded by writeLock: the open segment
+    private final Object writeLock = new Object();
+    private FileChannel segment;
+    private long segmentNumber;
+
+    private final Object durableLock = new Object();
+    private volatile long durable;
+    private volatile IOException writeError;
+    // Written under writeLock
+    private volatile long recordsSinceSnapshot;
+
+    private final CRC32 crc = new CRC32();
+    private final LongAdder records = Metrics.counter("connect4_journal_records_total",
+            "Moves and resets written to the game journal", "");
+    private final LongAdder syncs = Metrics.counter("connect4_journal_fsyncs_total",
+            "Group commits (one fsync each) of the game journal", "");
+    private final LatencyHistogram syncTime = Metrics.histogram("connect4_journal_fsync_duration_seconds",
+            "Time to write and fsync one batch of journal records", "");
+
+    /**
+     * Opens the journal in dir, replaying the latest snapshot and every
+     * segment after it into replay before anything new is written.
+     */
+    public GameJournal(Path dir, long segmentBytes, Replay replay) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(dir);
+
+        List<Long> segments = list("segment-", ".log");
+        List<Long> snapshots = list("snapshot-", ".snap");
+        long first = 0;
+        for (int i = snapshots.size() - 1; i >= 0; i--) {
+            if (readSnapshot(file("snapshot-", snapshots.get(i), ".snap"), replay)) {
+                first = snapshots.get(i);
+                break;
+            }
+            Log.warn("Journal snapshot {} is damaged, trying an older one", snapshots.get(i));
+        }
+        long replayed = 0;
+        for (long number : segments) {
+            if (number >= first) {
+                replayed += readSegment(file("segment-", number, ".log"), replay);
+            }
+        }
+        recordsSinceSnapshot = replayed;
+
+        // Never append to an old segment: its tail may be a torn record
+        long last = Math.max(first, segments.isEmpty() ? 0 : segments.get(segments.size() - 1) + 1);
+        openSegment(last);
+        Log.info("Journal {}: replayed {} records from segment {} on", dir, replayed, first);
+
+        writer = new Thread(this::writeLoop, "journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Sequence number to pass to awaitDurable
+    public long append(byte type, String id, int generation, int ply, int column) {
+        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        int length = 1 + 2 + idBytes.length + 4 + 1 + 1;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Journal is closed");
+            }
+            if (pending.remaining() < length + 4) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, length + 4));
+                pending.flip();
+                bigger.put(pending);
+                pending = bigger;
+            }
+            int start = pending.position();
+            pending.put(type).putShort((short) idBytes.length).put(idBytes)
+                .putInt(generation).put((byte) ply).put((byte) column);
+            crc.reset();
+            crc.update(pending.array(), start, length);
+            pending.putInt((int) crc.getValue());
+            appended++;
+            notifyAll();
+            return appended;
+        }
+    }
+
+    /** Blocks until the record with this sequence number has been fsynced. */
+    public void awaitDurable(long sequence) throws IOException {
+        if (durable >= sequence) {
+            return;
+        }
+        synchronized (durableLock) {
+            while (durable < sequence) {
+                if (writeError != null) {
+                    throw writeError;
+                }
+                try {
+                    durableLock.wait(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted waiting for the journal", e);
+                }
+            }
+        }
+    }
+
+    // Records appended since the last snapshot (or since startup's replay)
+    public long getRecordsSinceSnapshot() {
+        return recordsSinceSnapshot;
+    }
+
+    /**
+     * Writes a snapshot and compacts the journal. games is asked for the
+     * state of every live game only after the new segment is started, so
+     * everything older than that segment is covered by the snapshot.
+     */
+    public void snapshot(Supplier<List<GameState>> games) throws IOException {
+        long first;
+        synchronized (writeLock) {
+            flush();
+            segment.close();
+            first = segmentNumber + 1;
+            openSegment(first);
+            // Under the lock flush counts records in, so none are lost from the count
+            recordsSinceSnapshot = 0;
+        }
+
+        List<GameState> states = games.get();
+        Path temp = dir.resolve("snapshot.tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            CheckedOutputStream checked = new CheckedOutputStream(Channels.newOutputStream(channel), new CRC32());
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(checked, 1 << 16));
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(states.size());
+            for (GameState state : states) {
+                out.writeUTF(state.id);
+                out.writeInt(state.generation);
+                out.writeUTF(state.moves);
+            }
+            out.flush();
+            out.writeInt((int) checked.getChecksum().getValue());
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temp, file("snapshot-", first, ".snap"), StandardCopyOption.ATOMIC_MOVE);
+        // The rename must be on disk before the older snapshot it replaces is deleted
+        syncDirectory();
+
+        // Compaction: the snapshot covers everything before its segment
+        for (long number : list("segment-", ".log")) {
+            if (number < first) {
+                Files.deleteIfExists(file("segment-", number, ".log"));
+            }
+        }
+        for (long number : list("snapshot-", ".snap")) {
+            if (number < first) {
+                Files.deleteIfExists(file("snapshot-", number, ".snap"));
+            }
+        }
+        Log.info("Journal snapshot {}: {} games", first, states.size());
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (writeLock) {
+            flush();
+            segment.close();
+        }
+    }
+
+    private void writeLoop() {
+        while (true) {
+            synchronized (this) {
+                while (pending.position() == 0 && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (closed) {
+                    return;
+                }
+            }
+            try {
+                synchronized (writeLock) {
+                    flush();
+                    if (segment.size() >= segmentBytes) {
+                        segment.close();
+                        openSegment(segmentNumber + 1);
+                    }
+                }
+            } catch (IOException e) {
+                Log.error("Journal write failed", e);
+                writeError = e;
+                synchronized (durableLock) {
+                    durableLock.notifyAll();
+                }
+                return;
+            }
+        }
+    }
+
+    // Writes and fsyncs everything appended so far; caller holds writeLock
+    private void flush() throws IOException {
+        ByteBuffer batch;
+        long upTo;
+        synchronized (this) {
+            if (pending.position() == 0) {
+                return;
+            }
+            batch = pending;
+            pending = spare;
+            spare = batch;
+            upTo = appended;
+        }
+        long start = System.nanoTime();
+        batch.flip();
+        int count = (int) (upTo - durable);
+        while (batch.hasRemaining()) {
+            segment.write(batch);
+        }
+        segment.force(false);
+        batch.clear();
+        syncTime.record((System.nanoTime() - start) / 1000);
+        syncs.increment();
+        records.add(count);
+        recordsSinceSnapshot += count;
+
+        durable = upTo;
+        synchronized (durableLock) {
+            durableLock.notifyAll();
+        }
+    }
+
+    private void openSegment(long number) throws IOException {
+        segmentNumber = number;
+        segment = FileChannel.open(file("segment-", number, ".log"), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        // Records fsynced to a new segment are only safe once its directory entry is
+        syncDirectory();
+    }
+
+    // Fsyncs the journal directory, so files created or renamed in it survive a crash
+    private void syncDirectory() throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(dir, StandardOpenOption.READ);
+        } catch (IOException e) {
+            // Some platforms (Windows) can't open a directory, and don't need this
+            return;
+        }
+        try (channel) {
+            channel.force(true);
+        }
+    }
+
+    // Records in a segment up to the first torn or damaged one
+    private int readSegment(Path path, Replay replay) throws IOException {
+        int count = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            byte[] record = new byte[1 << 10];
+            while (true) {
+                int type = in.read();
+                if (type == -1) {
+                    break;
+                }
+                int idLength = in.readUnsignedShort();
+                int length = 1 + 2 + idLength + 4 + 1 + 1;
+                if (record.length < length) {
+                    record = new byte[length];
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(record, 0, length);
+                buffer.put((byte) type).putShort((short) idLength);
+                in.readFully(record, 3, length - 3);
+                crc.reset();
+                crc.update(record, 0, length);
+                if (in.readInt() != (int) crc.getValue()) {
+                    throw new EOFException("checksum mismatch");
+                }
+                buffer.position(3 + idLength);
+                String id = new String(record, 3, idLength, StandardCharsets.UTF_8);
+                replay.record((byte) type, id, buffer.getInt(), buffer.get(), buffer.get());
+                count++;
+            }
+        } catch (EOFException e) {
+            // A crash mid-write leaves a partial last record; everything before it is intact
+            Log.warn("Journal {} ends in a torn or damaged record after {} records", path.getFileName(), count);
+        }
+        return count;
+    }
+
+    // False when the snapshot is incomplete or damaged
+    private boolean readSnapshot(Path path, Replay replay) throws IOException {
+        List<GameState> states = new ArrayList<>();
+        try (InputStream file = Files.newInputStream(path)) {
+            CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(file), new CRC32());
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                return false;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                states.add(new GameState(in.readUTF(), in.readInt(), in.readUTF()));
+            }
+            int expected = (int) checked.getChecksum().getValue();
+            if (in.readInt() != expected) {
+                return false;
+            }
+        } catch (EOFException e) {
+            return false;
+        }
+        for (GameState state : states) {
+            replay.game(state.id, state.generation, state.moves);
+        }
+        return true;
+    }
+
+    // File numbers with this prefix and suffix, in order
+    private List<Long> list(String prefix, String suffix) throws IOException {
+        List<Long> numbers = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, prefix + "*" + suffix)) {
+            for (Path path : files) {
+                String name = path.getFileName().toString();
+                try {
+                    numbers.add(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())));
+                } catch (NumberFormatException e) {
+                    // not ours
+                }
+            }
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+    private Path file(String prefix, long number, String suffix) {
+        return dir.resolve(String.format("%s%016d%s", prefix, number, suffix));
+    }
+}
@@ -3,26 +3,312 @@ import java.net.*;
 import com.sun.net.httpserver.*;
 import java.util.stream.Collectors;
 import java.util.Map;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 
 public class GameServer {
     private static final int PORT = 8080;
-    private Game game;
+    private SessionRegistry sessions;
+    // Finished games, when -Dhistory.dir is set
+    private GameHistory history;
+    // Stateless position analysis; shares the AI's table when the AI is a SearchEngine
+    private SearchEngine analyzer;
+    // Searches the player's replies between moves, when -Dponder=true
+    private Ponderer ponderer;
+    // Shares AI moves' CPU fairly between tenants; null when off (-Dscheduler.slots=0)
+    private AiScheduler scheduler;
+    // Request budgets per client and game for cheap and expensive endpoints; null when off
+    private RateLimiter cheapLimit;
+    private RateLimiter expensiveLimit;
+    // Whose CPU an AI move counts against: the client's address, or with -Dscheduler.tenant=game the game's
+    private final boolean tenantByGame = "game".equals(System.getProperty("scheduler.tenant", "client"));
+    // Board variants /reset?variant= may start; each gets its own engine and table
+    private final Set<BoardGeometry> variants = new HashSet<>();
+    private final long analysisTimeMillis = Long.getLong("analysis.timeMillis", 1000L);
+    // Player win rate that ?difficulty=auto games adapt toward
+    private final double targetWinRate = Double.parseDouble(System.getProperty("difficulty.targetWinRate", "0.5"));
+    private final AtomicLong inFlight = Metrics.gauge("connect4_http_requests_in_flight",
+            "Requests currently being handled", "");
 
-    public GameServer() {
-        game = new Game();
+    public GameServer() throws IOException {
+        MoveEngine engine = createEngine();
+        // Replaying a cached reply only suits engines that always answer a
+        // position the same way; the default AI and MCTS would stop varying
+        boolean deterministic = engine instanceof SearchEngine || engine instanceof NeuralEvaluator;
+        int cacheSize = Integer.getInteger("ai.cacheSize", deterministic ? 1 << 16 : 0);
+        ResultCache cache = cacheSize > 0 ? new ResultCache(cacheSize) : null;
+        // -Djournal.dir keeps games in progress across restarts and crashes
+        String journalDir = System.getProperty("journal.dir");
+        if (journalDir != null) {
+            sessions = new SessionRegistry(engine, cache, Paths.get(journalDir),
+                Long.getLong("journal.segmentBytes", 64L << 20), Long.getLong("journal.snapshotSeconds", 300L));
+        } else {
+            sessions = new SessionRegistry(engine, cache);
+        }
+        // Games on other board sizes (POST /reset?variant=9x7) get an engine per size.
+        // Only listed sizes, as every engine keeps a table for good
+        for (String variant : System.getProperty("variant.allowed", "8x7,9x7,9x6x5").split(",")) {
+            if (!variant.isBlank()) {
+                variants.add(BoardGeometry.parse(variant));
+            }
+        }
+        Map<BoardGeometry, MoveEngine> variantEngines = new ConcurrentHashMap<>();
+        long variantTimeMillis = Long.getLong("variant.timeMillis", Long.getLong("search.timeMillis", 1000L));
+        int variantTableSize = Integer.getInteger("variant.ttSize", 1 << 18);
+        sessions.setVariantEngines(geometry -> variantEngines.computeIfAbsent(geometry, g -> {
+            Log.info("Using variant engine for {} ({} layout)", g, g.layout);
+            return new VariantEngine(g, variantTimeMillis, 0, new TranspositionTable(variantTableSize));
+        }));
+        String historyDir = System.getProperty("history.dir");
+        if (historyDir != null) {
+            history = new GameHistory(Paths.get(historyDir), Integer.getInteger("history.segmentGames", 1 << 20));
+        }
+        analyzer = engine instanceof SearchEngine ? (SearchEngine) engine
+            : new SearchEngine(Position.CELLS, analysisTimeMillis,
+                new TranspositionTable(Integer.getInteger("search.ttSize", 1 << 20)), null);
+        // Only engines that spend CPU are scheduled unless asked for; the default
+        // AI mostly waits on the OpenAI API, and slots would only cap its calls
+        boolean cpuBound = engine instanceof SearchEngine || engine instanceof MctsEngine;
+        int slots = Integer.getInteger("scheduler.slots", cpuBound ? Runtime.getRuntime().availableProcessors() : 0);
+        if (slots > 0) {
+            scheduler = new AiScheduler(slots,
+                Double.parseDouble(System.getProperty("scheduler.halfLifeSeconds", "30")),
+                Double.parseDouble(System.getProperty("scheduler.maxShare", "0.25")),
+                AiScheduler.parseWeights(System.getProperty("scheduler.weights")));
+            Log.info("Scheduling AI moves fairly over {} slots by {}", slots, tenantByGame ? "game" : "client");
+        }
+        // Only the alpha-beta engine ponders: it can be stopped part way and
+        // its table keeps what it found. Pondering stops once more requests
+        // are in flight than there are cores
+        if (Boolean.getBoolean("ponder") && engine instanceof SearchEngine) {
+            int maxInFlight = Integer.getInteger("ponder.maxInFlight", Runtime.getRuntime().availableProcessors());
+            ponderer = new Ponderer((SearchEngine) engine, Integer.getInteger("ponder.threads", 1),
+                Integer.getInteger("ponder.queue", 64), () -> inFlight.get() > maxInFlight, scheduler);
+            Log.info("Pondering on the player's time (busy above {} requests in flight)", maxInFlight);
+        }
+        cheapLimit = rateLimiter("cheap", 20, 40);
+        expensiveLimit = rateLimiter("expensive", 2, 10);
+        Metrics.gauge("connect4_log_dropped_messages", "Log messages dropped because the log buffer was full", "",
+                () -> Log.getDropped());
+    }
+
+    // -Dratelimit.NAME.perSecond and .burst; a rate of 0 turns the budget off
+    private static RateLimiter rateLimiter(String name, double perSecond, int burst) {
+        double rate = Double.parseDouble(System.getProperty("ratelimit." + name + ".perSecond", String.valueOf(perSecond)));
+        if (rate <= 0) {
+            return null;
+        }
+        int size = Integer.getInteger("ratelimit." + name + ".burst", burst);
+        Log.info("Limiting {} requests to {}/s per client and game, bursts of {}", name, rate, size);
+        return new RateLimiter(name, rate, size, Integer.getInteger("ratelimit.maxBuckets", 1 << 16));
+    }
+
+    private static MoveEngine createEngine() {
+        // -Dengine=alphabeta uses the alpha-beta search with a transposition table
+        if ("alphabeta".equals(System.getProperty("engine"))) {
+            int depth = Integer.getInteger("search.depth", Position.CELLS);
+            long timeMillis = Long.getLong("search.timeMillis", 1000L);
+            int tableSize = Integer.getInteger("search.ttSize", 1 << 20);
+            OpeningBook book = OpeningBook.withDefaults();
+            String bookPath = System.getProperty("ai.book");
+            if (bookPath != null) {
+                try {
+                    book = OpeningBook.load(bookPath);
+                } catch (IOException e) {
+                    Log.warn("Failed to load opening book, using the built-in one: {}", e.getMessage());
+                }
+            }
+            Log.info("Using alpha-beta engine (depth {}, {} ms, {} book positions)", depth, timeMillis, book.size());
+            SearchEngine engine = new SearchEngine(depth, timeMillis, new TranspositionTable(tableSize), book);
+            // -Dsearch.tablebase=endgame.tb answers covered endgames exactly without searching them
+            String tablebasePath = System.getProperty("search.tablebase");
+            if (tablebasePath != null) {
+                try {
+                    EndgameTablebase tablebase = new EndgameTablebase(Paths.get(tablebasePath));
+                    engine.setTablebase(tablebase);
+                    Log.info("Loaded endgame tablebase ({} positions, up to {} empty cells)", tablebase.size(),
+                            tablebase.getEmptyCells());
+                } catch (IOException e) {
+                    Log.warn("Failed to load endgame tablebase, searching endgames instead: {}", e.getMessage());
+                }
+            }
+            return engine;
+        }
+
+        // -Dengine=mcts switches the AI to Monte Carlo Tree Search
+        if ("mcts".equals(System.getProperty("engine"))) {
+            int playouts = Integer.getInteger("mcts.playouts", 20000);
+            long timeMillis = Long.getLong("mcts.timeMillis", 0L);
+            int threads = Integer.getInteger("mcts.threads", 1);
+            MctsEngine.Parallelism parallelism =
+                MctsEngine.Parallelism.valueOf(System.getProperty("mcts.parallelism", "TREE"));
+            Log.info("Using MCTS engine ({} playouts, {} ms, {} threads, " + parallelism + ")",
+                playouts, timeMillis, threads);
+            return new MctsEngine(playouts, timeMillis, threads, parallelism, true,
+                Integer.getInteger("mcts.trees", 16));
+        }
+
+        // -Dengine=neural plays the policy of a model converted by convert_model.py
+        if ("neural".equals(System.getProperty("engine"))) {
+            String model = System.getProperty("neural.model", "models/connect4_model.bin");
+            try {
+                NeuralEvaluator evaluator = new NeuralEvaluator(model, 64);
+                Log.info("Using neural engine ({})", model);
+                return evaluator;
+            } catch (IOException e) {
+                Log.warn("Failed to load model, keeping default AI: {}", e.getMessage());
+            }
+        }
+        return new Connect4AI();
     }
 
     public void start() throws IOException {
         HttpServer server = HttpServer.create(new InetSocketAddress(PORT), 0);
         
-        server.createContext("/move", new MoveHandler());
-        server.createContext("/board", new BoardHandler());
-        server.createContext("/reset", new ResetHandler());
-        server.createContext("/ai-move", new AIMoveHandler());
+        // Searches (and ChatGPT calls) come out of the expensive budget
+        server.createContext("/move", instrument("/move", limit(cheapLimit, new MoveHandler())));
+        server.createContext("/board", instrument("/board", limit(cheapLimit, new BoardHandler())));
+        server.createContext("/reset", instrument("/reset", limit(cheapLimit, new ResetHandler())));
+        server.createContext("/ai-move", instrument("/ai-move", limit(expensiveLimit, new AIMoveHandler())));
+        server.createContext("/play", instrument("/play", limit(expensiveLimit, new PlayHandler())));
+        server.createContext("/analyze", instrument("/analyze", limit(expensiveLimit, new AnalyzeHandler())));
+        server.createContext("/metrics", limit(cheapLimit, new MetricsHandler()));
+        // A stream holds a thread for as long as it's open
+        server.createContext("/events",
+            limit(expensiveLimit, new EventStreamHandler(Integer.getInteger("events.maxStreams", 4))));
+
+        // Requests run on a pool, so a long AI search or an open /events
+        // stream doesn't hold up everyone else
+        server.setExecutor(Executors.newCachedThreadPool());
 
         server.start();
-        System.out.println("Server started on port " + PORT);
+        Log.info("Server started on port {}", PORT);
+    }
+
+    // Wraps a handler with the per-endpoint latency, status and in-flight metrics
+    private HttpHandler instrument(String endpoint, HttpHandler handler) {
+        LatencyHistogram latency = Metrics.histogram("connect4_http_request_duration_seconds",
+                "Request latency by endpoint", "endpoint=\"" + endpoint + "\"");
+        // Looked up once per status code, not per request
+        Map<Integer, LongAdder> byStatus = new ConcurrentHashMap<>();
+        return exchange -> {
+            long start = System.nanoTime();
+            inFlight.incrementAndGet();
+            try {
+                handler.handle(exchange);
+            } finally {
+                inFlight.decrementAndGet();
+                latency.record((System.nanoTime() - start) / 1000);
+                int status = exchange.getResponseCode();
+                LongAdder requests = byStatus.get(status);
+                if (requests == null) {
+                    requests = byStatus.computeIfAbsent(status, code -> Metrics.counter("connect4_http_requests_total",
+                            "Requests by endpoint and status", "endpoint=\"" + endpoint + "\",status=\"" + code + "\""));
+                }
+                requests.increment();
+            }
+        };
+    }
+
+    /**
+     * Answers 429 with Retry-After (whole seconds) once the client or the
+     * game has used up the limiter's budget. The shared default game is
+     * only limited per client, as everyone without a game ID plays it.
+     */
+    private HttpHandler limit(RateLimiter limiter, HttpHandler handler) {
+        if (limiter == null) {
+            return handler;
+        }
+        return exchange -> {
+            String id = gameId(exchange);
+            long wait = limiter.acquire(clientAddress(exchange), SessionRegistry.DEFAULT_ID.equals(id) ? null : id);
+            if (wait > 0) {
+                exchange.getResponseHeaders().set("Retry-After", String.valueOf((wait + 999_999_999) / 1_000_000_000));
+                sendResponse(exchange, "Too many requests", 429);
+                return;
+            }
+            handler.handle(exchange);
+        };
+    }
+
+    private static String clientAddress(HttpExchange exchange) {
+        return exchange.getRemoteAddress().getAddress().getHostAddress();
+    }
+
+    // Game ID from the "game" query parameter, or the shared default game's
+    private static String gameId(HttpExchange exchange) {
+        String id = queryParam(exchange, "game");
+        return id == null || id.isEmpty() ? SessionRegistry.DEFAULT_ID : id;
+    }
+
+    private Game game(HttpExchange exchange) {
+        return sessions.get(gameId(exchange));
+    }
+
+    // Keeps the game in the history once its last move is made; the caller holds the game's lock.
+    // The history only holds standard games
+    private void recordIfFinished(Game game) {
+        if (history != null && game.isFinished() && game.getGeometry().isStandard()) {
+            history.add(game.getMoveString(), game.getWinner(), game.getEngineName(), game.getDifficultyCode(),
+                game.getStartMillis());
+        }
+    }
+
+    // Tenant whose CPU share an AI move counts against
+    private String tenant(HttpExchange exchange) {
+        return tenantByGame ? gameId(exchange) : clientAddress(exchange);
+    }
+
+    // The tenant's scheduler slot for an AI move, or null without a scheduler
+    private AiScheduler.Slot acquireSlot(HttpExchange exchange) throws InterruptedException {
+        return scheduler == null ? null : scheduler.acquire(tenant(exchange));
+    }
+
+    // The game's AI move, perhaps at a lower difficulty if the slot says so; the caller holds the game's lock
+    private static SearchResult searchAIMove(AiScheduler.Slot slot, Game game) {
+        return slot == null ? game.searchAIMove() : game.searchAIMove(slot.difficulty(game.getDifficulty()));
+    }
+
+    // Profile from ?difficulty=easy|medium|hard|expert|auto, or null when absent
+    private static DifficultyProfile difficulty(HttpExchange exchange) {
+        String name = queryParam(exchange, "difficulty");
+        return name == null || name.isEmpty() ? null : DifficultyProfile.named(name);
+    }
+
+    /**
+     * Plays the game at this difficulty from its next AI move on. Asking
+     * again for the difficulty it already has keeps an adaptive game's
+     * progress. The caller holds the game's lock.
+     */
+    private void applyDifficulty(Game game, DifficultyProfile difficulty) {
+        DifficultyProfile current = game.getDifficulty();
+        if (difficulty == null || current != null && current.name.equals(difficulty.name)) {
+            return;
+        }
+        game.setDifficulty(difficulty, targetWinRate);
+    }
+
+    static boolean isTrue(String value) {
+        return "1".equals(value) || "true".equalsIgnoreCase(value);
+    }
+
+    // Decoded value of a query parameter, or null when it is absent
+    static String queryParam(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            for (String param : query.split("&")) {
+                if (param.startsWith(name + "=")) {
+                    return URLDecoder.decode(param.substring(name.length() + 1), StandardCharsets.UTF_8);
+                }
+            }
+        }
+        return null;
     }
 
     private class MoveHandler implements HttpHandler {
@@ -37,8 +323,19 @@ public class GameServer {
                 String requestBody = new String(exchange.getRequestBody().readAllBytes());
                 int column = Integer.parseInt(requestBody.split("=")[1]);
                 
-                boolean success = game.makeMove(column);
-                String response = createGameStateResponse();
+                String id = gameId(exchange);
+                Game game = sessions.get(id);
+                String response;
+                long record = 0;
+                synchronized (game) {
+                    if (game.makeMove(column)) {
+                        record = sessions.recordMove(id, game, column);
+                        recordIfFinished(game);
+                    }
+                    response = createGameStateResponse(game);
+                }
+                // Answer only once the move is on disk, but don't hold the game while waiting
+                sessions.awaitDurable(record);
                 sendResponse(exchange, response, 200);
             } catch (Exception e) {
                 sendResponse(exchange, "Invalid move", 400);
@@ -53,11 +350,21 @@ public class GameServer {
                 sendResponse(exchange, "Method not allowed", 405);
                 return;
             }
-            String response = createGameStateResponse();
+            Game game = game(exchange);
+            String response;
+            synchronized (game) {
+                response = createGameStateResponse(game);
+            }
             sendResponse(exchange, response, 200);
         }
     }
 
+    /**
+     * POST /reset starts the game over on the same board. ?variant=9x7 (or
+     * COLSxROWSxCONNECT, e.g. 9x6x5) starts a new game on that board
+     * instead; variant=7x6 goes back to the standard one. ?difficulty=
+     * sets the AI's strength, as on /play and /ai-move.
+     */
     private class ResetHandler implements HttpHandler {
         @Override
         public void handle(HttpExchange exchange) throws IOException {
@@ -65,8 +372,44 @@ public class GameServer {
                 sendResponse(exchange, "Method not allowed", 405);
                 return;
             }
-            game.reset();
-            String response = createGameStateResponse();
+            String id = gameId(exchange);
+            String variant = queryParam(exchange, "variant");
+            DifficultyProfile difficulty;
+            try {
+                difficulty = difficulty(exchange);
+            } catch (IllegalArgumentException e) {
+                sendResponse(exchange, e.getMessage(), 400);
+                return;
+            }
+            String response;
+            long record = 0;
+            if (variant != null) {
+                Game game;
+                try {
+                    BoardGeometry geometry = BoardGeometry.parse(variant);
+                    if (!geometry.isStandard() && !variants.contains(geometry)) {
+                        throw new IllegalArgumentException("Variant not enabled: " + geometry);
+                    }
+                    game = sessions.replace(id, geometry);
+                } catch (IllegalArgumentException e) {
+                    sendResponse(exchange, e.getMessage(), 400);
+                    return;
+                }
+                synchronized (game) {
+                    applyDifficulty(game, difficulty);
+                    response = createGameStateResponse(game);
+                }
+                sendResponse(exchange, response, 200);
+                return;
+            }
+            Game game = sessions.get(id);
+            synchronized (game) {
+                game.reset();
+                applyDifficulty(game, difficulty);
+                record = sessions.recordReset(id, game);
+                response = createGameStateResponse(game);
+            }
+            sessions.awaitDurable(record);
             sendResponse(exchange, response, 200);
         }
     }
@@ -80,11 +423,27 @@ public class GameServer {
             }
 
             try {
-                int aiMove = game.getAIMove();
-                if (aiMove != -1) {
-                    game.makeMove(aiMove);
+                // ?analysis=1 appends the search report after the board state
+                boolean analysis = isTrue(queryParam(exchange, "analysis"));
+                String id = gameId(exchange);
+                Game game = sessions.get(id);
+                String response;
+                long record = 0;
+                DifficultyProfile difficulty = difficulty(exchange);
+                // Wait for a scheduler slot before taking the game, so waiting blocks no one else
+                try (AiScheduler.Slot slot = acquireSlot(exchange)) {
+                    synchronized (game) {
+                        applyDifficulty(game, difficulty);
+                        int movesPlayed = game.getMoveCount();
+                        SearchResult result = searchAIMove(slot, game);
+                        record = playAIMove(id, game, result, slot);
+                        response = createGameStateResponse(game);
+                        if (analysis) {
+                            response += "\n" + result.toAnalysis(movesPlayed);
+                        }
+                    }
                 }
-                String response = createGameStateResponse();
+                sessions.awaitDurable(record);
                 sendResponse(exchange, response, 200);
             } catch (Exception e) {
                 sendResponse(exchange, "AI move failed", 400);
@@ -92,15 +451,150 @@ public class GameServer {
         }
     }
 
-    private String createGameStateResponse() {
+    /**
+     * POST /play with column=N makes the player's move and the AI's reply in
+     * one request. The response is two board states, one per line: after the
+     * player's move and after the AI's. They are the same when the player's
+     * move ended the game. ?analysis=1 appends the AI's search report.
+     */
+    private class PlayHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                sendResponse(exchange, "Method not allowed", 405);
+                return;
+            }
+
+            try {
+                boolean analysis = isTrue(queryParam(exchange, "analysis"));
+                String requestBody = new String(exchange.getRequestBody().readAllBytes());
+                int column = Integer.parseInt(requestBody.split("=")[1]);
+
+                String id = gameId(exchange);
+                Game game = sessions.get(id);
+                StringBuilder response = new StringBuilder();
+                long record;
+                DifficultyProfile difficulty = difficulty(exchange);
+                try (AiScheduler.Slot slot = acquireSlot(exchange)) {
+                    synchronized (game) {
+                        applyDifficulty(game, difficulty);
+                        if (!game.makeMove(column)) {
+                            throw new IllegalArgumentException("Invalid move");
+                        }
+                        record = sessions.recordMove(id, game, column);
+                        recordIfFinished(game);
+                        String afterPlayer = createGameStateResponse(game);
+                        response.append(afterPlayer).append('\n');
+                        if (game.isGameOver()) {
+                            response.append(afterPlayer);
+                        } else {
+                            int movesPlayed = game.getMoveCount();
+                            SearchResult result = searchAIMove(slot, game);
+                            long aiRecord = playAIMove(id, game, result, slot);
+                            record = Math.max(record, aiRecord);
+                            response.append(createGameStateResponse(game));
+                            if (analysis) {
+                                response.append('\n').append(result.toAnalysis(movesPlayed));
+                            }
+                        }
+                    }
+                }
+                // Both moves are on disk once the later one is
+                sessions.awaitDurable(record);
+                sendResponse(exchange, response.toString(), 200);
+            } catch (Exception e) {
+                sendResponse(exchange, "Invalid move", 400);
+            }
+        }
+    }
+
+    // Plays the AI's searched move and starts pondering for the slot's tenant; the caller holds the game's lock.
+    // Returns the journal sequence number for awaitDurable, or 0
+    private long playAIMove(String id, Game game, SearchResult result, AiScheduler.Slot slot) {
+        long record = 0;
+        if (result.move != -1 && game.makeMove(result.move)) {
+            record = sessions.recordMove(id, game, result.move);
+            recordIfFinished(game);
+            if (ponderer != null) {
+                ponderer.ponder(game, result, slot == null ? null : slot.getTenant());
+            }
+        }
+        return record;
+    }
+
+    /**
+     * GET /analyze?board=<42 cells> or ?moves=4453 scores every column for
+     * the side to move without touching any game. Optional: depth (plies)
+     * and timeMillis, capped at -Danalysis.timeMillis.
+     */
+    private class AnalyzeHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                sendResponse(exchange, "Method not allowed", 405);
+                return;
+            }
+
+            Position position;
+            int depth;
+            long timeMillis;
+            try {
+                String board = queryParam(exchange, "board");
+                String moves = queryParam(exchange, "moves");
+                if (board != null) {
+                    position = Position.fromCsv(board);
+                } else if (moves != null) {
+                    position = Position.fromMoves(moves);
+                } else {
+                    sendResponse(exchange, "Missing board or moves parameter", 400);
+                    return;
+                }
+                String depthParam = queryParam(exchange, "depth");
+                String timeParam = queryParam(exchange, "timeMillis");
+                depth = depthParam == null ? Position.CELLS : Integer.parseInt(depthParam);
+                timeMillis = timeParam == null ? analysisTimeMillis
+                    : Math.min(Long.parseLong(timeParam), analysisTimeMillis);
+                if (depth < 1 || timeMillis < 1) {
+                    throw new IllegalArgumentException("depth and timeMillis must be positive");
+                }
+            } catch (IllegalArgumentException e) {
+                sendResponse(exchange, e.getMessage(), 400);
+                return;
+            }
+
+            sendResponse(exchange, analyzer.analyze(position, depth, timeMillis).format(), 200);
+        }
+    }
+
+    private class MetricsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                sendResponse(exchange, "Method not allowed", 405);
+                return;
+            }
+            byte[] body = Metrics.render().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        }
+    }
+
+    private String createGameStateResponse(Game game) {
         StringBuilder response = new StringBuilder();
         
-        // Add board state
+        // Add board state; rows end with ';' on other board sizes so clients can tell the shape
         int[][] board = game.getBoard();
+        boolean variant = !game.getGeometry().isStandard();
         for (int[] row : board) {
             for (int cell : row) {
                 response.append(cell).append(",");
             }
+            if (variant) {
+                response.append(";");
+            }
         }
         
         // Add game state
@@ -113,8 +607,8 @@ public class GameServer {
             response.append("|");
             int[][] winningPositions = game.getWinningPositions();
             if (winningPositions != null) {
-                for (int[] pos : winningPositions) {
-                    response.append(pos[0]).append(",").append(pos[1]).append(",");
+                for (int[] cell : winningPositions) {
+                    response.append(cell[0]).append(",").append(cell[1]).append(",");
                 }
             }
         }
@@ -135,8 +629,12 @@ public class GameServer {
     }
 
     public void stop() {
-        if (game != null) {
-            game.cleanup();
+        if (ponderer != null) {
+            ponderer.close();
+        }
+        sessions.close();
+        if (history != null) {
+            history.close();
         }
     }
 
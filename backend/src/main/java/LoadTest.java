@@ -0,0 +1,243 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load generator for a running GameServer.
+ *
+ * Simulates many players that each loop through the same calls the frontend
+ * makes for one turn: POST /play (the player's move and the AI's reply), and
+ * POST /reset once the game is over, with a random think time before every
+ * move. --split-turns plays each turn the way the frontend used to, with
+ * POST /move, GET /board, POST /ai-move and GET /board. Requests are sent with the asynchronous java.net.http client, so a
+ * few threads can keep thousands of players in flight. Every player plays
+ * its own game (?game=), so players only contend for the server's CPU and
+ * not for one game's lock. At the end it prints
+ * requests/sec and a latency percentile table for each endpoint.
+ *
+ * Usage: java LoadTest [--url http://localhost:8080] [--players 1000]
+ *        [--duration 30] [--think-ms 500] [--difficulty name] [--no-reuse]
+ *        [--split-turns]
+ *
+ * --no-reuse gives every request a fresh HttpClient, and so a fresh
+ * connection, to measure connection setup cost. --difficulty is sent as a
+ * query parameter on /play or /ai-move.
+ */
+public class LoadTest {
+    private static final String[] ENDPOINTS = {"/play", "/move", "/board", "/ai-move", "/reset"};
+
+    private final String url;
+    private final int players;
+    private final long durationMillis;
+    private final long thinkMillis;
+    private final String difficulty;
+    private final boolean reuseConnections;
+    private final boolean splitTurns;
+
+    private final HttpClient sharedClient;
+    private final ScheduledExecutorService scheduler;
+    private final Map<String, LatencyHistogram> latencies = new LinkedHashMap<>();
+    private final Map<String, AtomicLong> errors = new LinkedHashMap<>();
+    // 429s from the server's rate limiter, counted apart from failures
+    private final Map<String, AtomicLong> limited = new LinkedHashMap<>();
+    private long deadline;
+
+    public LoadTest(String url, int players, long durationMillis, long thinkMillis,
+                    String difficulty, boolean reuseConnections, boolean splitTurns) {
+        this.url = url;
+        this.players = players;
+        this.durationMillis = durationMillis;
+        this.thinkMillis = thinkMillis;
+        this.difficulty = difficulty;
+        this.reuseConnections = reuseConnections;
+        this.splitTurns = splitTurns;
+        this.sharedClient = newClient();
+        this.scheduler = Executors.newScheduledThreadPool(2);
+        for (String endpoint : ENDPOINTS) {
+            latencies.put(endpoint, new LatencyHistogram());
+            errors.put(endpoint, new AtomicLong());
+            limited.put(endpoint, new AtomicLong());
+        }
+    }
+
+    public void run() throws InterruptedException {
+        System.out.println("Load test: " + players + " players against " + url + " for "
+                + durationMillis / 1000 + "s, think time " + thinkMillis + " ms"
+                + (reuseConnections ? "" : ", no connection reuse") + (splitTurns ? ", split turns" : ""));
+
+        long start = System.currentTimeMillis();
+        deadline = start + durationMillis;
+        CountDownLatch done = new CountDownLatch(players);
+        // Game IDs unique to this run, so a rerun doesn't pick up old games
+        String run = Long.toString(start, 36);
+        for (int i = 0; i < players; i++) {
+            String game = "load-" + run + "-" + i;
+            // Spread the first moves over one think time so players don't start in lockstep
+            scheduler.schedule(() -> turn(game, done), randomThink(), TimeUnit.MILLISECONDS);
+        }
+        done.await();
+        long elapsed = System.currentTimeMillis() - start;
+        scheduler.shutdown();
+
+        report(elapsed);
+    }
+
+    // One player turn in its game; schedules the next turn when it completes
+    private void turn(String game, CountDownLatch done) {
+        if (System.currentTimeMillis() >= deadline) {
+            done.countDown();
+            return;
+        }
+
+        int column = ThreadLocalRandom.current().nextInt(7);
+        String query = "?game=" + game;
+        String aiQuery = difficulty == null ? query : query + "&difficulty=" + difficulty;
+        CompletableFuture<String> board;
+        if (splitTurns) {
+            board = send("/move" + query, "POST", "column=" + column)
+                .thenCompose(r -> send("/board" + query, "GET", null))
+                .thenCompose(r -> send("/ai-move" + aiQuery, "POST", ""))
+                .thenCompose(r -> send("/board" + query, "GET", null));
+        } else {
+            // The board after the AI's reply is the second line. A rejected move
+            // (full column, finished game) gets no board, so ask for it
+            board = send("/play" + aiQuery, "POST", "column=" + column)
+                .thenCompose(r -> r.indexOf('\n') < 0 ? send("/board" + query, "GET", null)
+                    : CompletableFuture.completedFuture(r.substring(r.indexOf('\n') + 1)));
+        }
+        board.thenCompose(b -> isGameOver(b) ? send("/reset" + query, "POST", "") : CompletableFuture.completedFuture(b))
+            .whenComplete((r, e) -> scheduler.schedule(() -> turn(game, done), randomThink(), TimeUnit.MILLISECONDS));
+    }
+
+    private CompletableFuture<String> send(String path, String method, String body) {
+        String endpoint = path.contains("?") ? path.substring(0, path.indexOf('?')) : path;
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url + path))
+            .timeout(Duration.ofSeconds(30));
+        if ("POST".equals(method)) {
+            request.header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(body));
+        } else {
+            request.GET();
+        }
+
+        HttpClient client = reuseConnections ? sharedClient : newClient();
+        long start = System.nanoTime();
+        return client.sendAsync(request.build(), HttpResponse.BodyHandlers.ofString())
+            .handle((response, error) -> {
+                latencies.get(endpoint).record((System.nanoTime() - start) / 1000);
+                if (error == null && response.statusCode() == 429) {
+                    limited.get(endpoint).incrementAndGet();
+                    return "";
+                }
+                if (error != null || response.statusCode() >= 500) {
+                    errors.get(endpoint).incrementAndGet();
+                    return "";
+                }
+                return response.body();
+            });
+    }
+
+    private static boolean isGameOver(String board) {
+        String[] parts = board.split("\\|");
+        return parts.length > 1 && parts[1].startsWith("1");
+    }
+
+    private long randomThink() {
+        return thinkMillis == 0 ? 0 : ThreadLocalRandom.current().nextLong(2 * thinkMillis);
+    }
+
+    private static HttpClient newClient() {
+        return HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+    }
+
+    private void report(long elapsedMillis) {
+        double seconds = elapsedMillis / 1000.0;
+        long totalRequests = 0;
+        System.out.println();
+        long totalLimited = 0;
+        System.out.printf("%-9s %9s %8s %8s %9s %9s %9s %9s %9s %9s%n",
+                "endpoint", "requests", "errors", "429s", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (String endpoint : ENDPOINTS) {
+            LatencyHistogram h = latencies.get(endpoint);
+            if (h.getCount() == 0) {
+                continue;
+            }
+            totalRequests += h.getCount();
+            totalLimited += limited.get(endpoint).get();
+            System.out.printf("%-9s %9d %8d %8d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                    endpoint, h.getCount(), errors.get(endpoint).get(), limited.get(endpoint).get(), h.getCount() / seconds,
+                    h.getValueAtPercentile(50) / 1000.0, h.getValueAtPercentile(90) / 1000.0,
+                    h.getValueAtPercentile(99) / 1000.0, h.getValueAtPercentile(99.9) / 1000.0,
+                    h.getMax() / 1000.0);
+        }
+        System.out.printf("%nTotal: %d requests in %.1fs, %.1f req/s%n", totalRequests, seconds, totalRequests / seconds);
+        if (totalLimited > 0) {
+            System.out.println("Rate limited: " + totalLimited + " requests. All players share one address; start the"
+                    + " server with -Dratelimit.cheap.perSecond=0 -Dratelimit.expensive.perSecond=0 to measure it");
+        }
+
+        // Percentile distribution for the expensive endpoint
+        String expensive = splitTurns ? "/ai-move" : "/play";
+        LatencyHistogram ai = latencies.get(expensive);
+        if (ai.getCount() > 0) {
+            System.out.println("\n" + expensive + " latency distribution:");
+            double[] percentiles = {10, 25, 50, 75, 90, 95, 99, 99.9, 99.99, 100};
+            for (double p : percentiles) {
+                System.out.printf("  %7.2f%%  %10.2f ms%n", p, ai.getValueAtPercentile(p) / 1000.0);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        String url = "http://localhost:8080";
+        int players = 1000;
+        long duration = 30;
+        long think = 500;
+        String difficulty = null;
+        boolean reuse = true;
+        boolean split = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--url":
+                    url = args[++i];
+                    break;
+                case "--players":
+                    players = Integer.parseInt(args[++i]);
+                    break;
+                case "--duration":
+                    duration = Long.parseLong(args[++i]);
+                    break;
+                case "--think-ms":
+                    think = Long.parseLong(args[++i]);
+                    break;
+                case "--difficulty":
+                    difficulty = args[++i];
+                    break;
+                case "--no-reuse":
+                    reuse = false;
+                    break;
+                case "--split-turns":
+                    split = true;
+                    break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(2);
+            }
+        }
+        new LoadTest(url, players, duration * 1000, think, difficulty, reuse, split).run();
+    }
+}
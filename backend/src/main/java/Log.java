@@ -0,0 +1,259 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Small asynchronous logger.
+ *
+ * Request threads only copy the message template and its arguments into a
+ * preallocated ring buffer; a single background thread formats the lines and
+ * writes them to the console. A disabled level costs one int comparison and
+ * allocates nothing, as long as the caller passes arguments instead of
+ * concatenating strings. Messages use {} placeholders:
+ *
+ *   Log.info("Placed piece at row {}, column {}", row, col);
+ *
+ * The level comes from -Dlog.level (DEBUG, INFO, WARN, ERROR or OFF; default
+ * INFO). When the buffer is full, new messages are dropped and counted
+ * rather than blocking the caller.
+ */
+public final class Log {
+    public static final int DEBUG = 0;
+    public static final int INFO = 1;
+    public static final int WARN = 2;
+    public static final int ERROR = 3;
+    public static final int OFF = 4;
+
+    private static final String[] LEVEL_NAMES = {"DEBUG", "INFO ", "WARN ", "ERROR"};
+    private static final int CAPACITY = 1 << 13;
+    private static final int MASK = CAPACITY - 1;
+    private static final DateTimeFormatter TIME =
+        DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    private static volatile int level = parseLevel(System.getProperty("log.level", "INFO"));
+
+    private static final Entry[] ring = new Entry[CAPACITY];
+    // published.get(i) holds the sequence number last written into slot i
+    private static final AtomicLongArray published = new AtomicLongArray(CAPACITY);
+    private static final AtomicLong head = new AtomicLong();
+    private static volatile long tail;
+    private static final LongAdder dropped = new LongAdder();
+    private static final Thread writer;
+
+    // Only touched by drain(), under the class lock
+    private static final Writer out =
+        new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+    private static final StringBuilder line = new StringBuilder(256);
+    private static long reportedDrops;
+
+    private static final class Entry {
+        int level;
+        long time;
+        String thread;
+        String message;
+        Object arg1;
+        Object arg2;
+        Object arg3;
+        Throwable error;
+    }
+
+    static {
+        for (int i = 0; i < CAPACITY; i++) {
+            ring[i] = new Entry();
+            published.set(i, -1);
+        }
+        writer = new Thread(Log::drainLoop, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::flush, "log-flush"));
+    }
+
+    private Log() {
+    }
+
+    public static boolean isEnabled(int messageLevel) {
+        return messageLevel >= level;
+    }
+
+    public static boolean isDebugEnabled() {
+        return DEBUG >= level;
+    }
+
+    public static void setLevel(int newLevel) {
+        level = newLevel;
+    }
+
+    // Messages dropped because the buffer was full
+    public static long getDropped() {
+        return dropped.sum();
+    }
+
+    public static void debug(String message) {
+        if (DEBUG >= level) enqueue(DEBUG, message, null, null, null, null);
+    }
+
+    public static void debug(String message, Object arg1) {
+        if (DEBUG >= level) enqueue(DEBUG, message, arg1, null, null, null);
+    }
+
+    public static void debug(String message, Object arg1, Object arg2) {
+        if (DEBUG >= level) enqueue(DEBUG, message, arg1, arg2, null, null);
+    }
+
+    public static void debug(String message, Object arg1, Object arg2, Object arg3) {
+        if (DEBUG >= level) enqueue(DEBUG, message, arg1, arg2, arg3, null);
+    }
+
+    public static void info(String message) {
+        if (INFO >= level) enqueue(INFO, message, null, null, null, null);
+    }
+
+    public static void info(String message, Object arg1) {
+        if (INFO >= level) enqueue(INFO, message, arg1, null, null, null);
+    }
+
+    public static void info(String message, Object arg1, Object arg2) {
+        if (INFO >= level) enqueue(INFO, message, arg1, arg2, null, null);
+    }
+
+    public static void info(String message, Object arg1, Object arg2, Object arg3) {
+        if (INFO >= level) enqueue(INFO, message, arg1, arg2, arg3, null);
+    }
+
+    public static void warn(String message) {
+        if (WARN >= level) enqueue(WARN, message, null, null, null, null);
+    }
+
+    public static void warn(String message, Object arg1) {
+        if (WARN >= level) enqueue(WARN, message, arg1, null, null, null);
+    }
+
+    public static void warn(String message, Object arg1, Object arg2) {
+        if (WARN >= level) enqueue(WARN, message, arg1, arg2, null, null);
+    }
+
+    public static void error(String message) {
+        if (ERROR >= level) enqueue(ERROR, message, null, null, null, null);
+    }
+
+    public static void error(String message, Object arg1) {
+        if (ERROR >= level) enqueue(ERROR, message, arg1, null, null, null);
+    }
+
+    public static void error(String message, Throwable error) {
+        if (ERROR >= level) enqueue(ERROR, message, null, null, null, error);
+    }
+
+    private static void enqueue(int messageLevel, String message, Object arg1, Object arg2, Object arg3,
+                                Throwable error) {
+        long seq;
+        do {
+            seq = head.get();
+            if (seq - tail >= CAPACITY) {
+                dropped.increment();
+                return;
+            }
+        } while (!head.compareAndSet(seq, seq + 1));
+
+        int slot = (int) (seq & MASK);
+        Entry entry = ring[slot];
+        entry.level = messageLevel;
+        entry.time = System.currentTimeMillis();
+        entry.thread = Thread.currentThread().getName();
+        entry.message = message;
+        entry.arg1 = arg1;
+        entry.arg2 = arg2;
+        entry.arg3 = arg3;
+        entry.error = error;
+        published.set(slot, seq);
+    }
+
+    private static void drainLoop() {
+        while (true) {
+            if (drain() == 0) {
+                LockSupport.parkNanos(1_000_000);
+            }
+        }
+    }
+
+    // Writes and flushes every published entry; returns how many were written
+    private static synchronized int drain() {
+        int written = 0;
+        long next = tail;
+        try {
+            while (published.get((int) (next & MASK)) == next) {
+                Entry entry = ring[(int) (next & MASK)];
+                line.setLength(0);
+                TIME.formatTo(Instant.ofEpochMilli(entry.time), line);
+                line.append(' ').append(LEVEL_NAMES[entry.level]).append(" [").append(entry.thread).append("] ");
+                format(line, entry.message, entry.arg1, entry.arg2, entry.arg3);
+                line.append('\n');
+                Throwable error = entry.error;
+                entry.message = null;
+                entry.arg1 = entry.arg2 = entry.arg3 = null;
+                entry.error = null;
+                tail = ++next;
+
+                out.append(line);
+                if (error != null) {
+                    out.flush();
+                    error.printStackTrace(System.out);
+                }
+                written++;
+            }
+            long drops = dropped.sum();
+            if (drops != reportedDrops) {
+                out.write("Log buffer full, dropped " + (drops - reportedDrops) + " messages\n");
+                reportedDrops = drops;
+            }
+            if (written > 0) {
+                out.flush();
+            }
+        } catch (IOException e) {
+            // Nowhere left to report it
+        }
+        return written;
+    }
+
+    private static void format(StringBuilder line, String message, Object arg1, Object arg2, Object arg3) {
+        int argIndex = 0;
+        int start = 0;
+        int at;
+        while (argIndex < 3 && (at = message.indexOf("{}", start)) >= 0) {
+            line.append(message, start, at);
+            line.append(argIndex == 0 ? arg1 : argIndex == 1 ? arg2 : arg3);
+            argIndex++;
+            start = at + 2;
+        }
+        line.append(message, start, message.length());
+    }
+
+    // Writes out everything queued so far; used on shutdown
+    public static void flush() {
+        drain();
+    }
+
+    static int parseLevel(String name) {
+        switch (name.trim().toUpperCase()) {
+            case "DEBUG":
+                return DEBUG;
+            case "WARN":
+                return WARN;
+            case "ERROR":
+                return ERROR;
+            case "OFF":
+                return OFF;
+            default:
+                return INFO;
+        }
+    }
+}
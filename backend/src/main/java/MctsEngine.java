@@ -0,0 +1,437 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monte Carlo Tree Search (UCT) engine running on the Position bitboards.
+ *
+ * Strength is set by a playout budget, a wall-clock budget, or both (whichever
+ * runs out first). Heavy playouts use the same rules as the smart AI: take an
+ * immediate win, otherwise block, otherwise never play under an opponent
+ * threat. The trees of the last few searches are kept between calls, so the
+ * subtree for the position after the opponent's reply is reused on the next
+ * move of the same game, even while other games' moves come in between. A
+ * search takes its tree out of the kept ones while it runs, so searches for
+ * different games run at the same time without sharing a tree.
+ *
+ * With more than one thread the search runs either root-parallel (independent
+ * trees whose root visit counts are summed) or tree-parallel (one shared tree,
+ * with a virtual loss on every node a thread is currently exploring).
+ */
+public class MctsEngine implements MoveEngine {
+    public enum Parallelism { ROOT, TREE }
+
+    private static final int COLS = Position.COLS;
+    private static final double EXPLORATION = 1.4;
+    private static final double WIN = 1.0;
+    private static final double DRAW = 0.5;
+    private static final double LOSS = 0.0;
+    private static final int DEFAULT_TREES = 16;
+
+    private final int playoutBudget;
+    private final long timeBudgetMillis;
+    private final int threads;
+    private final Parallelism parallelism;
+    private final boolean heavyPlayouts;
+    private final ExecutorService workers;
+    private final int maxTrees;
+
+    private final LongAdder nodesSearched = Metrics.counter("connect4_ai_nodes_total",
+            "Nodes searched by the AI (playouts for MCTS)", "engine=\"mcts\"");
+    private final AtomicLong nodesPerSecond = Metrics.gauge("connect4_ai_nodes_per_second",
+            "Search speed of the last AI move", "engine=\"mcts\"");
+    private final AtomicLong depthReached = Metrics.gauge("connect4_ai_search_depth",
+            "Depth reached by the last AI search", "engine=\"mcts\"");
+    private final LatencyHistogram searchTime = Metrics.histogram("connect4_ai_search_duration_seconds",
+            "Time spent searching per AI move", "engine=\"mcts\"");
+
+    // Trees of recent searches, most recent first; guarded by itself
+    private final ArrayDeque<Node> trees = new ArrayDeque<>();
+    private volatile int lastPlayouts;
+    private volatile long lastTimeMillis;
+
+    public MctsEngine() {
+        this(20000, 0, 1, Parallelism.TREE, true);
+    }
+
+    /**
+     * @param playoutBudget playouts per move, or 0 for no limit
+     * @param timeBudgetMillis milliseconds per move, or 0 for no limit
+     */
+    public MctsEngine(int playoutBudget, long timeBudgetMillis, int threads,
+                      Parallelism parallelism, boolean heavyPlayouts) {
+        this(playoutBudget, timeBudgetMillis, threads, parallelism, heavyPlayouts, DEFAULT_TREES);
+    }
+
+    /**
+     * @param maxTrees trees kept for reuse, about one per game played at the
+     *        same time; each holds up to a move's playouts worth of nodes
+     */
+    public MctsEngine(int playoutBudget, long timeBudgetMillis, int threads,
+                      Parallelism parallelism, boolean heavyPlayouts, int maxTrees) {
+        if (playoutBudget <= 0 && timeBudgetMillis <= 0) {
+            throw new IllegalArgumentException("MCTS needs a playout or time budget");
+        }
+        this.playoutBudget = playoutBudget;
+        this.timeBudgetMillis = timeBudgetMillis;
+        this.threads = Math.max(1, threads);
+        this.parallelism = parallelism;
+        this.heavyPlayouts = heavyPlayouts;
+        this.maxTrees = Math.max(1, maxTrees);
+        this.workers = this.threads > 1 ? Executors.newFixedThreadPool(this.threads, r -> {
+            Thread t = new Thread(r, "mcts-worker");
+            t.setDaemon(true);
+            return t;
+        }) : null;
+    }
+
+    @Override
+    public int getMove(int[][] board) {
+        return search(Position.fromBoard(board)).move;
+    }
+
+    public int getMove(Position position) {
+        return search(position).move;
+    }
+
+    @Override
+    public SearchResult search(int[][] board) {
+        return search(Position.fromBoard(board));
+    }
+
+    @Override
+    public String getName() {
+        return "mcts";
+    }
+
+    public SearchResult search(Position position) {
+        if (position.playableMoves() == 0) {
+            return new SearchResult(-1, getName());
+        }
+        // No need to search a forced win
+        long wins = position.winningMoves();
+        if (wins != 0) {
+            SearchResult result = new SearchResult(ThreatAnalyzer.columnOf(wins), getName());
+            result.depth = 1;
+            return result;
+        }
+
+        long start = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+        long deadline = timeBudgetMillis > 0 ? start + timeBudgetMillis : Long.MAX_VALUE;
+        AtomicInteger playouts = new AtomicInteger();
+        AtomicInteger maxDepth = new AtomicInteger();
+
+        Node searchRoot = takeTree(position);
+        double[] visits;
+        if (threads == 1) {
+            search(searchRoot, new Random(), playouts, deadline, maxDepth);
+            visits = rootVisits(searchRoot);
+        } else if (parallelism == Parallelism.TREE) {
+            runParallel(i -> search(searchRoot, new Random(), playouts, deadline, maxDepth));
+            visits = rootVisits(searchRoot);
+        } else {
+            Node[] trees = new Node[threads];
+            trees[0] = searchRoot;
+            for (int i = 1; i < threads; i++) {
+                trees[i] = new Node(position.copy(), -1);
+            }
+            runParallel(i -> search(trees[i], new Random(), playouts, deadline, maxDepth));
+            visits = new double[COLS];
+            for (Node tree : trees) {
+                double[] treeVisits = rootVisits(tree);
+                for (int col = 0; col < COLS; col++) {
+                    visits[col] += treeVisits[col];
+                }
+            }
+        }
+
+        int best = -1;
+        for (int col = 0; col < COLS; col++) {
+            if (position.canPlay(col) && (best == -1 || visits[col] > visits[best])) {
+                best = col;
+            }
+        }
+
+        keepTree(searchRoot);
+        lastPlayouts = playoutBudget > 0 ? Math.min(playouts.get(), playoutBudget) : playouts.get();
+        lastTimeMillis = System.currentTimeMillis() - start;
+
+        long elapsed = System.nanoTime() - startNanos;
+        long micros = elapsed / 1000;
+        nodesSearched.add(lastPlayouts);
+        nodesPerSecond.set(lastPlayouts * 1_000_000L / Math.max(1, micros));
+        depthReached.set(maxDepth.get());
+        searchTime.record(micros);
+
+        SearchResult result = new SearchResult(best, getName());
+        result.depth = maxDepth.get();
+        result.nodes = lastPlayouts;
+        result.elapsedNanos = elapsed;
+        return result;
+    }
+
+    public int getLastPlayouts() {
+        return lastPlayouts;
+    }
+
+    public long getLastTimeMillis() {
+        return lastTimeMillis;
+    }
+
+    @Override
+    public void close() {
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Takes out the kept tree whose root is this position or two plies above
+     * it and returns the subtree for this position, or a new tree.
+     */
+    private Node takeTree(Position position) {
+        long key = position.key();
+        synchronized (trees) {
+            for (Iterator<Node> it = trees.iterator(); it.hasNext();) {
+                Node subtree = find(it.next(), key);
+                if (subtree != null) {
+                    it.remove();
+                    return subtree;
+                }
+            }
+        }
+        return new Node(position.copy(), -1);
+    }
+
+    private static Node find(Node root, long key) {
+        if (root.position.key() == key) {
+            return root;
+        }
+        for (Node child : root.children) {
+            if (child == null) {
+                continue;
+            }
+            for (Node grandChild : child.children) {
+                if (grandChild != null && grandChild.position.key() == key) {
+                    return grandChild;
+                }
+            }
+        }
+        return null;
+    }
+
+    // Keeps a searched tree for the game's next move, dropping the oldest beyond maxTrees
+    private void keepTree(Node tree) {
+        synchronized (trees) {
+            trees.addFirst(tree);
+            while (trees.size() > maxTrees) {
+                trees.removeLast();
+            }
+        }
+    }
+
+    private interface Worker {
+        void run(int index);
+    }
+
+    private void runParallel(Worker worker) {
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            int index = i;
+            futures.add(workers.submit(() -> worker.run(index)));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("MCTS worker failed", e);
+        }
+    }
+
+    private void search(Node tree, Random random, AtomicInteger playouts, long deadline, AtomicInteger maxDepth) {
+        Node[] path = new Node[Position.CELLS + 2];
+        int depth = 0;
+        while (true) {
+            int count = playouts.incrementAndGet();
+            if (playoutBudget > 0 && count > playoutBudget) {
+                break;
+            }
+            if (deadline != Long.MAX_VALUE && (count & 63) == 0 && System.currentTimeMillis() >= deadline) {
+                break;
+            }
+            depth = Math.max(depth, iterate(tree, random, path));
+        }
+        maxDepth.accumulateAndGet(depth, Math::max);
+    }
+
+    // Runs one selection/expansion/playout/backup pass and returns the tree depth it reached
+    private int iterate(Node tree, Random random, Node[] path) {
+        int length = 0;
+        Node node = tree;
+        while (true) {
+            Node next;
+            synchronized (node) {
+                // Counting the visit before the result is known acts as a
+                // virtual loss that steers other threads elsewhere
+                node.visits++;
+                path[length++] = node;
+                if (node.terminal >= 0) {
+                    break;
+                }
+                if (node.untried != 0) {
+                    next = expand(node, random);
+                    synchronized (next) {
+                        next.visits++;
+                    }
+                    path[length++] = next;
+                    node = next;
+                    break;
+                }
+                next = select(node);
+            }
+            node = next;
+        }
+
+        double result = node.terminal >= 0 ? node.terminal : playout(node.position, random);
+        for (int i = length - 1; i >= 0; i--) {
+            synchronized (path[i]) {
+                path[i].wins += result;
+            }
+            result = 1 - result;
+        }
+        return length - 1;
+    }
+
+    private Node expand(Node node, Random random) {
+        int col = pickBit(node.untried, random);
+        node.untried &= ~(1 << col);
+
+        Position next = node.position.copy();
+        double terminal = -1;
+        if (next.isWinningMove(col)) {
+            terminal = WIN;
+        }
+        next.play(col);
+        if (terminal < 0 && next.isFull()) {
+            terminal = DRAW;
+        }
+
+        Node child = new Node(next, terminal);
+        node.children[col] = child;
+        return child;
+    }
+
+    // Caller holds the node's lock; each child's stats are read under its own
+    // lock, the one backpropagation writes them under
+    private Node select(Node node) {
+        Node best = null;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        double logVisits = Math.log(node.visits);
+        for (Node child : node.children) {
+            if (child == null) {
+                continue;
+            }
+            double wins;
+            int visits;
+            synchronized (child) {
+                wins = child.wins;
+                visits = child.visits;
+            }
+            double value = wins / visits + EXPLORATION * Math.sqrt(logVisits / visits);
+            if (value > bestValue) {
+                bestValue = value;
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    // Result from the point of view of the player who made the last move in `start`
+    private double playout(Position start, Random random) {
+        Position position = start.copy();
+        for (int ply = 0; ; ply++) {
+            if (position.isFull()) {
+                return DRAW;
+            }
+            // The side to move at an even ply is the opponent of the player we score for
+            double moverWins = ply % 2 == 0 ? LOSS : WIN;
+
+            long moves;
+            if (heavyPlayouts) {
+                if (position.winningMoves() != 0) {
+                    return moverWins;
+                }
+                moves = position.nonLosingMoves();
+                if (moves == 0) {
+                    return 1 - moverWins;
+                }
+            } else {
+                moves = position.playableMoves();
+            }
+
+            long move = nthBit(moves, random.nextInt(Long.bitCount(moves)));
+            int col = ThreatAnalyzer.columnOf(move);
+            if (!heavyPlayouts && position.isWinningMove(col)) {
+                return moverWins;
+            }
+            position.playBit(move);
+        }
+    }
+
+    private static double[] rootVisits(Node tree) {
+        double[] visits = new double[COLS];
+        for (int col = 0; col < COLS; col++) {
+            if (tree.children[col] != null) {
+                visits[col] = tree.children[col].visits;
+            }
+        }
+        return visits;
+    }
+
+    private static int pickBit(int bits, Random random) {
+        int n = random.nextInt(Integer.bitCount(bits));
+        for (int i = 0; i < n; i++) {
+            bits &= bits - 1;
+        }
+        return Integer.numberOfTrailingZeros(bits);
+    }
+
+    private static long nthBit(long bits, int n) {
+        for (int i = 0; i < n; i++) {
+            bits &= bits - 1;
+        }
+        return bits & -bits;
+    }
+
+    private static class Node {
+        final Position position;
+        // Result for the player who moved into this node, or -1 if not terminal
+        final double terminal;
+        final Node[] children = new Node[COLS];
+        int untried;
+        int visits;
+        double wins;
+
+        Node(Position position, double terminal) {
+            this.position = position;
+            this.terminal = terminal;
+            if (terminal < 0) {
+                for (int col = 0; col < COLS; col++) {
+                    if (position.canPlay(col)) {
+                        untried |= 1 << col;
+                    }
+                }
+            }
+        }
+    }
+}
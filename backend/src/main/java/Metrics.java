@@ -0,0 +1,112 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Process-wide metrics registry, rendered in the Prometheus text format by the
+ * /metrics endpoint.
+ *
+ * Everything is lock-free on the recording side: counters are LongAdders,
+ * settable gauges are AtomicLongs and latency histograms are
+ * LatencyHistograms. Callers on hot paths should look a series up once and
+ * keep the returned object instead of looking it up per event.
+ *
+ * Series are named like Prometheus series, with labels passed as a ready
+ * string such as {@code endpoint="/move"}.
+ */
+public class Metrics {
+    // Histogram bucket bounds in seconds
+    private static final double[] BUCKETS = {
+        0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30,
+    };
+
+    private static final Map<String, String> types = new ConcurrentHashMap<>();
+    private static final Map<String, String> helps = new ConcurrentHashMap<>();
+    // metric name -> (labels -> series)
+    private static final Map<String, Map<String, Object>> series = new ConcurrentSkipListMap<>();
+
+    public static LongAdder counter(String name, String help, String labels) {
+        return (LongAdder) register(name, help, "counter", labels, LongAdder::new);
+    }
+
+    public static AtomicLong gauge(String name, String help, String labels) {
+        return (AtomicLong) register(name, help, "gauge", labels, AtomicLong::new);
+    }
+
+    public static void gauge(String name, String help, String labels, DoubleSupplier supplier) {
+        register(name, help, "gauge", labels, () -> supplier);
+    }
+
+    // Histogram of durations recorded in microseconds, exported in seconds
+    public static LatencyHistogram histogram(String name, String help, String labels) {
+        return (LatencyHistogram) register(name, help, "histogram", labels, LatencyHistogram::new);
+    }
+
+    private interface Factory {
+        Object create();
+    }
+
+    private static Object register(String name, String help, String type, String labels, Factory factory) {
+        types.putIfAbsent(name, type);
+        helps.putIfAbsent(name, help);
+        Map<String, Object> byLabels = series.computeIfAbsent(name, n -> new ConcurrentSkipListMap<>());
+        Object existing = byLabels.get(labels);
+        return existing != null ? existing : byLabels.computeIfAbsent(labels, l -> factory.create());
+    }
+
+    public static String render() {
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<String, Map<String, Object>> metric : series.entrySet()) {
+            String name = metric.getKey();
+            out.append("# HELP ").append(name).append(' ').append(helps.get(name)).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(types.get(name)).append('\n');
+            for (Map.Entry<String, Object> entry : metric.getValue().entrySet()) {
+                String labels = entry.getKey();
+                Object value = entry.getValue();
+                if (value instanceof LatencyHistogram) {
+                    renderHistogram(out, name, labels, (LatencyHistogram) value);
+                } else {
+                    out.append(name).append(braces(labels)).append(' ').append(format(read(value))).append('\n');
+                }
+            }
+        }
+        return out.toString();
+    }
+
+    private static void renderHistogram(StringBuilder out, String name, String labels, LatencyHistogram histogram) {
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+        for (double bound : BUCKETS) {
+            long count = histogram.getCountAtOrBelow((long) (bound * 1_000_000));
+            out.append(name).append("_bucket{").append(prefix).append("le=\"").append(format(bound)).append("\"} ")
+                .append(count).append('\n');
+        }
+        out.append(name).append("_bucket{").append(prefix).append("le=\"+Inf\"} ").append(histogram.getCount()).append('\n');
+        out.append(name).append("_sum").append(braces(labels)).append(' ')
+            .append(format(histogram.getSum() / 1_000_000.0)).append('\n');
+        out.append(name).append("_count").append(braces(labels)).append(' ').append(histogram.getCount()).append('\n');
+    }
+
+    private static double read(Object value) {
+        if (value instanceof LongAdder) {
+            return ((LongAdder) value).sum();
+        }
+        if (value instanceof AtomicLong) {
+            return ((AtomicLong) value).get();
+        }
+        return ((DoubleSupplier) value).getAsDouble();
+    }
+
+    private static String braces(String labels) {
+        return labels.isEmpty() ? "" : "{" + labels + "}";
+    }
+
+    private static String format(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+}
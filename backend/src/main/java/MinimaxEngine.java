@@ -0,0 +1,31 @@
+/**
+ * The original fixed-depth minimax search over the window evaluation, kept
+ * as an engine so it can be compared with the newer ones.
+ */
+public class MinimaxEngine implements MoveEngine {
+    private final int depth;
+    private final EndgameTablebase tablebase;
+
+    public MinimaxEngine(int depth) {
+        this(depth, null);
+    }
+
+    // tablebase may be null
+    public MinimaxEngine(int depth, EndgameTablebase tablebase) {
+        this.depth = Math.max(1, depth);
+        this.tablebase = tablebase;
+    }
+
+    @Override
+    public int getMove(int[][] board) {
+        Game game = new Game(null, null);
+        game.loadBoard(board);
+        game.setTablebase(tablebase);
+        return game.minimaxMove(depth);
+    }
+
+    @Override
+    public String getName() {
+        return "minimax";
+    }
+}
@@ -0,0 +1,49 @@
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Anything that can pick a column for the side to move on the server's board.
+ */
+public interface MoveEngine {
+    // Column to play, or -1 when there is no legal move
+    int getMove(int[][] board);
+
+    // The move together with statistics about how it was found
+    default SearchResult search(int[][] board) {
+        long start = System.nanoTime();
+        SearchResult result = new SearchResult(getMove(board), getName());
+        result.elapsedNanos = System.nanoTime() - start;
+        return result;
+    }
+
+    /**
+     * A move at a difficulty's strength. Engines without budgets to scale
+     * only blunder: they play a random legal column as often as the
+     * profile says, and their normal move otherwise.
+     */
+    default SearchResult search(int[][] board, DifficultyProfile difficulty) {
+        if (difficulty.blunders()) {
+            int[] legal = new int[board[0].length];
+            int count = 0;
+            for (int col = 0; col < board[0].length; col++) {
+                if (board[0][col] == 0) {
+                    legal[count++] = col;
+                }
+            }
+            if (count > 0) {
+                int col = legal[ThreadLocalRandom.current().nextInt(count)];
+                SearchResult result = new SearchResult(col, getName(), SearchResult.BLUNDER);
+                result.pv = new int[] {col};
+                return result;
+            }
+        }
+        return search(board);
+    }
+
+    // Short name used in metrics and events
+    default String getName() {
+        return getClass().getSimpleName();
+    }
+
+    default void close() {
+    }
+}
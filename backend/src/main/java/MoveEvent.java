@@ -0,0 +1,36 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for a move played on a game board, by either side.
+ */
+@Name("connect4.Move")
+@Label("Move")
+@Category("Connect 4")
+@Description("A piece dropped into a column")
+@StackTrace(false)
+public class MoveEvent extends Event {
+    @Label("Column")
+    public int column;
+
+    @Label("Row")
+    public int row;
+
+    @Label("Player")
+    public int player;
+
+    @Label("Position Key")
+    @Description("Unique key of the position after the move")
+    public long positionKey;
+
+    @Label("Game Over")
+    public boolean gameOver;
+
+    @Label("Winner")
+    @Description("Winning player, or 0")
+    public int winner;
+}
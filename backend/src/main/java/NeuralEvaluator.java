@@ -0,0 +1,230 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * CPU inference for the policy/value network converted by convert_model.py.
+ *
+ * The network is a stack of dense layers with ReLU between them. Its input
+ * is 84 floats (side to move, then opponent, row-major from the top row) and
+ * its output is 7 policy logits, a value, or both. All activations live in
+ * buffers allocated once per evaluator, so evaluate() does not allocate; use
+ * one evaluator per thread. Many positions can be evaluated in one call, which
+ * keeps each weight row in cache while it is applied to the whole batch.
+ *
+ * Dot products use jdk.incubator.vector when the JVM is started with
+ * {@code --add-modules jdk.incubator.vector}, and plain loops otherwise.
+ */
+public class NeuralEvaluator implements MoveEngine {
+    public static final int INPUTS = 2 * Position.CELLS;
+    private static final boolean VECTORIZED = vectorApiAvailable();
+
+    private final int[] inSizes;
+    private final int[] outSizes;
+    private final float[][] weights;
+    private final float[][] biases;
+    private final int maxBatch;
+    private final int outputs;
+
+    // Ping-pong activation buffers, maxBatch rows of the widest layer each
+    private final float[] bufferA;
+    private final float[] bufferB;
+    private final int stride;
+
+    public NeuralEvaluator(String path, int maxBatch) throws IOException {
+        this.maxBatch = maxBatch;
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(Paths.get(path))).order(ByteOrder.LITTLE_ENDIAN);
+
+        byte[] magic = new byte[4];
+        data.get(magic);
+        if (!"C4NN".equals(new String(magic, "US-ASCII")) || data.getInt() != 1) {
+            throw new IOException("Not a converted Connect 4 model: " + path);
+        }
+
+        int layers = data.getInt();
+        inSizes = new int[layers];
+        outSizes = new int[layers];
+        weights = new float[layers][];
+        biases = new float[layers][];
+        int widest = INPUTS;
+        for (int layer = 0; layer < layers; layer++) {
+            inSizes[layer] = data.getInt();
+            outSizes[layer] = data.getInt();
+            if (inSizes[layer] != (layer == 0 ? INPUTS : outSizes[layer - 1])) {
+                throw new IOException("Layer " + layer + " has the wrong input size: " + inSizes[layer]);
+            }
+            weights[layer] = new float[inSizes[layer] * outSizes[layer]];
+            biases[layer] = new float[outSizes[layer]];
+            data.asFloatBuffer().get(weights[layer]);
+            data.position(data.position() + 4 * weights[layer].length);
+            data.asFloatBuffer().get(biases[layer]);
+            data.position(data.position() + 4 * biases[layer].length);
+            widest = Math.max(widest, outSizes[layer]);
+        }
+
+        outputs = outSizes[layers - 1];
+        if (outputs != Position.COLS && outputs != 1 && outputs != Position.COLS + 1) {
+            throw new IOException("Unsupported output size " + outputs + ", expected 7, 1 or 8");
+        }
+        stride = widest;
+        bufferA = new float[maxBatch * stride];
+        bufferB = new float[maxBatch * stride];
+    }
+
+    public boolean hasPolicy() {
+        return outputs != 1;
+    }
+
+    public boolean hasValue() {
+        return outputs != Position.COLS;
+    }
+
+    public int getMaxBatch() {
+        return maxBatch;
+    }
+
+    /**
+     * Evaluates positions[0..count). policyOut receives 7 logits per position
+     * (count * 7 floats) and valueOut one value in [-1, 1] per position, from
+     * the side to move's point of view. Either output may be null.
+     */
+    public void evaluate(Position[] positions, int count, float[] policyOut, float[] valueOut) {
+        if (count > maxBatch) {
+            throw new IllegalArgumentException("Batch of " + count + " exceeds " + maxBatch);
+        }
+
+        for (int b = 0; b < count; b++) {
+            encode(positions[b], bufferA, b * stride);
+        }
+
+        float[] in = bufferA;
+        float[] out = bufferB;
+        int last = weights.length - 1;
+        for (int layer = 0; layer <= last; layer++) {
+            dense(layer, in, out, count, layer < last);
+            float[] swap = in;
+            in = out;
+            out = swap;
+        }
+
+        for (int b = 0; b < count; b++) {
+            int base = b * stride;
+            if (policyOut != null && hasPolicy()) {
+                System.arraycopy(in, base, policyOut, b * Position.COLS, Position.COLS);
+            }
+            if (valueOut != null && hasValue()) {
+                valueOut[b] = (float) Math.tanh(in[base + outputs - 1]);
+            }
+        }
+    }
+
+    /**
+     * Picks the legal move with the highest policy logit, never missing a win
+     * or a block. A value-only model instead scores the position after each
+     * candidate move and picks the one worst for the opponent.
+     */
+    @Override
+    public int getMove(int[][] board) {
+        Position position = Position.fromBoard(board);
+        long moves = position.winningMoves();
+        if (moves == 0) {
+            moves = position.nonLosingMoves();
+        }
+        if (moves == 0) {
+            moves = position.playableMoves();
+        }
+        if (moves == 0) {
+            return -1;
+        }
+
+        float[] scores = new float[Position.COLS];
+        synchronized (this) {
+            if (hasPolicy()) {
+                evaluate(new Position[] {position}, 1, scores, null);
+            } else {
+                scoreReplies(position, moves, scores);
+            }
+        }
+        int best = -1;
+        for (int col = 0; col < Position.COLS; col++) {
+            if ((moves & ThreatAnalyzer.columnMask(col)) != 0 && (best == -1 || scores[col] > scores[best])) {
+                best = col;
+            }
+        }
+        return best;
+    }
+
+    // scores[col] = minus the value of the position after col, for the side to move now
+    private void scoreReplies(Position position, long moves, float[] scores) {
+        Position[] children = new Position[Position.COLS];
+        int[] cols = new int[Position.COLS];
+        int count = 0;
+        for (int col = 0; col < Position.COLS; col++) {
+            if ((moves & ThreatAnalyzer.columnMask(col)) != 0) {
+                Position child = position.copy();
+                if (child.isWinningMove(col)) {
+                    scores[col] = Float.MAX_VALUE;
+                    continue;
+                }
+                child.play(col);
+                children[count] = child;
+                cols[count++] = col;
+            }
+        }
+        float[] values = new float[Position.COLS];
+        for (int from = 0; from < count; from += maxBatch) {
+            int n = Math.min(maxBatch, count - from);
+            evaluate(Arrays.copyOfRange(children, from, from + n), n, null, values);
+            for (int i = 0; i < n; i++) {
+                scores[cols[from + i]] = -values[i];
+            }
+        }
+    }
+
+    private void dense(int layer, float[] in, float[] out, int count, boolean relu) {
+        int inSize = inSizes[layer];
+        int outSize = outSizes[layer];
+        float[] w = weights[layer];
+        float[] bias = biases[layer];
+
+        // Output row outer, batch inner: each weight row is read once per batch
+        for (int o = 0; o < outSize; o++) {
+            int row = o * inSize;
+            for (int b = 0; b < count; b++) {
+                float sum = bias[o] + dot(w, row, in, b * stride, inSize);
+                out[b * stride + o] = relu && sum < 0 ? 0 : sum;
+            }
+        }
+    }
+
+    private static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        if (VECTORIZED) {
+            return VectorMath.dot(a, aOffset, b, bOffset, length);
+        }
+        float sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    private static void encode(Position position, float[] buffer, int offset) {
+        long own = position.getCurrent();
+        long opponent = own ^ position.getMask();
+        for (int row = 0; row < Position.ROWS; row++) {
+            for (int col = 0; col < Position.COLS; col++) {
+                long bit = WinLines.bit(row, col);
+                int cell = WinLines.cell(row, col);
+                buffer[offset + cell] = (own & bit) != 0 ? 1f : 0f;
+                buffer[offset + Position.CELLS + cell] = (opponent & bit) != 0 ? 1f : 0f;
+            }
+        }
+    }
+
+    private static boolean vectorApiAvailable() {
+        return ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+    }
+}
@@ -0,0 +1,75 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Opening moves the search engine plays without searching.
+ *
+ * Entries are keyed by position, so a book move is found however the
+ * position was reached, and every entry is also added for the mirrored
+ * position. Book files have one entry per line: the moves so far as
+ * 1-based columns, then the reply, e.g. {@code 44 3}. Blank lines and
+ * lines starting with # are ignored.
+ */
+public class OpeningBook {
+    private final Map<Long, Integer> moves = new HashMap<>();
+
+    // The one opening fact nobody disputes: the first player starts in the centre
+    public static OpeningBook withDefaults() {
+        OpeningBook book = new OpeningBook();
+        book.add("", 3);
+        return book;
+    }
+
+    public static OpeningBook load(String path) throws IOException {
+        OpeningBook book = withDefaults();
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split("\\s+");
+                try {
+                    String moveString = parts.length == 1 ? "" : parts[0];
+                    book.add(moveString, Integer.parseInt(parts[parts.length - 1]) - 1);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(path + ":" + lineNumber + ": invalid book entry: " + line);
+                }
+            }
+        }
+        return book;
+    }
+
+    // col is 0-based, like every column outside move strings
+    public void add(String moveString, int col) {
+        Position position = Position.fromMoves(moveString);
+        if (col < 0 || col >= Position.COLS || !position.canPlay(col)) {
+            throw new IllegalArgumentException("Invalid book move " + (col + 1) + " after " + moveString);
+        }
+        moves.put(position.key(), col);
+
+        StringBuilder mirrored = new StringBuilder(moveString.length());
+        for (int i = 0; i < moveString.length(); i++) {
+            mirrored.append((char) ('1' + '7' - moveString.charAt(i)));
+        }
+        moves.put(Position.fromMoves(mirrored.toString()).key(), Position.COLS - 1 - col);
+    }
+
+    // Book reply for this position, or -1
+    public int lookup(Position position) {
+        Integer col = moves.get(position.key());
+        return col == null ? -1 : col;
+    }
+
+    public int size() {
+        return moves.size();
+    }
+}
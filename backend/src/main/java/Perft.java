@@ -0,0 +1,161 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Perft: counts every move sequence of exactly N plies from a position, as a
+ * correctness check and throughput benchmark for move generation and undo.
+ *
+ * A game that is won before ply N ends there and is not counted, and a full
+ * column cannot be played. From the empty board the counts must match the
+ * known number of Connect 4 move sequences (games, not distinct positions)
+ * of each length: 1, 7, 49, 343, ..., 268031646 at 10 plies. Transpositions
+ * are counted once per sequence, so these are far larger than the number
+ * of positions.
+ *
+ * Usage: java Perft [--moves 4453] [--threads 8] [--game] depth
+ *
+ * --game runs the same count through Game.place/undoMove instead of the
+ * Position bitboards; it is much slower but checks the server's board code.
+ */
+public class Perft {
+    // Leaf counts from the empty board for depth 0..10
+    static final long[] REFERENCE = {
+        1L, 7L, 49L, 343L, 2401L, 16807L, 117649L, 823536L,
+        5673234L, 39394572L, 268031646L,
+    };
+
+    public static long perft(Position position, int depth) {
+        if (depth == 0) {
+            return 1;
+        }
+        long nodes = 0;
+        for (int col = 0; col < Position.COLS; col++) {
+            if (!position.canPlay(col)) {
+                continue;
+            }
+            if (position.isWinningMove(col) || depth == 1) {
+                // A win ends the game: it is a leaf only at the last ply
+                nodes += depth == 1 ? 1 : 0;
+                continue;
+            }
+            position.play(col);
+            nodes += perft(position, depth - 1);
+            position.undo(col);
+        }
+        return nodes;
+    }
+
+    static long perft(Game game, int depth) {
+        if (depth == 0) {
+            return 1;
+        }
+        long nodes = 0;
+        for (int col = 0; col < Position.COLS; col++) {
+            if (!game.place(col)) {
+                continue;
+            }
+            if (depth == 1) {
+                nodes++;
+            } else if (!game.isGameOver()) {
+                nodes += perft(game, depth - 1);
+            }
+            game.undoMove(col);
+        }
+        return nodes;
+    }
+
+    // Splits the tree two plies below the root so threads get even work
+    public static long parallelPerft(Position root, int depth, int threads) throws Exception {
+        if (depth < 3 || threads <= 1) {
+            return perft(root, depth);
+        }
+
+        List<Position> splits = new ArrayList<>();
+        long nodes = 0;
+        for (int first = 0; first < Position.COLS; first++) {
+            if (!root.canPlay(first) || root.isWinningMove(first)) {
+                continue;
+            }
+            Position afterFirst = root.copy();
+            afterFirst.play(first);
+            for (int second = 0; second < Position.COLS; second++) {
+                if (!afterFirst.canPlay(second) || afterFirst.isWinningMove(second)) {
+                    continue;
+                }
+                Position split = afterFirst.copy();
+                split.play(second);
+                splits.add(split);
+            }
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Long>> results = new ArrayList<>();
+            for (Position split : splits) {
+                results.add(pool.submit(() -> perft(split, depth - 2)));
+            }
+            for (Future<Long> result : results) {
+                nodes += result.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return nodes;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String moves = "";
+        int threads = 1;
+        boolean useGame = false;
+        int depth = -1;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--moves":
+                    moves = args[++i];
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--game":
+                    useGame = true;
+                    break;
+                default:
+                    depth = Integer.parseInt(args[i]);
+            }
+        }
+        if (depth < 0) {
+            System.err.println("Usage: java Perft [--moves 4453] [--threads N] [--game] depth");
+            System.exit(2);
+        }
+
+        Position root = Position.fromMoves(moves);
+        boolean failed = false;
+        for (int d = 1; d <= depth; d++) {
+            long start = System.nanoTime();
+            long nodes;
+            if (useGame) {
+                Game game = new Game();
+                for (int i = 0; i < moves.length(); i++) {
+                    game.makeMove(moves.charAt(i) - '1');
+                }
+                nodes = perft(game, d);
+            } else {
+                nodes = parallelPerft(root, d, threads);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            String check = "";
+            if (moves.isEmpty() && d < REFERENCE.length) {
+                boolean ok = nodes == REFERENCE[d];
+                failed |= !ok;
+                check = ok ? "  OK" : "  MISMATCH (expected " + REFERENCE[d] + ")";
+            }
+            System.out.printf("perft(%d) = %d  %.3fs  %.0f positions/s%s%n",
+                    d, nodes, seconds, nodes / Math.max(seconds, 1e-9), check);
+        }
+        System.exit(failed ? 1 : 0);
+    }
+}
@@ -0,0 +1,232 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Searches on the player's time. After each AI move, the player's likely
+ * replies are searched in the background, starting with the one the AI's
+ * search expects. Each search fills the shared transposition table and
+ * leaves its result with the game. When the player's move arrives, searches
+ * of the other replies stop; the next /ai-move then plays the finished
+ * result at once, or waits for the search already under way instead of
+ * starting from scratch.
+ *
+ * Pondering runs on low-priority daemon threads, only when the server isn't
+ * busy, and searches of replies the player hasn't made stop as soon as it
+ * is. With an AiScheduler, its CPU time is charged to the game's tenant,
+ * and games of tenants over their share aren't pondered.
+ */
+public class Ponderer {
+    private static final int[] COLUMN_ORDER = {3, 2, 4, 1, 5, 0, 6};
+
+    private final SearchEngine engine;
+    private final AiScheduler scheduler;
+    private final BooleanSupplier busy;
+    private final ThreadPoolExecutor pool;
+
+    private final LongAdder searches = Metrics.counter("connect4_ponder_searches_total",
+            "Replies searched on the player's time", "");
+    private final LongAdder hits = Metrics.counter("connect4_ponder_replies_total",
+            "AI moves after pondering, by whether the player's reply had been searched", "outcome=\"hit\"");
+    private final LongAdder misses = Metrics.counter("connect4_ponder_replies_total",
+            "AI moves after pondering, by whether the player's reply had been searched", "outcome=\"miss\"");
+    private final LongAdder stopped = Metrics.counter("connect4_ponder_stopped_total",
+            "Ponder searches stopped because the server got busy", "");
+
+    /**
+     * @param busy true while the server has real work to do; pondering
+     *        doesn't start then, and running ponder searches stop
+     * @param queueSize games waiting to be pondered; more are not pondered
+     * @param scheduler charged with the pondering's CPU time, or null
+     */
+    public Ponderer(SearchEngine engine, int threads, int queueSize, BooleanSupplier busy, AiScheduler scheduler) {
+        this.engine = engine;
+        this.scheduler = scheduler;
+        this.busy = busy;
+        this.pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(queueSize), r -> {
+                    Thread t = new Thread(r, "ponder");
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);
+                    return t;
+                }, new ThreadPoolExecutor.DiscardPolicy());
+        Metrics.gauge("connect4_ponder_queue", "Games waiting to be pondered", "", () -> pool.getQueue().size());
+    }
+
+    /**
+     * Starts pondering the player's replies after the AI's move, which
+     * result is the search for, on behalf of tenant (null without a
+     * scheduler). Call under the game's lock, after the move.
+     */
+    public void ponder(Game game, SearchResult result, String tenant) {
+        game.setPondering(null);
+        // Weakened games don't play full-strength searches, so pondering would only waste them
+        if (game.isGameOver() || !game.getGeometry().isStandard() || game.getDifficulty() != null
+                || busy.getAsBoolean()) {
+            return;
+        }
+        boolean charged = scheduler != null && tenant != null;
+        if (charged && scheduler.isOverShare(tenant)) {
+            return;
+        }
+        Replies replies = new Replies(Position.fromBoard(game.getBoard()),
+                result.pv.length > 1 ? result.pv[1] : -1);
+        game.setPondering(replies);
+        pool.execute(() -> {
+            long start = charged ? scheduler.threadTime() : 0;
+            try {
+                run(replies);
+            } finally {
+                if (charged) {
+                    scheduler.charge(tenant, start);
+                }
+            }
+        });
+    }
+
+    private void run(Replies replies) {
+        for (int col : replies.order) {
+            Position position = replies.root.copy();
+            if (!position.canPlay(col) || position.isWinningMove(col)) {
+                // Nothing to answer after the player wins
+                continue;
+            }
+            position.play(col);
+            if (!replies.start(col)) {
+                continue;
+            }
+            // Once the player has made this move, its search is the work the next
+            // /ai-move needs, so load doesn't stop it any more
+            BooleanSupplier cancelled = () -> replies.isDropped(col)
+                || busy.getAsBoolean() && replies.isSpeculative(col);
+            SearchResult result = null;
+            try {
+                result = engine.search(position, cancelled);
+                searches.increment();
+                if (cancelled.getAsBoolean()) {
+                    if (!replies.isDropped(col)) {
+                        // Busy now, so leave the remaining replies too
+                        stopped.increment();
+                        replies.drop();
+                    }
+                    result = null;
+                } else {
+                    result.source = SearchResult.PONDER;
+                }
+            } catch (RuntimeException e) {
+                Log.warn("Ponder search failed: {}", e.toString());
+            } finally {
+                // Someone may be waiting for it
+                replies.finish(col, result);
+            }
+        }
+    }
+
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * The pondering done for one AI move, kept with the game. Searches of
+     * every reply but the one played are dropped once the player moves.
+     */
+    public class Replies {
+        final Position root;
+        final int[] order = new int[Position.COLS];
+        final AtomicReferenceArray<CompletableFuture<SearchResult>> results =
+                new AtomicReferenceArray<>(Position.COLS);
+        // Guarded by this
+        private int played = -1;
+        private boolean taken;
+        private volatile boolean dropped;
+
+        Replies(Position root, int expected) {
+            this.root = root;
+            int n = 0;
+            if (expected >= 0) {
+                order[n++] = expected;
+            }
+            for (int col : COLUMN_ORDER) {
+                if (col != expected) {
+                    order[n++] = col;
+                }
+            }
+        }
+
+        // Whether the search of this reply should go ahead
+        synchronized boolean start(int col) {
+            if (dropped || taken || (played != -1 && played != col)) {
+                return false;
+            }
+            results.set(col, new CompletableFuture<>());
+            return true;
+        }
+
+        void finish(int col, SearchResult result) {
+            results.get(col).complete(result);
+        }
+
+        boolean isDropped(int col) {
+            if (dropped) {
+                return true;
+            }
+            synchronized (this) {
+                return played != -1 && played != col;
+            }
+        }
+
+        synchronized boolean isSpeculative(int col) {
+            return played != col;
+        }
+
+        void drop() {
+            dropped = true;
+        }
+
+        // The player played col; a second move means the replies no longer fit the game
+        synchronized void played(int col) {
+            if (played == -1) {
+                played = col;
+            } else {
+                dropped = true;
+            }
+        }
+
+        /**
+         * The pondered answer to the position, waiting for its search if it
+         * is under way, or null when it wasn't searched or was stopped.
+         * Nothing further is searched after this.
+         */
+        SearchResult take(long positionKey) {
+            CompletableFuture<SearchResult> future;
+            int col;
+            synchronized (this) {
+                taken = true;
+                col = played;
+                future = col == -1 || dropped ? null : results.get(col);
+            }
+            SearchResult result = null;
+            if (future != null) {
+                Position expected = root.copy();
+                expected.play(col);
+                if (expected.key() == positionKey) {
+                    try {
+                        result = future.get();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (ExecutionException e) {
+                        Log.warn("Ponder search failed: {}", e.getCause().toString());
+                    }
+                }
+            }
+            dropped = true;
+            (result != null ? hits : misses).increment();
+            return result;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/**
+ * Compact bitboard position used by the search engines.
+ *
+ * Uses the WinLines bitboard layout. {@code current} holds the pieces of the
+ * side to move and {@code mask} holds every piece on the board, so the
+ * opponent's pieces are {@code current ^ mask}. Playing a move is two bit
+ * operations and undo() restores the previous position exactly.
+ */
+public class Position {
+    public static final int ROWS = WinLines.ROWS;
+    public static final int COLS = WinLines.COLS;
+    public static final int CELLS = WinLines.CELLS;
+    private static final int HEIGHT = WinLines.HEIGHT;
+    private static final long COLUMN_BITS = (1L << HEIGHT) - 1;
+
+    private long current;
+    private long mask;
+    private int moves;
+
+    public Position() {
+    }
+
+    private Position(long current, long mask, int moves) {
+        this.current = current;
+        this.mask = mask;
+        this.moves = moves;
+    }
+
+    // Builds a position from the server's board; player 1 always moves first
+    public static Position fromBoard(int[][] board) {
+        long[] pieces = new long[3];
+        int moves = 0;
+        for (int row = 0; row < ROWS; row++) {
+            for (int col = 0; col < COLS; col++) {
+                int cell = board[row][col];
+                if (cell != 0) {
+                    pieces[cell] |= WinLines.bit(row, col);
+                    moves++;
+                }
+            }
+        }
+        int toMove = moves % 2 == 0 ? 1 : 2;
+        return new Position(pieces[toMove], pieces[1] | pieces[2], moves);
+    }
+
+    // Position with these bitboards, as stored by TrainingData
+    public static Position fromBitboards(long current, long mask) {
+        return new Position(current, mask, Long.bitCount(mask));
+    }
+
+    // Builds a position from a move string of 1-based columns, e.g. "4453"
+    public static Position fromMoves(String moveString) {
+        Position position = new Position();
+        for (int i = 0; i < moveString.length(); i++) {
+            int col = moveString.charAt(i) - '1';
+            if (col < 0 || col >= COLS || !position.canPlay(col) || position.isWinningMove(col)) {
+                throw new IllegalArgumentException("Invalid move sequence: " + moveString);
+            }
+            position.play(col);
+        }
+        return position;
+    }
+
+    /**
+     * Builds a position from the 42-cell board string the server sends
+     * (row by row from the top, comma separated, trailing comma allowed).
+     * Throws IllegalArgumentException for boards that can't occur in a game:
+     * floating pieces, wrong piece counts, or a game that is already won.
+     */
+    public static Position fromCsv(String csv) {
+        String[] cells = csv.trim().split("\\s*,\\s*");
+        if (cells.length != CELLS) {
+            throw new IllegalArgumentException("Board needs " + CELLS + " cells, got " + cells.length);
+        }
+        int[][] board = new int[ROWS][COLS];
+        int[] counts = new int[3];
+        long[] pieces = new long[3];
+        for (int i = 0; i < CELLS; i++) {
+            int row = i / COLS;
+            int col = i % COLS;
+            int cell;
+            try {
+                cell = Integer.parseInt(cells[i]);
+            } catch (NumberFormatException e) {
+                cell = -1;
+            }
+            if (cell < 0 || cell > 2) {
+                throw new IllegalArgumentException("Invalid cell value: " + cells[i]);
+            }
+            board[row][col] = cell;
+            counts[cell]++;
+            pieces[cell] |= WinLines.bit(row, col);
+        }
+        for (int col = 0; col < COLS; col++) {
+            for (int row = 1; row < ROWS; row++) {
+                if (board[row - 1][col] != 0 && board[row][col] == 0) {
+                    throw new IllegalArgumentException("Floating piece in column " + col);
+                }
+            }
+        }
+        if (counts[1] != counts[2] && counts[1] != counts[2] + 1) {
+            throw new IllegalArgumentException("Piece counts don't match alternating play");
+        }
+        if (WinLines.hasWin(pieces[1]) || WinLines.hasWin(pieces[2])) {
+            throw new IllegalArgumentException("The game on this board is already over");
+        }
+        return fromBoard(board);
+    }
+
+    public Position copy() {
+        return new Position(current, mask, moves);
+    }
+
+    public boolean canPlay(int col) {
+        return (mask & topMask(col)) == 0;
+    }
+
+    public void play(int col) {
+        current ^= mask;
+        mask |= mask + bottomMask(col);
+        moves++;
+    }
+
+    // Plays the move given as a single-bit cell, as returned by the threat helpers
+    public void playBit(long move) {
+        current ^= mask;
+        mask |= move;
+        moves++;
+    }
+
+    // Removes the top piece of the column; only valid for the last move played there
+    public void undo(int col) {
+        long top = Long.highestOneBit(mask & ThreatAnalyzer.columnMask(col));
+        mask ^= top;
+        current ^= mask;
+        moves--;
+    }
+
+    public boolean isWinningMove(int col) {
+        return (winningMoves() & ThreatAnalyzer.columnMask(col)) != 0;
+    }
+
+    // Playable cells that win immediately for the side to move
+    public long winningMoves() {
+        return ThreatAnalyzer.winningCells(current, mask) & ThreatAnalyzer.playable(mask);
+    }
+
+    // Playable cells that don't let the opponent win next move; 0 when every move loses
+    public long nonLosingMoves() {
+        return ThreatAnalyzer.nonLosingMoves(current, current ^ mask, mask);
+    }
+
+    public long playableMoves() {
+        return ThreatAnalyzer.playable(mask);
+    }
+
+    public boolean isFull() {
+        return moves == CELLS;
+    }
+
+    // Unique for every position
+    public long key() {
+        return current + mask;
+    }
+
+    // The smaller of the key and its mirror image's, so a position and its mirror share one key
+    public long canonicalKey() {
+        long key = key();
+        long mirrored = 0;
+        for (int col = 0; col < COLS; col++) {
+            mirrored |= (key >>> (col * HEIGHT) & COLUMN_BITS) << ((COLS - 1 - col) * HEIGHT);
+        }
+        return Math.min(key, mirrored);
+    }
+
+    public int getMoves() {
+        return moves;
+    }
+
+    public long getCurrent() {
+        return current;
+    }
+
+    public long getMask() {
+        return mask;
+    }
+
+    // 1 or 2, the player whose turn it is
+    public int getPlayerToMove() {
+        return moves % 2 == 0 ? 1 : 2;
+    }
+
+    static long bottomMask(int col) {
+        return 1L << (col * HEIGHT);
+    }
+
+    static long topMask(int col) {
+        return 1L << (ROWS - 1 + col * HEIGHT);
+    }
+}
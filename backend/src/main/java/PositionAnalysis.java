@@ -0,0 +1,83 @@
+/**
+ * Score of every column in one position, from SearchEngine.analyze().
+ *
+ * Scores use the SearchEngine convention and are for the side to move: a
+ * column's score is what the side to move gets by playing there.
+ */
+public class PositionAnalysis {
+    public static final int UNPLAYABLE = Integer.MIN_VALUE;
+
+    public final int movesPlayed;
+    // UNPLAYABLE for full columns
+    public final int[] scores = new int[Position.COLS];
+    public int depth;
+    // The search reached the end of the game in every line, so scores are exact
+    public boolean complete;
+    public long nodes;
+    public long elapsedNanos;
+
+    public PositionAnalysis(int movesPlayed) {
+        this.movesPlayed = movesPlayed;
+    }
+
+    // "win", "loss", "draw", "unknown" (heuristic score only) or "full"
+    public String result(int col) {
+        int score = scores[col];
+        if (score == UNPLAYABLE) {
+            return "full";
+        }
+        if (score >= SearchEngine.WIN_THRESHOLD) {
+            return "win";
+        }
+        if (score <= -SearchEngine.WIN_THRESHOLD) {
+            return "loss";
+        }
+        return complete && score == 0 ? "draw" : "unknown";
+    }
+
+    // Plies from now until the winning piece, or -1 when the result isn't a win or loss or came from a tablebase
+    public int distance(int col) {
+        int score = scores[col];
+        if (score == UNPLAYABLE || Math.abs(score) < SearchEngine.WIN_THRESHOLD
+                || Math.abs(score) == SearchEngine.TABLEBASE_WIN) {
+            return -1;
+        }
+        return SearchEngine.WIN_SCORE - Math.abs(score) - movesPlayed;
+    }
+
+    // Highest scoring column, or -1 on a full board
+    public int bestColumn() {
+        int best = -1;
+        for (int col = 0; col < Position.COLS; col++) {
+            if (scores[col] != UNPLAYABLE && (best == -1 || scores[col] > scores[best])) {
+                best = col;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * The /analyze response: one line per column, then the search totals.
+     *
+     *   column=3 result=win plies=7 score=999958
+     */
+    public String format() {
+        StringBuilder out = new StringBuilder(320);
+        for (int col = 0; col < Position.COLS; col++) {
+            out.append("column=").append(col).append(" result=").append(result(col));
+            if (scores[col] != UNPLAYABLE) {
+                int plies = distance(col);
+                if (plies != -1) {
+                    out.append(" plies=").append(plies);
+                }
+                out.append(" score=").append(scores[col]);
+            }
+            out.append('\n');
+        }
+        out.append("best=").append(bestColumn()).append('\n');
+        out.append("depth=").append(depth).append('\n');
+        out.append("nodes=").append(nodes).append('\n');
+        out.append("timeMs=").append(elapsedNanos / 1000 / 1000.0).append('\n');
+        return out.toString();
+    }
+}
@@ -0,0 +1,111 @@
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free token buckets for one request budget, such as the cheap or the
+ * expensive endpoints, with one bucket per client address and one per game.
+ *
+ * A bucket holds up to burst tokens and refills at perSecond. Rather than a
+ * token count and a refill time, each bucket is a single AtomicLong: the
+ * time at which it will be full again. A request takes a token by moving
+ * that time one refill interval later with a compare-and-set, and is
+ * rejected if it would then be more than burst intervals away. So a
+ * request is a few reads and one CAS, with no lock and no refill timer,
+ * and a rejected request gets the exact wait until its token is back.
+ *
+ * Full buckets are the same as no bucket, so they're dropped once there
+ * are more than maxBuckets.
+ */
+public class RateLimiter {
+    private final long interval;
+    private final long capacity;
+    private final int maxBuckets;
+    private final Map<String, AtomicLong> clients = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> games = new ConcurrentHashMap<>();
+
+    private final LongAdder allowed;
+    private final LongAdder limitedByClient;
+    private final LongAdder limitedByGame;
+
+    /**
+     * @param name the budget's label in the metrics
+     * @param perSecond tokens added per second
+     * @param burst tokens a bucket holds, the most requests at once
+     * @param maxBuckets buckets kept before full ones are dropped
+     */
+    public RateLimiter(String name, double perSecond, int burst, int maxBuckets) {
+        if (perSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Rate limits need a positive rate and burst");
+        }
+        this.interval = Math.max(1, Math.round(1e9 / perSecond));
+        this.capacity = burst * interval;
+        this.maxBuckets = maxBuckets;
+        String label = "budget=\"" + name + "\"";
+        allowed = Metrics.counter("connect4_ratelimit_allowed_total", "Requests within their rate limit", label);
+        limitedByClient = Metrics.counter("connect4_ratelimit_limited_total",
+                "Requests rejected with 429, by the bucket that was empty", label + ",key=\"client\"");
+        limitedByGame = Metrics.counter("connect4_ratelimit_limited_total",
+                "Requests rejected with 429, by the bucket that was empty", label + ",key=\"game\"");
+        Metrics.gauge("connect4_ratelimit_buckets", "Rate limit buckets kept", label,
+                () -> clients.size() + games.size());
+    }
+
+    /**
+     * Takes a token from the client's bucket and, unless game is null, from
+     * the game's. Returns 0 if the request may go ahead, or else the
+     * nanoseconds until it could; a rejected request takes no tokens.
+     */
+    public long acquire(String client, String game) {
+        long now = System.nanoTime();
+        long wait = take(clients, client, now);
+        if (wait > 0) {
+            limitedByClient.increment();
+            return wait;
+        }
+        if (game != null) {
+            wait = take(games, game, now);
+            if (wait > 0) {
+                // Give the client its token back
+                AtomicLong bucket = clients.get(client);
+                if (bucket != null) {
+                    bucket.addAndGet(-interval);
+                }
+                limitedByGame.increment();
+                return wait;
+            }
+        }
+        allowed.increment();
+        return 0;
+    }
+
+    private long take(Map<String, AtomicLong> buckets, String key, long now) {
+        AtomicLong bucket = buckets.get(key);
+        if (bucket == null) {
+            if (buckets.size() >= maxBuckets) {
+                dropFull(buckets, now);
+            }
+            bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+        }
+        while (true) {
+            long fullAt = bucket.get();
+            long next = (fullAt - now > 0 ? fullAt : now) + interval;
+            if (next - now > capacity) {
+                return next - now - capacity;
+            }
+            if (bucket.compareAndSet(fullAt, next)) {
+                return 0;
+            }
+        }
+    }
+
+    private static void dropFull(Map<String, AtomicLong> buckets, long now) {
+        for (Iterator<AtomicLong> it = buckets.values().iterator(); it.hasNext();) {
+            if (it.next().get() - now <= 0) {
+                it.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free cache of AI replies by position, shared by all sessions.
+ *
+ * Casual games repeat the same openings over and over, so the same position
+ * reaches /ai-move many times. Each slot packs the Position key with the
+ * chosen column into one long, so a lookup is a single atomic read and a
+ * colliding store simply replaces the old entry.
+ */
+public class ResultCache {
+    private final AtomicLongArray entries;
+    private final int mask;
+    private final LongAdder lookups = Metrics.counter("connect4_result_cache_lookups_total",
+            "AI reply cache lookups", "");
+    private final LongAdder hits = Metrics.counter("connect4_result_cache_hits_total",
+            "AI reply cache hits", "");
+
+    // size is rounded up to a power of two
+    public ResultCache(int size) {
+        int capacity = Integer.highestOneBit(Math.max(1, size - 1)) << 1;
+        entries = new AtomicLongArray(capacity);
+        mask = capacity - 1;
+        Metrics.gauge("connect4_result_cache_hit_ratio", "Fraction of AI reply cache lookups that hit", "",
+                () -> lookups.sum() == 0 ? 0 : (double) hits.sum() / lookups.sum());
+    }
+
+    // Cached column for this position, or -1
+    public int get(long key) {
+        lookups.increment();
+        long entry = entries.get(index(key));
+        if (entry != 0 && entry >>> 3 == key) {
+            hits.increment();
+            return (int) (entry & 7) - 1;
+        }
+        return -1;
+    }
+
+    public void put(long key, int column) {
+        entries.set(index(key), key << 3 | (column + 1));
+    }
+
+    private int index(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 40) & mask;
+    }
+}
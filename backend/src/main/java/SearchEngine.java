@@ -0,0 +1,613 @@
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Alpha-beta (negamax) engine on the Position bitboards.
+ *
+ * Searches by iterative deepening up to a depth limit, a time limit, or
+ * both, and plays the best move of the last depth it finished. Positions are
+ * shared through a lock-free TranspositionTable, so one engine can serve
+ * every session and any number of threads. Before searching it checks an
+ * OpeningBook.
+ *
+ * Scores are from the side to move. A proven win scores
+ * WIN_SCORE - (number of the winning piece), so faster wins score higher, and
+ * the score of a position means the same from wherever it is reached. Heuristic
+ * scores of unfinished lines always stay below WIN_THRESHOLD.
+ *
+ * With an EndgameTablebase set, positions it covers are scored without
+ * searching. Their wins score TABLEBASE_WIN, below any win with a known
+ * distance, so the search still prefers a win it can see.
+ *
+ * A DifficultyProfile plays weaker on purpose, and cheaper: its node and
+ * time budgets replace the engine's (which still cap them), its blunders
+ * skip the search, and its noisy leaf scores go to a private table so they
+ * never reach the shared one.
+ */
+public class SearchEngine implements MoveEngine {
+    public static final int WIN_SCORE = 1_000_000;
+    public static final int WIN_THRESHOLD = WIN_SCORE - 100;
+    // A tablebase win: proven, but the winning piece isn't known
+    public static final int TABLEBASE_WIN = WIN_SCORE - (Position.CELLS + 1);
+    private static final int INFINITY = WIN_SCORE + 1;
+    private static final int COLS = Position.COLS;
+    private static final int CELLS = Position.CELLS;
+
+    // Leaf evaluation weights
+    private static final int THREAT_SCORE = 16;
+    private static final int ZUGZWANG_SCORE = 200;
+    private static final int CENTER_SCORE = 3;
+    private static final long CENTER_MASK = ThreatAnalyzer.columnMask(COLS / 2);
+
+    // Centre columns first when nothing else tells moves apart
+    private static final int[] COLUMN_ORDER = {3, 2, 4, 1, 5, 0, 6};
+
+    // Tables for noisy searches, by log2 of their size (see privateTable)
+    private static final long MIN_PRIVATE_TABLE = 1 << 10;
+    private static final long MAX_PRIVATE_TABLE = 1 << 18;
+    private static final ThreadLocal<TranspositionTable[]> privateTables =
+            ThreadLocal.withInitial(() -> new TranspositionTable[19]);
+
+    private final int maxDepth;
+    private final long timeBudgetMillis;
+    private final long nodeBudget;
+    private final TranspositionTable table;
+    private final OpeningBook book;
+    private volatile EndgameTablebase tablebase;
+
+    private final LongAdder nodesSearched = Metrics.counter("connect4_ai_nodes_total",
+            "Nodes searched by the AI (playouts for MCTS)", "engine=\"alphabeta\"");
+    private final AtomicLong nodesPerSecond = Metrics.gauge("connect4_ai_nodes_per_second",
+            "Search speed of the last AI move", "engine=\"alphabeta\"");
+    private final AtomicLong depthReached = Metrics.gauge("connect4_ai_search_depth",
+            "Depth reached by the last AI search", "engine=\"alphabeta\"");
+    private final LatencyHistogram searchTime = Metrics.histogram("connect4_ai_search_duration_seconds",
+            "Time spent searching per AI move", "engine=\"alphabeta\"");
+
+    public SearchEngine() {
+        this(CELLS, 1000, new TranspositionTable(1 << 22), OpeningBook.withDefaults());
+    }
+
+    /**
+     * @param maxDepth deepest iteration in plies
+     * @param timeBudgetMillis milliseconds per move, or 0 for no limit
+     * @param book opening book, or null
+     */
+    public SearchEngine(int maxDepth, long timeBudgetMillis, TranspositionTable table, OpeningBook book) {
+        this(maxDepth, timeBudgetMillis, 0, table, book);
+    }
+
+    /**
+     * @param nodeBudget nodes per move, or 0 for no limit; unlike a time
+     *        budget it gives the same strength on any machine and under any load
+     */
+    public SearchEngine(int maxDepth, long timeBudgetMillis, long nodeBudget, TranspositionTable table,
+                        OpeningBook book) {
+        this.maxDepth = Math.max(1, maxDepth);
+        this.timeBudgetMillis = timeBudgetMillis;
+        this.nodeBudget = nodeBudget;
+        this.table = table;
+        this.book = book;
+    }
+
+    @Override
+    public int getMove(int[][] board) {
+        return search(Position.fromBoard(board)).move;
+    }
+
+    @Override
+    public SearchResult search(int[][] board) {
+        return search(Position.fromBoard(board));
+    }
+
+    @Override
+    public String getName() {
+        return "alphabeta";
+    }
+
+    public TranspositionTable getTable() {
+        return table;
+    }
+
+    // Probed below the root wherever it covers the position; null turns it off
+    public void setTablebase(EndgameTablebase tablebase) {
+        this.tablebase = tablebase;
+    }
+
+    public SearchResult search(Position position) {
+        return search(position, maxDepth, timeBudgetMillis);
+    }
+
+    // One search with its own limits; the engine's limits are only defaults
+    public SearchResult search(Position position, int depthLimit, long timeLimitMillis) {
+        return search(position, depthLimit, timeLimitMillis, null);
+    }
+
+    // The engine's own limits, stopping early once cancelled returns true
+    public SearchResult search(Position position, BooleanSupplier cancelled) {
+        return search(position, maxDepth, timeBudgetMillis, cancelled);
+    }
+
+    /**
+     * @param cancelled checked every few thousand nodes; once it returns true
+     *        the search stops as if out of time. May be null
+     */
+    public SearchResult search(Position position, int depthLimit, long timeLimitMillis, BooleanSupplier cancelled) {
+        return search(position, depthLimit, timeLimitMillis, nodeBudget, null, cancelled);
+    }
+
+    @Override
+    public SearchResult search(int[][] board, DifficultyProfile difficulty) {
+        return search(Position.fromBoard(board), difficulty);
+    }
+
+    // A move at the strength of the profile, within its budgets and the engine's
+    public SearchResult search(Position position, DifficultyProfile difficulty) {
+        long safe = position.nonLosingMoves();
+        if (safe != 0 && difficulty.blunders()) {
+            for (int i = ThreadLocalRandom.current().nextInt(Long.bitCount(safe)); i > 0; i--) {
+                safe &= safe - 1;
+            }
+            int col = ThreatAnalyzer.columnOf(safe & -safe);
+            SearchResult result = new SearchResult(col, getName(), SearchResult.BLUNDER);
+            result.pv = new int[] {col};
+            return result;
+        }
+        long timeLimit = timeBudgetMillis > 0 ? Math.min(timeBudgetMillis, difficulty.timeBudgetMillis)
+            : difficulty.timeBudgetMillis;
+        long nodeLimit = nodeBudget > 0 ? Math.min(nodeBudget, difficulty.nodeBudget) : difficulty.nodeBudget;
+        return search(position, maxDepth, timeLimit, nodeLimit, difficulty, null);
+    }
+
+    private SearchResult search(Position position, int depthLimit, long timeLimitMillis, long nodeLimit,
+                                DifficultyProfile difficulty, BooleanSupplier cancelled) {
+        long start = System.nanoTime();
+        if (position.playableMoves() == 0) {
+            return new SearchResult(-1, getName());
+        }
+
+        // Full-strength openings would give a weakened engine away
+        boolean noisy = difficulty != null && difficulty.evalNoise > 0;
+        int bookMove = book == null || noisy ? -1 : book.lookup(position);
+        if (bookMove != -1 && position.canPlay(bookMove)) {
+            SearchResult result = new SearchResult(bookMove, getName(), SearchResult.BOOK);
+            result.pv = new int[] {bookMove};
+            result.elapsedNanos = System.nanoTime() - start;
+            return result;
+        }
+
+        int moves = position.getMoves();
+        long wins = position.winningMoves();
+        if (wins != 0) {
+            int col = ThreatAnalyzer.columnOf(wins);
+            return proven(col, WIN_SCORE - (moves + 1), start);
+        }
+        long candidates = position.nonLosingMoves();
+        if (candidates == 0) {
+            // Every move loses next turn; play any of them
+            int col = ThreatAnalyzer.columnOf(position.playableMoves() & -position.playableMoves());
+            return proven(col, -(WIN_SCORE - (moves + 2)), start);
+        }
+
+        long deadline = timeLimitMillis > 0 ? System.currentTimeMillis() + timeLimitMillis : 0;
+        Searcher searcher = noisy
+            ? new Searcher(deadline, nodeLimit, cancelled, privateTable(nodeLimit), null, difficulty,
+                ThreadLocalRandom.current().nextLong())
+            : new Searcher(deadline, nodeLimit, cancelled);
+        int best = -1;
+        int bestScore = 0;
+        int completed = 0;
+        int[] pv = new int[0];
+        int limit = Math.min(depthLimit, CELLS - moves);
+        for (int depth = 1; depth <= limit; depth++) {
+            int score = searcher.negamax(position, depth, -INFINITY, INFINITY, 0);
+            if (searcher.stopped) {
+                break;
+            }
+            best = searcher.pv[0][0];
+            bestScore = score;
+            completed = depth;
+            pv = Arrays.copyOf(searcher.pv[0], searcher.pvLength[0]);
+            if (Math.abs(score) >= WIN_THRESHOLD) {
+                break;
+            }
+        }
+        if (completed == 0) {
+            // Out of time before depth 1 finished
+            best = firstColumn(candidates);
+            pv = new int[] {best};
+        }
+
+        long elapsed = System.nanoTime() - start;
+        SearchResult result = new SearchResult(best, getName());
+        result.hasScore = completed > 0;
+        result.score = bestScore;
+        result.depth = completed;
+        result.nodes = searcher.nodes;
+        result.ttHits = searcher.ttHits;
+        result.elapsedNanos = elapsed;
+        boolean proven = Math.abs(bestScore) >= WIN_THRESHOLD;
+        result.pv = extendFromTable(searcher.table, position, pv, proven ? CELLS - moves : completed);
+
+        searcher.table.recordProbes(searcher.ttProbes, searcher.ttHits);
+        nodesSearched.add(searcher.nodes);
+        nodesPerSecond.set(result.getNodesPerSecond());
+        depthReached.set(completed);
+        searchTime.record(elapsed / 1000);
+        return result;
+    }
+
+    /**
+     * Scores every column of the position in one iterative-deepening search:
+     * each depth searches every root move with a full window, so all of them
+     * get exact scores, and all of them share the table and the time budget.
+     */
+    public PositionAnalysis analyze(Position position, int depthLimit, long timeLimitMillis) {
+        long start = System.nanoTime();
+        int moves = position.getMoves();
+        PositionAnalysis analysis = new PositionAnalysis(moves);
+        int[] scores = new int[COLS];
+        for (int col = 0; col < COLS; col++) {
+            if (!position.canPlay(col)) {
+                scores[col] = PositionAnalysis.UNPLAYABLE;
+            } else if (position.isWinningMove(col)) {
+                scores[col] = WIN_SCORE - (moves + 1);
+            }
+        }
+        System.arraycopy(scores, 0, analysis.scores, 0, COLS);
+
+        Searcher searcher = new Searcher(timeLimitMillis > 0 ? System.currentTimeMillis() + timeLimitMillis : 0, 0,
+                null);
+        int remaining = CELLS - moves;
+        int limit = Math.min(depthLimit, remaining);
+        for (int depth = 1; depth <= limit; depth++) {
+            boolean open = false;
+            for (int col = 0; col < COLS && !searcher.stopped; col++) {
+                if (analysis.scores[col] == PositionAnalysis.UNPLAYABLE || position.isWinningMove(col)) {
+                    continue;
+                }
+                position.play(col);
+                scores[col] = -searcher.negamax(position, depth - 1, -INFINITY, INFINITY, 1);
+                position.undo(col);
+                open |= Math.abs(scores[col]) < WIN_THRESHOLD;
+            }
+            if (searcher.stopped) {
+                break;
+            }
+            System.arraycopy(scores, 0, analysis.scores, 0, COLS);
+            analysis.depth = depth;
+            if (!open) {
+                break;
+            }
+        }
+        analysis.complete = analysis.depth == remaining;
+        if (!analysis.complete) {
+            // Every column proven is as good as searching to the end
+            analysis.complete = true;
+            for (int score : analysis.scores) {
+                if (score != PositionAnalysis.UNPLAYABLE && Math.abs(score) < WIN_THRESHOLD) {
+                    analysis.complete = false;
+                }
+            }
+        }
+        analysis.nodes = searcher.nodes;
+        analysis.elapsedNanos = System.nanoTime() - start;
+
+        table.recordProbes(searcher.ttProbes, searcher.ttHits);
+        nodesSearched.add(searcher.nodes);
+        return analysis;
+    }
+
+    private SearchResult proven(int col, int score, long start) {
+        SearchResult result = new SearchResult(col, getName());
+        result.hasScore = true;
+        result.score = score;
+        result.depth = 1;
+        result.nodes = 1;
+        result.pv = new int[] {col};
+        result.elapsedNanos = System.nanoTime() - start;
+        return result;
+    }
+
+    /**
+     * Empty table for one noisy search, about one slot for every four nodes it
+     * may search. Each thread keeps one table per size and clears it for the
+     * next search, so weakened moves don't allocate megabytes each.
+     */
+    private static TranspositionTable privateTable(long nodeLimit) {
+        long size = nodeLimit > 0 ? nodeLimit / 4 : MAX_PRIVATE_TABLE;
+        int bits = 64 - Long.numberOfLeadingZeros(Math.max(MIN_PRIVATE_TABLE, Math.min(MAX_PRIVATE_TABLE, size)) - 1);
+        TranspositionTable[] tables = privateTables.get();
+        TranspositionTable table = tables[bits];
+        if (table == null) {
+            table = new TranspositionTable(1 << bits);
+            tables[bits] = table;
+        } else {
+            table.clear();
+        }
+        return table;
+    }
+
+    // The search's PV stops at table cutoffs; follow the table's moves from there
+    private int[] extendFromTable(TranspositionTable table, Position root, int[] pv, int maxLength) {
+        Position position = root.copy();
+        for (int col : pv) {
+            if (!position.canPlay(col) || position.isWinningMove(col)) {
+                return pv;
+            }
+            position.play(col);
+        }
+        int[] line = Arrays.copyOf(pv, Math.max(pv.length, maxLength));
+        int length = pv.length;
+        while (length < line.length) {
+            long wins = position.winningMoves();
+            if (wins != 0) {
+                line[length++] = ThreatAnalyzer.columnOf(wins);
+                break;
+            }
+            int col;
+            if (position.nonLosingMoves() == 0) {
+                // Lost position, not stored in the table: any move will do
+                col = ThreatAnalyzer.columnOf(position.playableMoves() & -position.playableMoves());
+            } else {
+                long entry = table.probe(position.key());
+                col = entry == 0 ? -1 : TranspositionTable.move(entry);
+            }
+            if (col == -1 || !position.canPlay(col)) {
+                break;
+            }
+            line[length++] = col;
+            position.play(col);
+        }
+        return Arrays.copyOf(line, length);
+    }
+
+    /**
+     * Scores a position for the side to move without searching: threats
+     * (empty cells that would complete four), which side the odd/even rule
+     * favours, and pieces in the centre column.
+     */
+    static int evaluate(Position position) {
+        long own = position.getCurrent();
+        long mask = position.getMask();
+        long opponent = own ^ mask;
+
+        int score = THREAT_SCORE * (Long.bitCount(ThreatAnalyzer.winningCells(own, mask))
+            - Long.bitCount(ThreatAnalyzer.winningCells(opponent, mask)));
+
+        boolean ownIsFirst = position.getMoves() % 2 == 0;
+        int zugzwang = ownIsFirst
+            ? ThreatAnalyzer.zugzwangWinner(own, opponent, mask)
+            : ThreatAnalyzer.zugzwangWinner(opponent, own, mask);
+        if (zugzwang != 0) {
+            score += (zugzwang == 1) == ownIsFirst ? ZUGZWANG_SCORE : -ZUGZWANG_SCORE;
+        }
+
+        score += CENTER_SCORE * (Long.bitCount(own & CENTER_MASK) - Long.bitCount(opponent & CENTER_MASK));
+        return score;
+    }
+
+    /**
+     * Human-readable form of a score for a position with movesPlayed pieces:
+     * "win in 3" / "loss in 4" (plies until the last piece of the game) or the
+     * heuristic score itself.
+     */
+    public static String describeScore(int score, int movesPlayed) {
+        if (score >= WIN_THRESHOLD) {
+            return "win in " + (WIN_SCORE - score - movesPlayed);
+        }
+        if (score <= -WIN_THRESHOLD) {
+            return "loss in " + (WIN_SCORE + score - movesPlayed);
+        }
+        return score == 0 ? "even" : (score > 0 ? "+" : "") + score;
+    }
+
+    private static int firstColumn(long moves) {
+        for (int col : COLUMN_ORDER) {
+            if ((moves & ThreatAnalyzer.columnMask(col)) != 0) {
+                return col;
+            }
+        }
+        return -1;
+    }
+
+    // Per-search state, so concurrent searches only share the table
+    private class Searcher {
+        final long deadline;
+        final long nodeLimit;
+        final BooleanSupplier cancelled;
+        // The engine's table and tablebase, except for noisy searches
+        final TranspositionTable table;
+        final EndgameTablebase tablebase;
+        // Leaf noise of a weakened search, or null
+        final DifficultyProfile difficulty;
+        final long salt;
+        long nodes;
+        long ttProbes;
+        long ttHits;
+        boolean stopped;
+        // Triangular principal variation table: pv[ply] is the best line from ply on
+        final int[][] pv = new int[CELLS + 1][CELLS + 1];
+        final int[] pvLength = new int[CELLS + 1];
+        // Move lists per ply, reused across the whole search
+        final long[][] moveBits = new long[CELLS + 1][COLS];
+        final int[][] moveScores = new int[CELLS + 1][COLS];
+
+        Searcher(long deadline, long nodeLimit, BooleanSupplier cancelled) {
+            this(deadline, nodeLimit, cancelled, SearchEngine.this.table, SearchEngine.this.tablebase, null, 0);
+        }
+
+        Searcher(long deadline, long nodeLimit, BooleanSupplier cancelled, TranspositionTable table,
+                 EndgameTablebase tablebase, DifficultyProfile difficulty, long salt) {
+            this.deadline = deadline;
+            this.nodeLimit = nodeLimit;
+            this.cancelled = cancelled;
+            this.table = table;
+            this.tablebase = tablebase;
+            this.difficulty = difficulty;
+            this.salt = salt;
+        }
+
+        int negamax(Position position, int depth, int alpha, int beta, int ply) {
+            nodes++;
+            if (deadline != 0 && (nodes & 4095) == 0 && System.currentTimeMillis() >= deadline) {
+                stopped = true;
+            }
+            if (cancelled != null && (nodes & 4095) == 0 && cancelled.getAsBoolean()) {
+                stopped = true;
+            }
+            if (nodeLimit != 0 && nodes > nodeLimit) {
+                stopped = true;
+            }
+            if (stopped) {
+                return 0;
+            }
+
+            pvLength[ply] = 0;
+            int moves = position.getMoves();
+            long wins = position.winningMoves();
+            if (wins != 0) {
+                pv[ply][0] = ThreatAnalyzer.columnOf(wins);
+                pvLength[ply] = 1;
+                return WIN_SCORE - (moves + 1);
+            }
+            long candidates = position.nonLosingMoves();
+            if (candidates == 0) {
+                return -(WIN_SCORE - (moves + 2));
+            }
+            if (moves >= CELLS - 2) {
+                // Neither side can win with the last two pieces; any safe move is best
+                pv[ply][0] = ThreatAnalyzer.columnOf(candidates);
+                pvLength[ply] = 1;
+                return 0;
+            }
+
+            // We can't win before our next move, nor lose before the opponent's next one.
+            // Not at the root, which must always find a best move for the PV
+            int upper = WIN_SCORE - (moves + 3);
+            if (ply > 0 && beta > upper) {
+                beta = upper;
+                if (alpha >= beta) {
+                    return beta;
+                }
+            }
+            int lower = -(WIN_SCORE - (moves + 4));
+            if (ply > 0 && alpha < lower) {
+                alpha = lower;
+                if (alpha >= beta) {
+                    return alpha;
+                }
+            }
+
+            if (depth == 0) {
+                return difficulty == null ? evaluate(position)
+                    : evaluate(position) + difficulty.noise(position.key(), salt);
+            }
+
+            long key = position.key();
+            ttProbes++;
+            long entry = table.probe(key);
+            int hashMove = -1;
+            if (entry != 0) {
+                ttHits++;
+                hashMove = TranspositionTable.move(entry);
+                // The root always searches, so it knows which move the score belongs to
+                if (ply > 0 && TranspositionTable.depth(entry) >= depth) {
+                    int stored = TranspositionTable.score(entry);
+                    int flag = TranspositionTable.flag(entry);
+                    if (flag == TranspositionTable.EXACT) {
+                        return stored;
+                    } else if (flag == TranspositionTable.LOWER) {
+                        alpha = Math.max(alpha, stored);
+                    } else {
+                        beta = Math.min(beta, stored);
+                    }
+                    if (alpha >= beta) {
+                        return stored;
+                    }
+                }
+            }
+            // Only where the search enters the tablebase's range: every deeper line
+            // passes through there, and a miss means the subtree wasn't solved, so
+            // probing further down would mostly miss too at the cost of a cache miss
+            // per node. After the table, which keeps what the tablebase answered, and
+            // not at the root, which needs a move and not just a result
+            int empty = CELLS - moves;
+            if (tablebase != null && ply > 0 && (empty == tablebase.getEmptyCells()
+                    || ply == 1 && empty < tablebase.getEmptyCells())) {
+                int result = tablebase.probe(position);
+                if (result != EndgameTablebase.UNKNOWN) {
+                    int score = result == EndgameTablebase.WIN ? TABLEBASE_WIN
+                        : result == EndgameTablebase.LOSS ? -TABLEBASE_WIN : 0;
+                    table.store(key, score, CELLS, TranspositionTable.EXACT, hashMove);
+                    return score;
+                }
+            }
+
+            int count = orderMoves(position, candidates, hashMove, ply);
+            long[] bits = moveBits[ply];
+            int alphaStart = alpha;
+            int best = -INFINITY;
+            int bestMove = -1;
+            for (int i = 0; i < count; i++) {
+                long move = bits[i];
+                int col = ThreatAnalyzer.columnOf(move);
+                position.playBit(move);
+                int score = -negamax(position, depth - 1, -beta, -alpha, ply + 1);
+                position.undo(col);
+                if (stopped) {
+                    return 0;
+                }
+                if (score > best) {
+                    best = score;
+                    bestMove = col;
+                    if (score > alpha) {
+                        alpha = score;
+                        pv[ply][0] = col;
+                        System.arraycopy(pv[ply + 1], 0, pv[ply], 1, pvLength[ply + 1]);
+                        pvLength[ply] = pvLength[ply + 1] + 1;
+                        if (alpha >= beta) {
+                            break;
+                        }
+                    }
+                }
+            }
+
+            int flag = best <= alphaStart ? TranspositionTable.UPPER
+                : best >= beta ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+            table.store(key, best, depth, flag, bestMove);
+            return best;
+        }
+
+        // Fills moveBits[ply]: the table's move first, then moves that make the most threats
+        private int orderMoves(Position position, long candidates, int hashMove, int ply) {
+            long[] bits = moveBits[ply];
+            int[] scores = moveScores[ply];
+            long own = position.getCurrent();
+            long mask = position.getMask();
+            int count = 0;
+            for (int col : COLUMN_ORDER) {
+                long move = candidates & ThreatAnalyzer.columnMask(col);
+                if (move == 0) {
+                    continue;
+                }
+                int score = col == hashMove
+                    ? Integer.MAX_VALUE
+                    : Long.bitCount(ThreatAnalyzer.winningCells(own | move, mask | move));
+                // Insertion sort, stable so equal scores keep the centre-first order
+                int i = count++;
+                while (i > 0 && scores[i - 1] < score) {
+                    bits[i] = bits[i - 1];
+                    scores[i] = scores[i - 1];
+                    i--;
+                }
+                bits[i] = move;
+                scores[i] = score;
+            }
+            return count;
+        }
+    }
+}
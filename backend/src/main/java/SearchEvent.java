@@ -0,0 +1,43 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for one AI move decision; the event duration is the time the
+ * engine took.
+ */
+@Name("connect4.Search")
+@Label("AI Search")
+@Category("Connect 4")
+@Description("An AI engine choosing a move")
+@StackTrace(false)
+public class SearchEvent extends Event {
+    @Label("Engine")
+    public String engine;
+
+    @Label("Column")
+    @Description("Chosen column, or -1")
+    public int column;
+
+    @Label("Depth")
+    @Description("Deepest ply reached")
+    public int depth;
+
+    @Label("Nodes")
+    public long nodes;
+
+    @Label("TT Hits")
+    @Description("Transposition table hits")
+    public long ttHits;
+
+    @Label("Cached")
+    @Description("Answered from the result cache without searching")
+    public boolean cached;
+
+    @Label("Position Key")
+    @Description("Unique key of the position searched")
+    public long positionKey;
+}
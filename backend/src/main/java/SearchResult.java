@@ -0,0 +1,66 @@
+/**
+ * A move chosen by an engine, with whatever statistics the engine keeps
+ * about the search behind it. Engines that don't search leave them at 0.
+ */
+public class SearchResult {
+    public static final String SEARCH = "search";
+    public static final String BOOK = "book";
+    public static final String CACHE = "cache";
+    public static final String PONDER = "ponder";
+    // A deliberate mistake of a weakened profile, not searched
+    public static final String BLUNDER = "blunder";
+
+    public final int move;
+    public final String engine;
+    // Where the move came from: SEARCH, BOOK, CACHE or PONDER
+    public String source = SEARCH;
+    // Score for the side to move, when the engine computes one
+    public boolean hasScore;
+    public int score;
+    // Principal variation starting with move; 0-based columns
+    public int[] pv = new int[0];
+    public int depth;
+    public long nodes;
+    public long ttHits;
+    public long elapsedNanos;
+
+    public SearchResult(int move, String engine) {
+        this.move = move;
+        this.engine = engine;
+    }
+
+    public SearchResult(int move, String engine, String source) {
+        this(move, engine);
+        this.source = source;
+    }
+
+    public long getNodesPerSecond() {
+        return elapsedNanos == 0 ? 0 : nodes * 1_000_000_000L / elapsedNanos;
+    }
+
+    /**
+     * The analysis block returned by /ai-move?analysis=1, one key=value per
+     * line. Scores from SearchEngine also get an outcome line ("win in 5").
+     */
+    public String toAnalysis(int movesPlayed) {
+        StringBuilder out = new StringBuilder(160);
+        out.append("move=").append(move).append('\n');
+        out.append("engine=").append(engine).append('\n');
+        out.append("source=").append(source).append('\n');
+        if (hasScore) {
+            out.append("score=").append(score).append('\n');
+            out.append("outcome=").append(SearchEngine.describeScore(score, movesPlayed)).append('\n');
+        }
+        out.append("pv=");
+        for (int i = 0; i < pv.length; i++) {
+            out.append(i == 0 ? "" : " ").append(pv[i]);
+        }
+        out.append('\n');
+        out.append("depth=").append(depth).append('\n');
+        out.append("nodes=").append(nodes).append('\n');
+        out.append("ttHits=").append(ttHits).append('\n');
+        out.append("timeMs=").append(elapsedNanos / 1000 / 1000.0).append('\n');
+        out.append("nps=").append(getNodesPerSecond()).append('\n');
+        return out.toString();
+    }
+}
@@ -0,0 +1,28 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event for a game session being created or dropped.
+ */
+@Name("connect4.Session")
+@Label("Session")
+@Category("Connect 4")
+@Description("A game session created or evicted")
+@StackTrace(false)
+public class SessionEvent extends Event {
+    @Label("Game ID")
+    public String gameId;
+
+    @Label("Action")
+    @Description("created or evicted")
+    public String action;
+
+    @Label("Idle Time")
+    @Timespan(Timespan.MILLISECONDS)
+    public long idleMillis;
+}
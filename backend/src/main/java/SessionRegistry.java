@@ -0,0 +1,274 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Live games by game ID.
+ *
+ * Requests pick their game with a {@code game} query parameter; clients that
+ * don't send one (like the current frontend) all share the "default" game.
+ * Every game uses the same AI engine and reply cache. Games that have not
+ * been touched for a while are dropped by a background sweep.
+ *
+ * With a journal, every move, reset and eviction is recorded as it happens,
+ * the games are snapshotted every few minutes, and the registry starts with
+ * every game that was live when the server last stopped or crashed.
+ *
+ * A game can be replaced by one on another board size (see BoardGeometry)
+ * when variant engines are set. Only standard games are journaled, so a
+ * variant game doesn't survive a restart.
+ */
+public class SessionRegistry {
+    public static final String DEFAULT_ID = "default";
+    private static final long IDLE_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final MoveEngine engine;
+    private final ResultCache cache;
+    private final ScheduledExecutorService sweeper;
+    private final GameJournal journal;
+    // Engine for each board variant, or null when variants are off
+    private volatile Function<BoardGeometry, MoveEngine> variantEngines;
+
+    private static class Session {
+        final Game game;
+        volatile long lastAccess;
+        // Resets so far, so replayed records can tell which game they belong to; guarded by game
+        int generation;
+
+        Session(Game game) {
+            this.game = game;
+            this.lastAccess = System.currentTimeMillis();
+        }
+    }
+
+    public SessionRegistry(MoveEngine engine, ResultCache cache) {
+        this.engine = engine;
+        this.cache = cache;
+        this.journal = null;
+        this.sweeper = startSweeper();
+    }
+
+    /**
+     * Registry whose games are journaled to journalDir, starting with the
+     * games recovered from it.
+     */
+    public SessionRegistry(MoveEngine engine, ResultCache cache, Path journalDir, long segmentBytes,
+                           long snapshotSeconds) throws IOException {
+        this.engine = engine;
+        this.cache = cache;
+        this.journal = new GameJournal(journalDir, segmentBytes, new Recovery());
+        Log.info("Recovered {} games from the journal", sessions.size());
+        this.sweeper = startSweeper();
+        sweeper.scheduleAtFixedRate(this::snapshotIfChanged, snapshotSeconds, snapshotSeconds, TimeUnit.SECONDS);
+    }
+
+    private ScheduledExecutorService startSweeper() {
+        ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "session-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        sweeper.scheduleAtFixedRate(this::evictIdle, 1, 1, TimeUnit.MINUTES);
+        Metrics.gauge("connect4_active_sessions", "Games currently held in memory", "", () -> sessions.size());
+        return sweeper;
+    }
+
+    public Game get(String id) {
+        Session session = sessions.computeIfAbsent(id, k -> {
+            SessionEvent event = new SessionEvent();
+            if (event.shouldCommit()) {
+                event.gameId = k;
+                event.action = "created";
+                event.commit();
+            }
+            return new Session(new Game(engine, cache));
+        });
+        session.lastAccess = System.currentTimeMillis();
+        return session.game;
+    }
+
+    // Lets games be replaced by variants; the function may share one engine per geometry
+    public void setVariantEngines(Function<BoardGeometry, MoveEngine> variantEngines) {
+        this.variantEngines = variantEngines;
+    }
+
+    /**
+     * Replaces the game with a new one on this board; the standard board
+     * gets the shared engine and cache again. Journaled like a reset, or as
+     * a dropped game when the new one is a variant, and returns once that
+     * record is on disk. Call without holding any game's lock.
+     */
+    public Game replace(String id, BoardGeometry geometry) throws IOException {
+        Game game;
+        if (geometry.isStandard()) {
+            game = new Game(engine, cache);
+        } else {
+            Function<BoardGeometry, MoveEngine> engines = variantEngines;
+            if (engines == null) {
+                throw new IllegalArgumentException("Board variants are not enabled");
+            }
+            game = new Game(geometry, engines.apply(geometry), null);
+        }
+        Session session = new Session(game);
+        long[] record = new long[1];
+        // The generation is set and the record appended before the new game is
+        // published, so none of its moves can be journaled ahead of them
+        sessions.compute(id, (k, old) -> {
+            if (old != null) {
+                synchronized (old.game) {
+                    old.game.setPondering(null);
+                    session.generation = old.generation + 1;
+                    game.setDifficulty(old.game.getDifficulty(), old.game.getTargetWinRate());
+                }
+            }
+            if (journal != null) {
+                record[0] = journal.append(geometry.isStandard() ? GameJournal.RESET : GameJournal.DROP, id,
+                        session.generation, 0, 0);
+            }
+            return session;
+        });
+        awaitDurable(record[0]);
+        return game;
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Journals a move just made in this game; call while holding the game's
+     * lock so records are in the order the moves were made. Returns the
+     * sequence number for {@link #awaitDurable}, or 0 without a journal.
+     */
+    public long recordMove(String id, Game game, int col) {
+        Session session = sessions.get(id);
+        // A game replaced since the caller looked it up is no longer journaled
+        if (journal == null || session == null || session.game != game || !game.getGeometry().isStandard()) {
+            return 0;
+        }
+        return journal.append(GameJournal.MOVE, id, session.generation, game.getMoveCount() - 1, col);
+    }
+
+    // Journals a reset of this game, under the game's lock like recordMove
+    public long recordReset(String id, Game game) {
+        Session session = sessions.get(id);
+        if (journal == null || session == null || session.game != game || !game.getGeometry().isStandard()) {
+            return 0;
+        }
+        session.generation++;
+        return journal.append(GameJournal.RESET, id, session.generation, 0, 0);
+    }
+
+    // Waits for a recorded move or reset to reach the disk; call without holding the game's lock
+    public void awaitDurable(long sequence) throws IOException {
+        if (journal != null && sequence > 0) {
+            journal.awaitDurable(sequence);
+        }
+    }
+
+    public void close() {
+        sweeper.shutdownNow();
+        if (journal != null) {
+            try {
+                // A final snapshot makes the next startup replay almost nothing
+                journal.snapshot(this::states);
+                journal.close();
+            } catch (IOException e) {
+                Log.error("Failed to close the game journal", e);
+            }
+        }
+        engine.close();
+    }
+
+    private void snapshotIfChanged() {
+        if (journal.getRecordsSinceSnapshot() == 0) {
+            return;
+        }
+        try {
+            journal.snapshot(this::states);
+        } catch (IOException e) {
+            Log.error("Journal snapshot failed", e);
+        }
+    }
+
+    private List<GameJournal.GameState> states() {
+        List<GameJournal.GameState> states = new ArrayList<>(sessions.size());
+        for (Map.Entry<String, Session> entry : sessions.entrySet()) {
+            Session session = entry.getValue();
+            if (!session.game.getGeometry().isStandard()) {
+                continue;
+            }
+            synchronized (session.game) {
+                states.add(new GameJournal.GameState(entry.getKey(), session.generation,
+                        session.game.getMoveString()));
+            }
+        }
+        return states;
+    }
+
+    // Rebuilds the games from the journal; replaying a record twice is harmless
+    private class Recovery implements GameJournal.Replay {
+        @Override
+        public void game(String id, int generation, String moves) {
+            Session session = new Session(new Game(engine, cache));
+            session.generation = generation;
+            for (int i = 0; i < moves.length(); i++) {
+                session.game.place(moves.charAt(i) - '1');
+            }
+            sessions.put(id, session);
+        }
+
+        @Override
+        public void record(byte type, String id, int generation, int ply, int column) {
+            if (type == GameJournal.DROP) {
+                sessions.remove(id);
+                return;
+            }
+            Session session = sessions.computeIfAbsent(id, k -> new Session(new Game(engine, cache)));
+            if (generation < session.generation) {
+                return;
+            }
+            if (generation > session.generation) {
+                session.game.reset();
+                session.generation = generation;
+            }
+            if (type == GameJournal.MOVE) {
+                int moves = session.game.getMoveCount();
+                if (ply == moves) {
+                    session.game.place(column);
+                } else if (ply > moves) {
+                    Log.warn("Journal is missing moves of game {} before move {}", id, ply + 1);
+                }
+            }
+        }
+    }
+
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        sessions.entrySet().removeIf(e -> {
+            long idle = now - e.getValue().lastAccess;
+            if (e.getKey().equals(DEFAULT_ID) || idle < IDLE_MILLIS) {
+                return false;
+            }
+            SessionEvent event = new SessionEvent();
+            if (event.shouldCommit()) {
+                event.gameId = e.getKey();
+                event.action = "evicted";
+                event.idleMillis = idle;
+                event.commit();
+            }
+            if (journal != null) {
+                journal.append(GameJournal.DROP, e.getKey(), 0, 0, 0);
+            }
+            return true;
+        });
+    }
+}
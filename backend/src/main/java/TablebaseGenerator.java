@@ -0,0 +1,303 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Builds an EndgameTablebase by solving endgames exhaustively.
+ *
+ * Every position with N empty cells can't be covered: there are hundreds of
+ * billions of them even for small N. Instead the generator plays games to
+ * the point where N cells are left, with the alpha-beta engine on a small
+ * node budget and some random moves. It then solves each of those roots
+ * completely, storing the win/draw/loss result of every position in its
+ * subtree. The covered positions are the endgames real play leads to, and
+ * each root's whole subtree is exact. With --history, the games recorded by
+ * the server (see GameHistory) supply roots first, so the endgames its
+ * players actually reach are covered before any self-play ones.
+ *
+ * Solved results are shared between threads in one lock-free table of
+ * --max-positions entries. When it is three quarters full, no new roots are
+ * started.
+ *
+ * Usage: java TablebaseGenerator --output endgame.tb [--empty 12]
+ *        [--roots 100000] [--history data/history] [--threads N]
+ *        [--max-positions 33554432] [--seed 1]
+ */
+public class TablebaseGenerator {
+    private static final int CELLS = Position.CELLS;
+    private static final int[] COLUMN_ORDER = {3, 2, 4, 1, 5, 0, 6};
+
+    private final int emptyCells;
+    private final Results results;
+    private final AtomicLong solvedRoots = new AtomicLong();
+
+    public TablebaseGenerator(int emptyCells, int maxPositions) {
+        this.emptyCells = emptyCells;
+        this.results = new Results(maxPositions);
+    }
+
+    /**
+     * Solves the given roots, then self-play roots until roots in all have
+     * been solved or the result table is full.
+     */
+    public void run(List<Position> given, int roots, int threads, long seed) throws InterruptedException {
+        ConcurrentLinkedQueue<Position> queue = new ConcurrentLinkedQueue<>(given);
+        AtomicInteger started = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        for (int i = 0; i < threads; i++) {
+            Random random = new Random(seed * 1_000_003 + i);
+            pool.execute(() -> {
+                SearchEngine player = new SearchEngine(CELLS, 0, 500, new TranspositionTable(1 << 16), null);
+                while (started.getAndIncrement() < roots && !results.isFull()) {
+                    Position root = queue.poll();
+                    if (root == null) {
+                        root = playToEndgame(player, random);
+                    }
+                    if (root != null) {
+                        solve(root);
+                    }
+                    solvedRoots.incrementAndGet();
+                }
+            });
+        }
+        pool.shutdown();
+        while (!pool.awaitTermination(5, TimeUnit.SECONDS)) {
+            System.err.printf("%d/%d roots, %d positions, %.0fs%n", solvedRoots.get(), roots, results.size(),
+                    (System.nanoTime() - start) / 1e9);
+        }
+        if (results.isFull()) {
+            System.err.println("Result table is full; raise --max-positions to cover more roots");
+        }
+        System.err.printf("%d roots solved, %d positions in %.1fs%n", solvedRoots.get(), results.size(),
+                (System.nanoTime() - start) / 1e9);
+    }
+
+    // A game played until emptyCells are left, or null if it ended sooner
+    private Position playToEndgame(SearchEngine player, Random random) {
+        Position position = new Position();
+        while (CELLS - position.getMoves() > emptyCells) {
+            if (position.winningMoves() != 0) {
+                return null;
+            }
+            long safe = position.nonLosingMoves();
+            if (safe == 0) {
+                return null;
+            }
+            int col;
+            if (position.getMoves() < 4 || random.nextDouble() < 0.2) {
+                for (int i = random.nextInt(Long.bitCount(safe)); i > 0; i--) {
+                    safe &= safe - 1;
+                }
+                col = ThreatAnalyzer.columnOf(safe & -safe);
+            } else {
+                col = player.search(position).move;
+            }
+            position.play(col);
+        }
+        return position;
+    }
+
+    /**
+     * Exact result for the side to move. Positions the search settles on
+     * its own (an immediate win, every move losing, two empty cells or
+     * fewer) are solved but not stored.
+     */
+    private int solve(Position position) {
+        if (position.winningMoves() != 0) {
+            return EndgameTablebase.WIN;
+        }
+        long safe = position.nonLosingMoves();
+        if (safe == 0) {
+            return EndgameTablebase.LOSS;
+        }
+        if (position.getMoves() >= CELLS - 2) {
+            return EndgameTablebase.DRAW;
+        }
+        long key = position.canonicalKey();
+        int known = results.get(key);
+        if (known != EndgameTablebase.UNKNOWN) {
+            return known;
+        }
+
+        int best = EndgameTablebase.LOSS;
+        for (int col : COLUMN_ORDER) {
+            long move = safe & ThreatAnalyzer.columnMask(col);
+            if (move == 0) {
+                continue;
+            }
+            position.playBit(move);
+            int result = EndgameTablebase.WIN - solve(position);
+            position.undo(col);
+            if (result > best) {
+                best = result;
+                if (best == EndgameTablebase.WIN) {
+                    break;
+                }
+            }
+        }
+        results.put(key, best);
+        return best;
+    }
+
+    // Positions with emptyCells left from each recorded game that went on past them
+    public List<Position> historyRoots(String dir) throws IOException {
+        List<Position> roots = new ArrayList<>();
+        int plies = CELLS - emptyCells;
+        GameHistory history = new GameHistory(Paths.get(dir), 1 << 20);
+        try {
+            history.forEach(-1, Long.MIN_VALUE, Long.MAX_VALUE, game -> {
+                if (game.getMoveCount() > plies) {
+                    roots.add(Position.fromMoves(game.getMoveString().substring(0, plies)));
+                }
+                return true;
+            });
+        } finally {
+            history.close();
+        }
+        return roots;
+    }
+
+    public void write(String path) throws IOException {
+        long[] entries = results.entries();
+        EndgameTablebase.write(Paths.get(path), emptyCells, entries, entries.length);
+    }
+
+    /**
+     * Lock-free map from canonical key to result: each slot holds
+     * (key + 1) << 2 | result, so 0 means empty.
+     */
+    private static class Results {
+        private final AtomicLongArray slots;
+        private final int mask;
+        private final int limit;
+        private final AtomicInteger size = new AtomicInteger();
+
+        Results(int maxPositions) {
+            int capacity = Integer.highestOneBit(Math.max(16, maxPositions - 1)) << 1;
+            slots = new AtomicLongArray(capacity);
+            mask = capacity - 1;
+            limit = capacity / 4 * 3;
+        }
+
+        int get(long key) {
+            long stored = key + 1;
+            for (int i = index(stored); ; i = (i + 1) & mask) {
+                long slot = slots.get(i);
+                if (slot == 0) {
+                    return EndgameTablebase.UNKNOWN;
+                }
+                if (slot >>> 2 == stored) {
+                    return (int) (slot & 3);
+                }
+            }
+        }
+
+        // Dropped once the table is full; two threads solving the same position store the same result
+        void put(long key, int result) {
+            if (isFull()) {
+                return;
+            }
+            long stored = key + 1;
+            for (int i = index(stored); ; i = (i + 1) & mask) {
+                long slot = slots.get(i);
+                if (slot == 0) {
+                    if (slots.compareAndSet(i, 0, stored << 2 | result)) {
+                        size.incrementAndGet();
+                        return;
+                    }
+                    i = (i - 1) & mask;
+                } else if (slot >>> 2 == stored) {
+                    return;
+                }
+            }
+        }
+
+        boolean isFull() {
+            return size.get() >= limit;
+        }
+
+        int size() {
+            return size.get();
+        }
+
+        // key << 2 | result for every stored position
+        long[] entries() {
+            long[] entries = new long[size.get()];
+            int n = 0;
+            for (int i = 0; i < slots.length() && n < entries.length; i++) {
+                long slot = slots.get(i);
+                if (slot != 0) {
+                    entries[n++] = ((slot >>> 2) - 1) << 2 | (slot & 3);
+                }
+            }
+            return entries;
+        }
+
+        private int index(long stored) {
+            return (int) ((stored * 0x9E3779B97F4A7C15L) >>> 34) & mask;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String output = null;
+        int emptyCells = 12;
+        int roots = 100_000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int maxPositions = 1 << 25;
+        long seed = 1;
+        String historyDir = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--output":
+                    output = args[++i];
+                    break;
+                case "--empty":
+                    emptyCells = Integer.parseInt(args[++i]);
+                    break;
+                case "--roots":
+                    roots = Integer.parseInt(args[++i]);
+                    break;
+                case "--history":
+                    historyDir = args[++i];
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--max-positions":
+                    maxPositions = Integer.parseInt(args[++i]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(2);
+            }
+        }
+        if (output == null || emptyCells < 3 || emptyCells > 24 || maxPositions <= 0) {
+            System.err.println("Usage: java TablebaseGenerator --output endgame.tb [--empty 12] [--roots 100000]"
+                + " [--history data/history] [--threads N] [--max-positions N] [--seed 1]");
+            System.exit(2);
+        }
+
+        TablebaseGenerator generator = new TablebaseGenerator(emptyCells, maxPositions);
+        List<Position> given = new ArrayList<>();
+        if (historyDir != null) {
+            given = generator.historyRoots(historyDir);
+            System.err.println(given.size() + " roots from recorded games");
+        }
+        generator.run(given, Math.max(roots, given.size()), Math.max(1, threads), seed);
+        generator.write(output);
+        System.err.println("Wrote " + output);
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ * Bitboard threat analysis for all four directions.
+ *
+ * Works on the WinLines bitboard layout (one column of HEIGHT bits per board
+ * column, bottom row first). A "threat" is an empty cell that would complete
+ * four for a player. Threats on odd rows (counting 1 from the bottom) belong
+ * to the first player's zugzwang, threats on even rows to the second player's,
+ * which is what decides most positions once the board fills up.
+ */
+public class ThreatAnalyzer {
+    private static final int ROWS = WinLines.ROWS;
+    private static final int COLS = WinLines.COLS;
+    private static final int HEIGHT = WinLines.HEIGHT;
+
+    static final long BOTTOM_MASK;
+    static final long BOARD_MASK;
+    // Rows 1, 3, 5 counted from the bottom
+    static final long ODD_ROWS;
+
+    static {
+        long bottom = 0;
+        long odd = 0;
+        for (int col = 0; col < COLS; col++) {
+            bottom |= 1L << (col * HEIGHT);
+            for (int h = 0; h < ROWS; h += 2) {
+                odd |= 1L << (col * HEIGHT + h);
+            }
+        }
+        BOTTOM_MASK = bottom;
+        BOARD_MASK = bottom * ((1L << ROWS) - 1);
+        ODD_ROWS = odd;
+    }
+
+    /** Summary of one player's threats in a position. */
+    public static class Report {
+        public long threats;
+        public long immediate;
+        public int oddThreats;
+        public int evenThreats;
+        public boolean doubleThreat;
+    }
+
+    // Empty cells where `own` would complete four in any direction
+    public static long winningCells(long own, long mask) {
+        // Vertical
+        long r = (own << 1) & (own << 2) & (own << 3);
+
+        // Horizontal and both diagonals
+        for (int shift = HEIGHT - 1; shift <= HEIGHT + 1; shift++) {
+            long p = (own << shift) & (own << 2 * shift);
+            r |= p & (own << 3 * shift);
+            r |= p & (own >>> shift);
+            p = (own >>> shift) & (own >>> 2 * shift);
+            r |= p & (own << shift);
+            r |= p & (own >>> 3 * shift);
+        }
+
+        return r & (BOARD_MASK ^ mask);
+    }
+
+    // Lowest empty cell of every non-full column
+    public static long playable(long mask) {
+        return (mask + BOTTOM_MASK) & BOARD_MASK;
+    }
+
+    public static long columnMask(int col) {
+        return ((1L << ROWS) - 1) << (col * HEIGHT);
+    }
+
+    public static int columnOf(long cellBit) {
+        return Long.numberOfTrailingZeros(cellBit) / HEIGHT;
+    }
+
+    public static Report analyze(long own, long mask) {
+        Report report = new Report();
+        report.threats = winningCells(own, mask);
+        report.immediate = report.threats & playable(mask);
+        report.oddThreats = Long.bitCount(report.threats & ODD_ROWS);
+        report.evenThreats = Long.bitCount(report.threats & ~ODD_ROWS);
+        // Two playable wins, or two threats stacked in one column, cannot both be stopped
+        report.doubleThreat = Long.bitCount(report.immediate) >= 2
+                || (report.immediate & (report.threats >>> 1)) != 0;
+        return report;
+    }
+
+    /**
+     * Which player the odd/even threat rules favour once the board fills up:
+     * the first player wins with an odd threat the second player cannot
+     * undercut in that column, otherwise the second player wins with an even
+     * threat. Returns 1, 2, or 0 when neither side has a usable threat.
+     */
+    public static int zugzwangWinner(long first, long second, long mask) {
+        long firstThreats = winningCells(first, mask);
+        long secondThreats = winningCells(second, mask);
+
+        long oddThreats = firstThreats & ODD_ROWS;
+        while (oddThreats != 0) {
+            long threat = oddThreats & -oddThreats;
+            oddThreats ^= threat;
+            long below = (threat - 1) & columnMask(columnOf(threat));
+            if ((secondThreats & below) == 0) {
+                return 1;
+            }
+        }
+
+        if ((secondThreats & ~ODD_ROWS) != 0) {
+            return 2;
+        }
+        return 0;
+    }
+
+    /**
+     * Playable cells for the side to move that do not hand the opponent an
+     * immediate win. Returns 0 when every move loses.
+     */
+    public static long nonLosingMoves(long own, long opponent, long mask) {
+        long possible = playable(mask);
+        long opponentWins = winningCells(opponent, mask);
+        long forced = possible & opponentWins;
+        if (forced != 0) {
+            if ((forced & (forced - 1)) != 0) {
+                return 0;
+            }
+            possible = forced;
+        }
+        // Never play directly under an opponent threat
+        return possible & ~(opponentWins >>> 1);
+    }
+
+    /**
+     * Looks for a win made only of forcing moves: every move either wins or
+     * leaves exactly one threat the opponent must block (or two, which ends
+     * it). Returns the first column of such a sequence, or -1.
+     */
+    public static int forcedWin(long own, long opponent, long mask, int maxMoves) {
+        long wins = winningCells(own, mask) & playable(mask);
+        if (wins != 0) {
+            return columnOf(wins);
+        }
+        if (maxMoves <= 0 || (winningCells(opponent, mask) & playable(mask)) != 0) {
+            return -1;
+        }
+
+        long moves = nonLosingMoves(own, opponent, mask);
+        while (moves != 0) {
+            long move = moves & -moves;
+            moves ^= move;
+
+            long nextOwn = own | move;
+            long nextMask = mask | move;
+            long threats = winningCells(nextOwn, nextMask) & playable(nextMask);
+            if (threats == 0) {
+                continue;
+            }
+            if ((threats & (threats - 1)) != 0) {
+                return columnOf(move);
+            }
+
+            // Single threat: the opponent has to block it
+            long afterBlock = nextMask | threats;
+            long opponentAfter = opponent | threats;
+            if ((winningCells(opponentAfter, afterBlock) & playable(afterBlock)) != 0
+                    && (winningCells(nextOwn, afterBlock) & playable(afterBlock)) == 0) {
+                continue;
+            }
+            if (forcedWin(nextOwn, opponentAfter, afterBlock, maxMoves - 1) != -1) {
+                return columnOf(move);
+            }
+        }
+        return -1;
+    }
+}
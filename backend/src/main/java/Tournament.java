@@ -0,0 +1,458 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Engine-vs-engine match for comparing engines and catching regressions.
+ *
+ * Games start from random short openings, and each opening is played twice
+ * with colours swapped, so neither engine profits from a lucky opening or
+ * from moving first. Games run in parallel, each thread with its own engine
+ * instances. The report gives A's wins, draws and losses, the Elo difference
+ * with a 95% interval, and per-move latency for both engines.
+ *
+ * Engines are given as name[:key=value,...]:
+ *   random                                   uniformly random legal move
+ *   minimax[:depth=4,tb=endgame.tb]          the original fixed-depth minimax
+ *   alphabeta[:depth=42,time-ms=100,nodes=0,tt-size=262144,book=1,tb=endgame.tb]
+ *   mcts[:playouts=2000,time-ms=0]
+ *   smart                                    ChatGPTAI's rule-based fallback (needs
+ *                                            the ChatGPTAI class on the classpath)
+ *
+ * As a regression gate, --min-elo fails the run (exit code 1) when the whole
+ * 95% interval lies below the given Elo, and --max-p99-ms when A's 99th
+ * percentile move time is above the given limit.
+ *
+ * Usage: java Tournament --a alphabeta:nodes=20000 --b minimax [--games 1000]
+ *        [--threads N] [--opening-plies 4] [--seed 1] [--min-elo -20] [--max-p99-ms 50]
+ */
+public class Tournament {
+    private static final int CELLS = Position.CELLS;
+
+    private final Entrant a;
+    private final Entrant b;
+    private final int openingPlies;
+
+    // Results from A's point of view
+    private final AtomicInteger wins = new AtomicInteger();
+    private final AtomicInteger draws = new AtomicInteger();
+    private final AtomicInteger losses = new AtomicInteger();
+    private final AtomicInteger winsAsFirst = new AtomicInteger();
+    private final AtomicInteger lossesAsFirst = new AtomicInteger();
+    private final AtomicInteger played = new AtomicInteger();
+
+    public Tournament(String specA, String specB, int openingPlies) {
+        this.a = new Entrant(specA);
+        this.b = new Entrant(specB);
+        this.openingPlies = openingPlies;
+    }
+
+    public void run(int games, int threads, long seed) throws InterruptedException {
+        List<String> openings = openings((games + 1) / 2, new Random(seed));
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        for (String opening : openings) {
+            pool.execute(() -> {
+                play(opening, a, b);
+                play(opening, b, a);
+            });
+        }
+        pool.shutdown();
+        while (!pool.awaitTermination(5, TimeUnit.SECONDS)) {
+            System.err.printf("%d/%d games, A %s%n", played.get(), openings.size() * 2, record());
+        }
+        long elapsed = System.nanoTime() - start;
+        a.close();
+        b.close();
+        System.err.printf("%d games in %.1fs%n", played.get(), elapsed / 1e9);
+    }
+
+    // Plays one game; first moves first after the opening's moves
+    private void play(String opening, Entrant first, Entrant second) {
+        Game game = new Game(null, null);
+        for (int i = 0; i < opening.length(); i++) {
+            game.place(opening.charAt(i) - '1');
+        }
+        MoveEngine firstEngine = first.engine();
+        MoveEngine secondEngine = second.engine();
+        int winner = 0;
+        while (!game.isGameOver() && game.getMoveCount() < CELLS) {
+            boolean firstToMove = game.getMoveCount() % 2 == 0;
+            Entrant mover = firstToMove ? first : second;
+            long moveStart = System.nanoTime();
+            int col = (firstToMove ? firstEngine : secondEngine).getMove(game.getBoard());
+            mover.latency.record((System.nanoTime() - moveStart) / 1000);
+            if (!game.place(col)) {
+                // An illegal move forfeits the game
+                mover.illegalMoves.incrementAndGet();
+                winner = firstToMove ? 2 : 1;
+                break;
+            }
+        }
+        if (game.isGameOver()) {
+            winner = game.getWinner();
+        }
+
+        boolean aFirst = first == a;
+        if (winner == 0) {
+            draws.incrementAndGet();
+        } else if ((winner == 1) == aFirst) {
+            wins.incrementAndGet();
+            if (aFirst) {
+                winsAsFirst.incrementAndGet();
+            }
+        } else {
+            losses.incrementAndGet();
+            if (aFirst) {
+                lossesAsFirst.incrementAndGet();
+            }
+        }
+        played.incrementAndGet();
+    }
+
+    /**
+     * Distinct random openings of openingPlies moves as 1-based move strings.
+     * Openings where the side to move can already win are skipped, and once
+     * the distinct openings run out the rest are repeats.
+     */
+    private List<String> openings(int count, Random random) {
+        List<String> openings = new ArrayList<>(count);
+        Set<Long> seen = new HashSet<>();
+        int attempts = 0;
+        while (openings.size() < count) {
+            Position position = new Position();
+            StringBuilder moves = new StringBuilder(openingPlies);
+            for (int ply = 0; ply < openingPlies; ply++) {
+                int col;
+                do {
+                    col = random.nextInt(Position.COLS);
+                } while (!position.canPlay(col) || position.isWinningMove(col));
+                position.play(col);
+                moves.append((char) ('1' + col));
+            }
+            attempts++;
+            if (position.winningMoves() != 0 || (!seen.add(position.key()) && attempts < count * 20)) {
+                continue;
+            }
+            openings.add(moves.toString());
+        }
+        return openings;
+    }
+
+    private String record() {
+        return "+" + wins.get() + " =" + draws.get() + " -" + losses.get();
+    }
+
+    /**
+     * Prints the report and returns the Elo difference and its 95% margin.
+     * The margin comes from the spread of the per-game scores (1, 1/2, 0)
+     * and is converted to Elo at both ends of the score interval.
+     */
+    public double[] report() {
+        int n = played.get();
+        double score = (wins.get() + draws.get() / 2.0) / n;
+        double variance = (wins.get() + draws.get() / 4.0) / n - score * score;
+        double margin = 1.96 * Math.sqrt(variance / n);
+        double elo = elo(score);
+        double low = elo(score - margin);
+        double high = elo(score + margin);
+
+        System.out.println(a.spec + " vs " + b.spec);
+        System.out.printf("Games: %d from %d-ply openings, colours swapped%n", n, openingPlies);
+        System.out.printf("Result for A: %s (as first player +%d -%d, as second +%d -%d)%n", record(),
+                winsAsFirst.get(), lossesAsFirst.get(), wins.get() - winsAsFirst.get(),
+                losses.get() - lossesAsFirst.get());
+        System.out.printf("Score: %.1f%% +/- %.1f%%%n", score * 100, margin * 100);
+        System.out.printf("Elo difference: %+.0f (95%%: %+.0f to %+.0f)%n", elo, low, high);
+        if (a.illegalMoves.get() + b.illegalMoves.get() > 0) {
+            System.out.printf("Illegal moves: A %d, B %d%n", a.illegalMoves.get(), b.illegalMoves.get());
+        }
+        System.out.println("Move time (ms)       moves     mean      p50      p90      p99      max");
+        a.printLatency("A " + a.name);
+        b.printLatency("B " + b.name);
+        return new double[] {elo, low, high};
+    }
+
+    // Elo difference for a score fraction, capped at +/-1000 for sweeps
+    private static double elo(double score) {
+        double clamped = Math.min(Math.max(score, 0.0032), 0.9968);
+        return -400 * Math.log10(1 / clamped - 1);
+    }
+
+    /**
+     * One side of the match: how to build its engine, plus what is measured
+     * about it. Engines keep state between moves (tables, trees), so every
+     * thread gets its own.
+     */
+    private static class Entrant {
+        final String spec;
+        final String name;
+        final Supplier<MoveEngine> factory;
+        final ThreadLocal<MoveEngine> engines;
+        final ConcurrentLinkedQueue<MoveEngine> created = new ConcurrentLinkedQueue<>();
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicInteger illegalMoves = new AtomicInteger();
+
+        Entrant(String spec) {
+            this.spec = spec;
+            int colon = spec.indexOf(':');
+            this.name = colon < 0 ? spec : spec.substring(0, colon);
+            this.factory = factory(name, options(colon < 0 ? "" : spec.substring(colon + 1)));
+            // Build one up front so a bad spec fails before any game starts
+            created.add(factory.get());
+            this.engines = ThreadLocal.withInitial(() -> {
+                MoveEngine engine = factory.get();
+                created.add(engine);
+                return engine;
+            });
+        }
+
+        MoveEngine engine() {
+            return engines.get();
+        }
+
+        void close() {
+            for (MoveEngine engine : created) {
+                engine.close();
+            }
+        }
+
+        void printLatency(String label) {
+            System.out.printf("%-18s %8d %8.2f %8.2f %8.2f %8.2f %8.2f%n", label, latency.getCount(),
+                    latency.getMean() / 1000, latency.getValueAtPercentile(50) / 1000.0,
+                    latency.getValueAtPercentile(90) / 1000.0, latency.getValueAtPercentile(99) / 1000.0,
+                    latency.getMax() / 1000.0);
+        }
+
+        private static Options options(String text) {
+            Options options = new Options();
+            for (String option : text.split(",")) {
+                if (option.isEmpty()) {
+                    continue;
+                }
+                int eq = option.indexOf('=');
+                if (eq < 0) {
+                    throw new IllegalArgumentException("Expected key=value in " + text);
+                }
+                options.values.setProperty(option.substring(0, eq), option.substring(eq + 1));
+            }
+            return options;
+        }
+
+        private static Supplier<MoveEngine> factory(String name, Options options) {
+            switch (name) {
+                case "random":
+                    return RandomEngine::new;
+                case "minimax": {
+                    int depth = options.getInt("depth", 4);
+                    EndgameTablebase tablebase = options.getTablebase("tb");
+                    return () -> new MinimaxEngine(depth, tablebase);
+                }
+                case "alphabeta": {
+                    int depth = options.getInt("depth", CELLS);
+                    long timeMillis = options.getLong("time-ms", 100);
+                    long nodes = options.getLong("nodes", 0);
+                    int tableSize = options.getInt("tt-size", 1 << 18);
+                    boolean book = options.getInt("book", 1) != 0;
+                    // Mapped once and shared by every thread's engine
+                    EndgameTablebase tablebase = options.getTablebase("tb");
+                    return () -> {
+                        SearchEngine engine = new SearchEngine(depth, timeMillis, nodes,
+                                new TranspositionTable(tableSize), book ? OpeningBook.withDefaults() : null);
+                        engine.setTablebase(tablebase);
+                        return engine;
+                    };
+                }
+                case "mcts": {
+                    int playouts = options.getInt("playouts", 2000);
+                    long timeMillis = options.getLong("time-ms", 0);
+                    return () -> new MctsEngine(playouts, timeMillis, 1, MctsEngine.Parallelism.TREE, true);
+                }
+                case "smart":
+                    return StrategicEngine::new;
+                default:
+                    throw new IllegalArgumentException("Unknown engine: " + name);
+            }
+        }
+    }
+
+    private static class Options {
+        final Properties values = new Properties();
+
+        int getInt(String key, int defaultValue) {
+            String value = values.getProperty(key);
+            return value == null ? defaultValue : Integer.parseInt(value);
+        }
+
+        long getLong(String key, long defaultValue) {
+            String value = values.getProperty(key);
+            return value == null ? defaultValue : Long.parseLong(value);
+        }
+
+        EndgameTablebase getTablebase(String key) {
+            String value = values.getProperty(key);
+            if (value == null) {
+                return null;
+            }
+            try {
+                return new EndgameTablebase(Paths.get(value));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static class RandomEngine implements MoveEngine {
+        private final Random random = new Random();
+
+        @Override
+        public int getMove(int[][] board) {
+            long playable = Position.fromBoard(board).playableMoves();
+            int count = Long.bitCount(playable);
+            if (count == 0) {
+                return -1;
+            }
+            for (int i = random.nextInt(count); i > 0; i--) {
+                playable &= playable - 1;
+            }
+            return ThreatAnalyzer.columnOf(playable & -playable);
+        }
+
+        @Override
+        public String getName() {
+            return "random";
+        }
+    }
+
+    /**
+     * ChatGPTAI.getStrategicMove, the rule-based move ChatGPTAI falls back to.
+     * ChatGPTAI lives outside the Maven sources, so it is found by name and
+     * its private method called reflectively; no ChatGPT request is made.
+     * Its rules always play as player 2, so when player 1 is to move it gets
+     * the board with the colours swapped.
+     */
+    private static class StrategicEngine implements MoveEngine {
+        private final Object ai;
+        private final Method strategicMove;
+
+        StrategicEngine() {
+            try {
+                Class<?> type = Class.forName("ChatGPTAI");
+                ai = type.getConstructor().newInstance();
+                strategicMove = type.getDeclaredMethod("getStrategicMove", int[][].class);
+                strategicMove.setAccessible(true);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalArgumentException("smart needs ChatGPTAI on the classpath: " + e);
+            }
+        }
+
+        @Override
+        public int getMove(int[][] board) {
+            int[][] view = new int[board.length][];
+            boolean swap = Position.fromBoard(board).getPlayerToMove() == 1;
+            for (int row = 0; row < board.length; row++) {
+                view[row] = board[row].clone();
+                if (swap) {
+                    for (int col = 0; col < view[row].length; col++) {
+                        view[row][col] = view[row][col] == 0 ? 0 : 3 - view[row][col];
+                    }
+                }
+            }
+            try {
+                return (int) strategicMove.invoke(ai, (Object) view);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public String getName() {
+            return "smart";
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String specA = null;
+        String specB = null;
+        int games = 1000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int openingPlies = 4;
+        long seed = 1;
+        Double minElo = null;
+        Double maxP99Millis = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--a":
+                    specA = args[++i];
+                    break;
+                case "--b":
+                    specB = args[++i];
+                    break;
+                case "--games":
+                    games = Integer.parseInt(args[++i]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--opening-plies":
+                    openingPlies = Integer.parseInt(args[++i]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                case "--min-elo":
+                    minElo = Double.parseDouble(args[++i]);
+                    break;
+                case "--max-p99-ms":
+                    maxP99Millis = Double.parseDouble(args[++i]);
+                    break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(2);
+            }
+        }
+        if (specA == null || specB == null || games < 2 || openingPlies < 0 || openingPlies > 8) {
+            System.err.println("Usage: java Tournament --a ENGINE --b ENGINE [--games 1000] [--threads N]"
+                + " [--opening-plies 4] [--seed 1] [--min-elo X] [--max-p99-ms X]");
+            System.exit(2);
+        }
+        Locale.setDefault(Locale.ROOT);
+
+        Tournament tournament;
+        try {
+            tournament = new Tournament(specA, specB, openingPlies);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+        tournament.run(games, Math.max(1, threads), seed);
+        double[] elo = tournament.report();
+
+        boolean failed = false;
+        if (minElo != null && elo[2] < minElo) {
+            System.out.printf("FAIL: Elo %+.0f to %+.0f is below %+.0f%n", elo[1], elo[2], minElo);
+            failed = true;
+        }
+        double p99Millis = tournament.a.latency.getValueAtPercentile(99) / 1000.0;
+        if (maxP99Millis != null && p99Millis > maxP99Millis) {
+            System.out.printf("FAIL: A's p99 move time %.2f ms is above %.2f ms%n", p99Millis, maxP99Millis);
+            failed = true;
+        }
+        System.exit(failed ? 1 : 0);
+    }
+}
@@ -0,0 +1,418 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Generates labelled positions for training the policy/value network.
+ *
+ * Every thread plays self-play games with the alpha-beta engine on a small
+ * node budget. Each game opens with a few random moves, and later moves are
+ * random now and then (--noise), so the games spread over many positions.
+ * Every position reached is deduplicated by its canonical key (mirror images
+ * count as one). New positions are labelled with SearchEngine.analyze: when it
+ * solves the position, the labels are exact; otherwise they come from the
+ * deepest search that fit in --label-ms.
+ *
+ * Records stream through a bounded queue to a single writer that fills
+ * shard files of --shard-size records, so memory stays flat however many
+ * positions are asked for. A shard is written as a .tmp file and renamed when
+ * it is complete. --resume keeps the complete shards, reloads their keys so no
+ * position repeats, and generates only the positions still missing.
+ *
+ * Each record is 56 bytes, little endian: current and mask bitboards (u64
+ * each, Position layout), value for the side to move (f32, -1 to 1), policy
+ * over the 7 columns (7 x f32, summing to 1), exact (i32, 1 when solved) and
+ * search depth (i32).
+ *
+ * Usage: java TrainingData --output data/training --positions 1000000
+ *        [--threads N] [--shard-size 1000000] [--play-nodes 2000] [--noise 0.1]
+ *        [--random-plies 4] [--label-ms 200] [--seed 1] [--resume]
+ */
+public class TrainingData {
+    static final int RECORD_BYTES = 56;
+    private static final int COLS = Position.COLS;
+    // Scales heuristic scores to values and policy logits
+    private static final double VALUE_SCALE = 200;
+    private static final double POLICY_TEMPERATURE = 50;
+
+    private final Path output;
+    private final long target;
+    private final int threads;
+    private final int shardSize;
+    private final long playNodes;
+    private final double noise;
+    private final int randomPlies;
+    private final long labelMillis;
+
+    private final KeySet seen;
+    private final BlockingQueue<byte[]> queue;
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong exact = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private volatile boolean workersDone;
+
+    public TrainingData(Path output, long target, int threads, int shardSize, long playNodes, double noise,
+                        int randomPlies, long labelMillis) {
+        this.output = output;
+        this.target = target;
+        this.threads = threads;
+        this.shardSize = shardSize;
+        this.playNodes = playNodes;
+        this.noise = noise;
+        this.randomPlies = randomPlies;
+        this.labelMillis = labelMillis;
+        this.seen = new KeySet(target);
+        this.queue = new ArrayBlockingQueue<>(threads * 1024);
+    }
+
+    public void run(long seed, boolean resume) throws IOException, InterruptedException {
+        Files.createDirectories(output);
+        List<Path> shards = completeShards();
+        if (!shards.isEmpty() && !resume) {
+            throw new IOException(output + " already has shards; add --resume to continue");
+        }
+        long done = 0;
+        for (Path shard : shards) {
+            done += reloadKeys(shard);
+        }
+        try (DirectoryStream<Path> partial = Files.newDirectoryStream(output, "*.tmp")) {
+            for (Path file : partial) {
+                Files.delete(file);
+            }
+        }
+        if (done > 0) {
+            System.err.printf("Resuming with %d positions in %d shards%n", done, shards.size());
+        }
+        claimed.set(done);
+        written.set(done);
+
+        int firstShard = shards.size();
+        Thread writer = new Thread(() -> writeShards(firstShard), "training-writer");
+        writer.start();
+
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            // A different seed per worker and per resumed run, so no game is played twice
+            Random random = new Random(seed * 1_000_003 + firstShard * 7919L + i);
+            pool.execute(() -> generate(random));
+        }
+        pool.shutdown();
+        long before = done;
+        while (!pool.awaitTermination(5, TimeUnit.SECONDS)) {
+            report(written.get() - before, System.nanoTime() - start, false);
+        }
+        workersDone = true;
+        writer.join();
+        report(written.get() - before, System.nanoTime() - start, true);
+    }
+
+    // Self-play games until enough positions are claimed
+    private void generate(Random random) {
+        SearchEngine player = new SearchEngine(Position.CELLS, 0, playNodes, new TranspositionTable(1 << 18), null);
+        SearchEngine labeller = new SearchEngine(Position.CELLS, labelMillis, new TranspositionTable(1 << 20), null);
+        List<Position> positions = new ArrayList<>(Position.CELLS);
+        try {
+            while (claimed.get() < target) {
+                playGame(player, random, positions);
+                for (Position position : positions) {
+                    if (!seen.add(position.canonicalKey())) {
+                        duplicates.incrementAndGet();
+                        continue;
+                    }
+                    if (claimed.incrementAndGet() > target) {
+                        return;
+                    }
+                    queue.put(label(labeller, position));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Every position of one game, up to (not including) the end
+    private void playGame(SearchEngine player, Random random, List<Position> positions) {
+        positions.clear();
+        Position position = new Position();
+        while (position.playableMoves() != 0) {
+            positions.add(position.copy());
+            int col;
+            if (position.winningMoves() != 0) {
+                col = ThreatAnalyzer.columnOf(position.winningMoves());
+            } else if (position.getMoves() < randomPlies || random.nextDouble() < noise) {
+                col = randomMove(position, random);
+            } else {
+                col = player.search(position).move;
+            }
+            if (position.isWinningMove(col)) {
+                break;
+            }
+            position.play(col);
+        }
+    }
+
+    // Random non-losing move, or any random move when all of them lose
+    private static int randomMove(Position position, Random random) {
+        long moves = position.nonLosingMoves();
+        if (moves == 0) {
+            moves = position.playableMoves();
+        }
+        for (int i = random.nextInt(Long.bitCount(moves)); i > 0; i--) {
+            moves &= moves - 1;
+        }
+        return ThreatAnalyzer.columnOf(moves & -moves);
+    }
+
+    private byte[] label(SearchEngine labeller, Position position) {
+        PositionAnalysis analysis = labeller.analyze(position, Position.CELLS, labelMillis);
+        int best = analysis.scores[analysis.bestColumn()];
+        float[] policy = new float[COLS];
+        float value;
+        if (analysis.complete) {
+            // Solved: the value is the game result, and the policy is spread over every move that keeps it
+            exact.incrementAndGet();
+            value = Math.signum(best);
+            int keeping = 0;
+            for (int col = 0; col < COLS; col++) {
+                if (analysis.scores[col] != PositionAnalysis.UNPLAYABLE
+                        && Math.signum(analysis.scores[col]) == value) {
+                    policy[col] = 1;
+                    keeping++;
+                }
+            }
+            for (int col = 0; col < COLS; col++) {
+                policy[col] /= keeping;
+            }
+        } else {
+            value = (float) Math.tanh(clamp(best) / VALUE_SCALE);
+            double total = 0;
+            for (int col = 0; col < COLS; col++) {
+                if (analysis.scores[col] != PositionAnalysis.UNPLAYABLE) {
+                    policy[col] = (float) Math.exp((clamp(analysis.scores[col]) - clamp(best)) / POLICY_TEMPERATURE);
+                    total += policy[col];
+                }
+            }
+            for (int col = 0; col < COLS; col++) {
+                policy[col] /= total;
+            }
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        record.putLong(position.getCurrent()).putLong(position.getMask()).putFloat(value);
+        for (float p : policy) {
+            record.putFloat(p);
+        }
+        record.putInt(analysis.complete ? 1 : 0).putInt(analysis.depth);
+        return record.array();
+    }
+
+    // Proven wins and losses count as a large heuristic score
+    private static double clamp(int score) {
+        return Math.max(-1000, Math.min(1000, score));
+    }
+
+    private void writeShards(int firstShard) {
+        int shard = firstShard;
+        OutputStream out = null;
+        Path temp = null;
+        int inShard = 0;
+        try {
+            while (true) {
+                byte[] record = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (record == null) {
+                    if (workersDone && queue.isEmpty()) {
+                        break;
+                    }
+                    continue;
+                }
+                if (out == null) {
+                    temp = output.resolve(shardName(shard) + ".tmp");
+                    out = new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16);
+                }
+                out.write(record);
+                inShard++;
+                written.incrementAndGet();
+                if (inShard == shardSize) {
+                    finish(out, temp, shard++);
+                    out = null;
+                    inShard = 0;
+                }
+            }
+            if (out != null) {
+                finish(out, temp, shard);
+            }
+        } catch (IOException e) {
+            System.err.println("Writing shards failed: " + e);
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void finish(OutputStream out, Path temp, int shard) throws IOException {
+        out.close();
+        Files.move(temp, output.resolve(shardName(shard)), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String shardName(int shard) {
+        return String.format("shard-%05d.bin", shard);
+    }
+
+    private List<Path> completeShards() throws IOException {
+        List<Path> shards = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(output, "shard-*.bin")) {
+            for (Path file : files) {
+                shards.add(file);
+            }
+        }
+        Collections.sort(shards);
+        return shards;
+    }
+
+    // Marks a finished shard's positions as seen; returns how many it holds
+    private long reloadKeys(Path shard) throws IOException {
+        long count = 0;
+        byte[] bytes = new byte[RECORD_BYTES];
+        ByteBuffer record = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(shard), 1 << 16)) {
+            while (in.readNBytes(bytes, 0, RECORD_BYTES) == RECORD_BYTES) {
+                long current = record.getLong(0);
+                long mask = record.getLong(8);
+                seen.add(Position.fromBitboards(current, mask).canonicalKey());
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void report(long count, long elapsedNanos, boolean last) {
+        double seconds = elapsedNanos / 1e9;
+        System.err.printf("%s%d positions written (%d total), %.0f positions/s, %.1f%% solved, %d duplicates%n",
+                last ? "Done: " : "", count, written.get(), count / Math.max(seconds, 1e-9),
+                100.0 * exact.get() / Math.max(1, count), duplicates.get());
+    }
+
+    /**
+     * Lock-free set of position keys, sized once for the whole run, so
+     * deduplication never needs more memory than the target allows for.
+     */
+    private static class KeySet {
+        private final AtomicLongArray slots;
+        private final int mask;
+
+        KeySet(long expected) {
+            long capacity = Long.highestOneBit(Math.max(16, expected * 2 - 1)) << 1;
+            if (capacity > 1 << 30) {
+                throw new IllegalArgumentException("Too many positions for one run: " + expected);
+            }
+            slots = new AtomicLongArray((int) capacity);
+            mask = (int) capacity - 1;
+        }
+
+        // True when the key was not in the set before
+        boolean add(long key) {
+            // Keys are stored plus one, so the empty board's key 0 doesn't look like an empty slot
+            long stored = key + 1;
+            int i = (int) ((stored * 0x9E3779B97F4A7C15L) >>> 34) & mask;
+            while (true) {
+                long slot = slots.get(i);
+                if (slot == stored) {
+                    return false;
+                }
+                if (slot == 0) {
+                    if (slots.compareAndSet(i, 0, stored)) {
+                        return true;
+                    }
+                    continue;
+                }
+                i = (i + 1) & mask;
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String output = null;
+        long positions = 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int shardSize = 1_000_000;
+        long playNodes = 2000;
+        double noise = 0.1;
+        int randomPlies = 4;
+        long labelMillis = 200;
+        long seed = 1;
+        boolean resume = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--output":
+                    output = args[++i];
+                    break;
+                case "--positions":
+                    positions = Long.parseLong(args[++i]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--shard-size":
+                    shardSize = Integer.parseInt(args[++i]);
+                    break;
+                case "--play-nodes":
+                    playNodes = Long.parseLong(args[++i]);
+                    break;
+                case "--noise":
+                    noise = Double.parseDouble(args[++i]);
+                    break;
+                case "--random-plies":
+                    randomPlies = Integer.parseInt(args[++i]);
+                    break;
+                case "--label-ms":
+                    labelMillis = Long.parseLong(args[++i]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                case "--resume":
+                    resume = true;
+                    break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(2);
+            }
+        }
+        if (output == null || positions <= 0 || shardSize <= 0) {
+            System.err.println("Usage: java TrainingData --output data/training --positions N [--threads N]"
+                + " [--shard-size N] [--play-nodes N] [--noise 0.1] [--random-plies 4] [--label-ms 200]"
+                + " [--seed 1] [--resume]");
+            System.exit(2);
+        }
+
+        try {
+            new TrainingData(Paths.get(output), positions, Math.max(1, threads), shardSize, playNodes, noise,
+                    randomPlies, labelMillis).run(seed, resume);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+}
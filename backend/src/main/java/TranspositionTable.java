@@ -0,0 +1,94 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free transposition table for the alpha-beta search, safe to share
+ * between any number of searching threads.
+ *
+ * Each slot is two longs: the packed entry and the position key XORed with
+ * it. A reader only accepts an entry when the XOR gives back its own key, so
+ * an entry torn by two threads writing the same slot at once is treated as a
+ * miss instead of being trusted. New entries always replace old ones.
+ */
+public class TranspositionTable {
+    public static final int EXACT = 0;
+    public static final int LOWER = 1;
+    public static final int UPPER = 2;
+
+    // Entry layout: score in bits 0-31, depth 32-39, flag 40-41, move + 1 in 42-45
+    private static final long VALID = 1L << 46;
+
+    private final long[] keys;
+    private final long[] entries;
+    private final int shift;
+
+    // Shared by every table
+    private static final LongAdder probes = Metrics.counter("connect4_tt_probes_total",
+            "Transposition table lookups", "");
+    private static final LongAdder hits = Metrics.counter("connect4_tt_hits_total",
+            "Transposition table lookups that found the position", "");
+
+    static {
+        Metrics.gauge("connect4_tt_hit_ratio", "Fraction of transposition table lookups that hit", "",
+                () -> probes.sum() == 0 ? 0 : (double) hits.sum() / probes.sum());
+    }
+
+    // size is rounded up to a power of two
+    public TranspositionTable(int size) {
+        int capacity = Integer.highestOneBit(Math.max(2, size - 1)) << 1;
+        keys = new long[capacity];
+        entries = new long[capacity];
+        shift = 64 - Integer.numberOfTrailingZeros(capacity);
+    }
+
+    // Packed entry for this position, or 0 when there is none
+    public long probe(long key) {
+        int i = index(key);
+        long entry = entries[i];
+        return entry != 0 && (keys[i] ^ entry) == key ? entry : 0;
+    }
+
+    public void store(long key, int score, int depth, int flag, int move) {
+        long entry = (score & 0xFFFFFFFFL) | (long) Math.min(depth, 255) << 32 | (long) flag << 40
+            | (long) (move + 1) << 42 | VALID;
+        int i = index(key);
+        entries[i] = entry;
+        keys[i] = key ^ entry;
+    }
+
+    // Searches count probes and hits locally and report them once per move
+    void recordProbes(long probeCount, long hitCount) {
+        probes.add(probeCount);
+        hits.add(hitCount);
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(entries, 0);
+    }
+
+    public int size() {
+        return entries.length;
+    }
+
+    public static int score(long entry) {
+        return (int) entry;
+    }
+
+    public static int depth(long entry) {
+        return (int) (entry >>> 32) & 0xFF;
+    }
+
+    public static int flag(long entry) {
+        return (int) (entry >>> 40) & 3;
+    }
+
+    // Best move column, or -1
+    public static int move(long entry) {
+        return ((int) (entry >>> 42) & 0xF) - 1;
+    }
+
+    private int index(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+}
@@ -0,0 +1,301 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Alpha-beta (negamax) engine for boards other than the standard 7x6, on
+ * VariantPosition.
+ *
+ * It searches like SearchEngine, by iterative deepening within a time or
+ * node budget and through a shared lock-free TranspositionTable, with the
+ * same score scale: a win scores SearchEngine.WIN_SCORE - (number of the
+ * winning piece). The standard board's shortcuts depend on its fixed shape
+ * (shift-based threat detection, the odd/even rule, the opening book), so
+ * here a win or a forced block is found from the lines through each
+ * column's next cell, and leaves are scored by counting pieces in every
+ * line neither side has blocked, as WindowEvaluator does on the standard
+ * board.
+ *
+ * One engine serves every game of its geometry; give each geometry its own
+ * table, as the keys of different board sizes can collide.
+ */
+public class VariantEngine implements MoveEngine {
+    private static final int WIN_SCORE = SearchEngine.WIN_SCORE;
+    private static final int WIN_THRESHOLD = SearchEngine.WIN_THRESHOLD;
+    private static final int INFINITY = WIN_SCORE + 1;
+
+    // Leaf weights for a line with only one side's pieces: one short of a
+    // win, two short, and any other
+    private static final int ONE_SHORT_SCORE = 100;
+    private static final int TWO_SHORT_SCORE = 10;
+    private static final int OPEN_LINE_SCORE = 1;
+
+    private final BoardGeometry geometry;
+    private final long timeBudgetMillis;
+    private final long nodeBudget;
+    private final TranspositionTable table;
+
+    private final LongAdder nodesSearched = Metrics.counter("connect4_ai_nodes_total",
+            "Nodes searched by the AI (playouts for MCTS)", "engine=\"variant\"");
+    private final LatencyHistogram searchTime = Metrics.histogram("connect4_ai_search_duration_seconds",
+            "Time spent searching per AI move", "engine=\"variant\"");
+
+    /**
+     * @param timeBudgetMillis milliseconds per move, or 0 for no limit
+     * @param nodeBudget nodes per move, or 0 for no limit
+     */
+    public VariantEngine(BoardGeometry geometry, long timeBudgetMillis, long nodeBudget, TranspositionTable table) {
+        this.geometry = geometry;
+        this.timeBudgetMillis = timeBudgetMillis;
+        this.nodeBudget = nodeBudget;
+        this.table = table;
+    }
+
+    @Override
+    public int getMove(int[][] board) {
+        return search(VariantPosition.fromBoard(geometry, board)).move;
+    }
+
+    @Override
+    public SearchResult search(int[][] board) {
+        return search(VariantPosition.fromBoard(geometry, board));
+    }
+
+    @Override
+    public String getName() {
+        return "variant";
+    }
+
+    public BoardGeometry getGeometry() {
+        return geometry;
+    }
+
+    public SearchResult search(VariantPosition position) {
+        long start = System.nanoTime();
+        Searcher searcher = new Searcher(timeBudgetMillis > 0 ? System.currentTimeMillis() + timeBudgetMillis : 0);
+        int moves = position.getMoves();
+        int first = -1;
+        for (int col : geometry.columnOrder) {
+            if (position.canPlay(col)) {
+                first = col;
+                break;
+            }
+        }
+        if (first == -1) {
+            return new SearchResult(-1, getName());
+        }
+
+        int best = first;
+        int bestScore = 0;
+        int completed = 0;
+        for (int depth = 1; depth <= geometry.cells - moves; depth++) {
+            int score = searcher.negamax(position, depth, -INFINITY, INFINITY, 0);
+            if (searcher.stopped) {
+                break;
+            }
+            best = searcher.rootMove;
+            bestScore = score;
+            completed = depth;
+            if (Math.abs(score) >= WIN_THRESHOLD) {
+                break;
+            }
+        }
+
+        long elapsed = System.nanoTime() - start;
+        SearchResult result = new SearchResult(best, getName());
+        result.hasScore = completed > 0;
+        result.score = bestScore;
+        result.depth = completed;
+        result.nodes = searcher.nodes;
+        result.ttHits = searcher.ttHits;
+        result.elapsedNanos = elapsed;
+        result.pv = new int[] {best};
+
+        table.recordProbes(searcher.ttProbes, searcher.ttHits);
+        nodesSearched.add(searcher.nodes);
+        searchTime.record(elapsed / 1000);
+        return result;
+    }
+
+    /**
+     * Scores a position for the side to move without searching: every line
+     * holding pieces of one side only counts for that side, more the closer
+     * it is to complete.
+     */
+    int evaluate(VariantPosition position) {
+        long[] own = position.getCurrent();
+        long[] mask = position.getMask();
+        int words = geometry.words;
+        int connect = geometry.connect;
+        BoardGeometry.Layout layout = geometry.layout;
+        int score = 0;
+        for (int line = 0; line < geometry.lineCount(); line++) {
+            int ownCount;
+            int opponentCount;
+            if (layout == BoardGeometry.Layout.ONE_LONG) {
+                long cells = geometry.lineMasks[line];
+                ownCount = Long.bitCount(own[0] & cells);
+                opponentCount = Long.bitCount((own[0] ^ mask[0]) & cells);
+            } else if (layout == BoardGeometry.Layout.TWO_LONGS) {
+                long cells0 = geometry.lineMasks[2 * line];
+                long cells1 = geometry.lineMasks[2 * line + 1];
+                ownCount = Long.bitCount(own[0] & cells0) + Long.bitCount(own[1] & cells1);
+                opponentCount = Long.bitCount((own[0] ^ mask[0]) & cells0)
+                    + Long.bitCount((own[1] ^ mask[1]) & cells1);
+            } else {
+                ownCount = 0;
+                opponentCount = 0;
+                for (int w = 0; w < words; w++) {
+                    long cells = geometry.lineMasks[line * words + w];
+                    ownCount += Long.bitCount(own[w] & cells);
+                    opponentCount += Long.bitCount((own[w] ^ mask[w]) & cells);
+                }
+            }
+            if (ownCount > 0 && opponentCount == 0) {
+                score += lineScore(connect - ownCount);
+            } else if (opponentCount > 0 && ownCount == 0) {
+                score -= lineScore(connect - opponentCount);
+            }
+        }
+        return score;
+    }
+
+    private static int lineScore(int missing) {
+        return missing == 1 ? ONE_SHORT_SCORE : missing == 2 ? TWO_SHORT_SCORE : OPEN_LINE_SCORE;
+    }
+
+    // Per-search state, so concurrent searches only share the table
+    private class Searcher {
+        final long deadline;
+        long nodes;
+        long ttProbes;
+        long ttHits;
+        boolean stopped;
+        int rootMove = -1;
+        // Opponent's pieces per ply, to find the moves that must be blocked
+        final long[][] opponent = new long[geometry.cells + 1][geometry.words];
+        final int[][] order = new int[geometry.cells + 1][geometry.cols];
+
+        Searcher(long deadline) {
+            this.deadline = deadline;
+        }
+
+        int negamax(VariantPosition position, int depth, int alpha, int beta, int ply) {
+            nodes++;
+            if (deadline != 0 && (nodes & 4095) == 0 && System.currentTimeMillis() >= deadline) {
+                stopped = true;
+            }
+            if (nodeBudget != 0 && nodes > nodeBudget) {
+                stopped = true;
+            }
+            if (stopped) {
+                return 0;
+            }
+
+            int moves = position.getMoves();
+            for (int col : geometry.columnOrder) {
+                if (position.canPlay(col) && position.isWinningMove(col)) {
+                    if (ply == 0) {
+                        rootMove = col;
+                    }
+                    return WIN_SCORE - (moves + 1);
+                }
+            }
+            if (moves == geometry.cells) {
+                return 0;
+            }
+
+            // A cell where the opponent would win must be blocked; with two, the game is lost
+            long[] own = position.getCurrent();
+            long[] mask = position.getMask();
+            long[] theirs = opponent[ply];
+            for (int w = 0; w < theirs.length; w++) {
+                theirs[w] = own[w] ^ mask[w];
+            }
+            int forced = -1;
+            for (int col = 0; col < geometry.cols; col++) {
+                if (position.canPlay(col)
+                        && geometry.completes(theirs, geometry.rows - 1 - position.getHeight(col), col)) {
+                    if (forced != -1) {
+                        if (ply == 0) {
+                            rootMove = forced;
+                        }
+                        return -(WIN_SCORE - (moves + 2));
+                    }
+                    forced = col;
+                }
+            }
+
+            if (depth == 0) {
+                return evaluate(position);
+            }
+
+            long key = position.key();
+            ttProbes++;
+            long entry = table.probe(key);
+            int hashMove = -1;
+            if (entry != 0) {
+                ttHits++;
+                hashMove = TranspositionTable.move(entry);
+                if (ply > 0 && TranspositionTable.depth(entry) >= depth) {
+                    int stored = TranspositionTable.score(entry);
+                    int flag = TranspositionTable.flag(entry);
+                    if (flag == TranspositionTable.EXACT) {
+                        return stored;
+                    } else if (flag == TranspositionTable.LOWER) {
+                        alpha = Math.max(alpha, stored);
+                    } else {
+                        beta = Math.min(beta, stored);
+                    }
+                    if (alpha >= beta) {
+                        return stored;
+                    }
+                }
+            }
+
+            int[] cols = order[ply];
+            int count = 0;
+            if (forced != -1) {
+                cols[count++] = forced;
+            } else {
+                if (hashMove >= 0 && hashMove < geometry.cols && position.canPlay(hashMove)) {
+                    cols[count++] = hashMove;
+                }
+                for (int col : geometry.columnOrder) {
+                    if (col != hashMove && position.canPlay(col)) {
+                        cols[count++] = col;
+                    }
+                }
+            }
+
+            int alphaStart = alpha;
+            int best = -INFINITY;
+            int bestMove = -1;
+            for (int i = 0; i < count; i++) {
+                int col = cols[i];
+                position.play(col);
+                int score = -negamax(position, depth - 1, -beta, -alpha, ply + 1);
+                position.undo(col);
+                if (stopped) {
+                    return 0;
+                }
+                if (score > best) {
+                    best = score;
+                    bestMove = col;
+                    if (ply == 0) {
+                        rootMove = col;
+                    }
+                    if (score > alpha) {
+                        alpha = score;
+                        if (alpha >= beta) {
+                            break;
+                        }
+                    }
+                }
+            }
+
+            int flag = best <= alphaStart ? TranspositionTable.UPPER
+                : best >= beta ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+            table.store(key, best, depth, flag, bestMove);
+            return best;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * Position on a board of any BoardGeometry, the variant counterpart of
+ * Position.
+ *
+ * It uses the same two bitboards, the side to move's pieces and every
+ * occupied cell, split into the geometry's words: one long on boards of up
+ * to 64 bits, two on boards like 9x7, more on larger ones. A move flips
+ * current to the other side in every word but only adds the piece to its
+ * column's word, so play and undo stay a few operations per word. One- and
+ * two-word layouts touch their words directly instead of looping.
+ */
+public class VariantPosition {
+    private final BoardGeometry geometry;
+    private final long[] current;
+    private final long[] mask;
+    private final int[] heights;
+    private int moves;
+
+    public VariantPosition(BoardGeometry geometry) {
+        this.geometry = geometry;
+        this.current = new long[geometry.words];
+        this.mask = new long[geometry.words];
+        this.heights = new int[geometry.cols];
+    }
+
+    private VariantPosition(VariantPosition other) {
+        this.geometry = other.geometry;
+        this.current = other.current.clone();
+        this.mask = other.mask.clone();
+        this.heights = other.heights.clone();
+        this.moves = other.moves;
+    }
+
+    // Position of the server's board (0 empty, 1 player, 2 AI); player 1 always moves first
+    public static VariantPosition fromBoard(BoardGeometry geometry, int[][] board) {
+        VariantPosition position = new VariantPosition(geometry);
+        int toMove = 0;
+        for (int row = 0; row < geometry.rows; row++) {
+            for (int col = 0; col < geometry.cols; col++) {
+                if (board[row][col] != 0) {
+                    toMove++;
+                }
+            }
+        }
+        int side = toMove % 2 == 0 ? 1 : 2;
+        for (int row = geometry.rows - 1; row >= 0; row--) {
+            for (int col = 0; col < geometry.cols; col++) {
+                int player = board[row][col];
+                if (player != 0) {
+                    int w = geometry.wordOf(col);
+                    long bit = geometry.bit(row, col);
+                    position.mask[w] |= bit;
+                    if (player == side) {
+                        position.current[w] |= bit;
+                    }
+                    position.heights[col]++;
+                    position.moves++;
+                }
+            }
+        }
+        return position;
+    }
+
+    public VariantPosition copy() {
+        return new VariantPosition(this);
+    }
+
+    public BoardGeometry getGeometry() {
+        return geometry;
+    }
+
+    public int getMoves() {
+        return moves;
+    }
+
+    // Pieces in the column
+    public int getHeight(int col) {
+        return heights[col];
+    }
+
+    public boolean canPlay(int col) {
+        return heights[col] < geometry.rows;
+    }
+
+    // Whether the side to move wins by playing col
+    public boolean isWinningMove(int col) {
+        return geometry.completes(current, geometry.rows - 1 - heights[col], col);
+    }
+
+    public void play(int col) {
+        int row = geometry.rows - 1 - heights[col];
+        flip();
+        mask[geometry.wordOf(col)] |= geometry.bit(row, col);
+        heights[col]++;
+        moves++;
+    }
+
+    // Exact inverse of play(col)
+    public void undo(int col) {
+        heights[col]--;
+        moves--;
+        int row = geometry.rows - 1 - heights[col];
+        mask[geometry.wordOf(col)] &= ~geometry.bit(row, col);
+        flip();
+    }
+
+    // Hands current over to the other side
+    private void flip() {
+        switch (geometry.layout) {
+            case ONE_LONG:
+                current[0] ^= mask[0];
+                break;
+            case TWO_LONGS:
+                current[0] ^= mask[0];
+                current[1] ^= mask[1];
+                break;
+            default:
+                for (int w = 0; w < current.length; w++) {
+                    current[w] ^= mask[w];
+                }
+        }
+    }
+
+    // Pieces of the side to move, one long per word
+    long[] getCurrent() {
+        return current;
+    }
+
+    long[] getMask() {
+        return mask;
+    }
+
+    /**
+     * current + mask per word, as Position.key(). Unique on one-word boards;
+     * on larger ones the words are mixed into a hash, which the
+     * transposition table's key check makes safe enough.
+     */
+    public long key() {
+        switch (geometry.layout) {
+            case ONE_LONG:
+                return current[0] + mask[0];
+            case TWO_LONGS:
+                return (current[0] + mask[0]) * 0x9E3779B97F4A7C15L + current[1] + mask[1];
+            default:
+                break;
+        }
+        long key = 0;
+        for (int w = 0; w < current.length; w++) {
+            key = (key + current[w] + mask[w]) * 0x9E3779B97F4A7C15L;
+        }
+        return key;
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Precomputed table of every four-cell line on the board.
+ *
+ * Cells are numbered row * COLS + col, the same row-major order used by the
+ * board string the server sends to the frontend. Each line is listed once,
+ * and every cell keeps the list of lines that pass through it so a move only
+ * has to look at the handful of lines it can actually change.
+ *
+ * Every line also has a bitmask so a win check is a single AND/compare per
+ * line. Bitboards use one column of HEIGHT bits per column, bottom row first,
+ * with a spare bit on top of each column so shifts never carry into the next
+ * column.
+ *
+ * The tables are BoardGeometry.STANDARD's; the sizes stay constants here so
+ * the 7x6 bitboard code compiles them in. Other board sizes go through
+ * BoardGeometry itself.
+ */
+public class WinLines {
+    public static final int ROWS = 6;
+    public static final int COLS = 7;
+    public static final int CELLS = ROWS * COLS;
+    public static final int LENGTH = 4;
+    public static final int HEIGHT = ROWS + 1;
+
+    // line index -> the four cell indices of that line
+    static final int[][] LINE_CELLS;
+    // cell index -> indices of every line passing through that cell
+    static final int[][] LINES_BY_CELL;
+    // line index -> bitboard mask of the four cells
+    static final long[] LINE_MASKS;
+    public static final int COUNT;
+
+    static {
+        // The standard board of BoardGeometry, with the same layout
+        BoardGeometry geometry = BoardGeometry.STANDARD;
+        COUNT = geometry.lineCount();
+        LINE_CELLS = geometry.lineCells;
+        LINES_BY_CELL = geometry.linesByCell;
+        LINE_MASKS = geometry.lineMasks;
+    }
+
+    public static int cell(int row, int col) {
+        return row * COLS + col;
+    }
+
+    // Bitboard bit for a cell; row 0 is the top of the board
+    public static long bit(int row, int col) {
+        return 1L << (col * HEIGHT + (ROWS - 1 - row));
+    }
+
+    // Index of the line through (row, col) fully covered by pieces, or -1
+    public static int findWin(long pieces, int row, int col) {
+        for (int line : LINES_BY_CELL[cell(row, col)]) {
+            long mask = LINE_MASKS[line];
+            if ((pieces & mask) == mask) {
+                return line;
+            }
+        }
+        return -1;
+    }
+
+    // Whether pieces cover any line at all; for validating boards from outside
+    public static boolean hasWin(long pieces) {
+        for (long mask : LINE_MASKS) {
+            if ((pieces & mask) == mask) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Only called when serializing a finished game
+    public static int[][] positions(int line) {
+        int[] cells = LINE_CELLS[line];
+        int[][] positions = new int[cells.length][];
+        for (int i = 0; i < cells.length; i++) {
+            positions[i] = new int[] {rowOf(cells[i]), colOf(cells[i])};
+        }
+        return positions;
+    }
+
+    public static int rowOf(int cell) {
+        return cell / COLS;
+    }
+
+    public static int colOf(int cell) {
+        return cell % COLS;
+    }
+}
@@ -0,0 +1,68 @@
+import java.util.Arrays;
+
+/**
+ * Incremental version of the window-based board evaluation.
+ *
+ * Instead of rescanning all four-cell windows at every leaf, this keeps the
+ * number of AI and player pieces in each window plus the running total score.
+ * Placing or removing a piece only rescores the windows through that cell, and
+ * remove() is the exact inverse of place() so search can make/unmake freely.
+ */
+public class WindowEvaluator {
+    private static final int AI = 2;
+    static final int WINNING_SCORE = 100000;
+    static final int THREE_IN_ROW = 1000;
+    static final int TWO_IN_ROW = 100;
+
+    private final int[] aiCounts = new int[WinLines.COUNT];
+    private final int[] playerCounts = new int[WinLines.COUNT];
+    private int score;
+
+    public void place(int row, int col, int player) {
+        for (int line : WinLines.LINES_BY_CELL[WinLines.cell(row, col)]) {
+            score -= scoreWindow(aiCounts[line], playerCounts[line]);
+            if (player == AI) {
+                aiCounts[line]++;
+            } else {
+                playerCounts[line]++;
+            }
+            score += scoreWindow(aiCounts[line], playerCounts[line]);
+        }
+    }
+
+    public void remove(int row, int col, int player) {
+        for (int line : WinLines.LINES_BY_CELL[WinLines.cell(row, col)]) {
+            score -= scoreWindow(aiCounts[line], playerCounts[line]);
+            if (player == AI) {
+                aiCounts[line]--;
+            } else {
+                playerCounts[line]--;
+            }
+            score += scoreWindow(aiCounts[line], playerCounts[line]);
+        }
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public void reset() {
+        Arrays.fill(aiCounts, 0);
+        Arrays.fill(playerCounts, 0);
+        score = 0;
+    }
+
+    // Same scoring rules the full-board evaluateWindow used
+    static int scoreWindow(int aiCount, int playerCount) {
+        int emptyCount = WinLines.LENGTH - aiCount - playerCount;
+
+        if (aiCount == 4) return WINNING_SCORE;
+        if (playerCount == 4) return -WINNING_SCORE;
+        if (aiCount == 3 && emptyCount == 1) return THREE_IN_ROW;
+        if (playerCount == 3 && emptyCount == 1) return -THREE_IN_ROW;
+        if (aiCount == 2 && emptyCount == 2) return TWO_IN_ROW;
+        if (playerCount == 2 && emptyCount == 2) return -TWO_IN_ROW;
+
+        return 0;
+    }
+}
@@ -39,70 +39,82 @@ function App() {
       const response = await fetch('http://localhost:8080/board');
       const data = await response.text();
       console.log("Board data received:", data);
-      
-      const parts = data.split('|');
-      const boardState = parts[0];
-      
-      // Parse game state - be careful with the format!
-      let isOver = 0;
-      let winnerValue = 0;
-      
-      if (parts.length > 1) {
-        const gameStateParts = parts[1].split(',');
-        if (gameStateParts.length >= 2) {
-          isOver = parseInt(gameStateParts[0]);
-          winnerValue = parseInt(gameStateParts[1]);
-          console.log(`Game state parsed: isOver=${isOver}, winner=${winnerValue}`);
-        }
+      return applyBoardState(data);
+    } catch (error) {
+      console.error('Error fetching board state:', error);
+      return false;
+    }
+  };
+
+  // Shows one board state as the server sends it ("cells|over,winner|winning cells")
+  // and returns whether the game is over
+  const applyBoardState = (data) => {
+    const parts = data.split('|');
+    const boardState = parts[0];
+    
+    // Parse game state - be careful with the format!
+    let isOver = 0;
+    let winnerValue = 0;
+    
+    if (parts.length > 1) {
+      const gameStateParts = parts[1].split(',');
+      if (gameStateParts.length >= 2) {
+        isOver = parseInt(gameStateParts[0]);
+        winnerValue = parseInt(gameStateParts[1]);
+        console.log(`Game state parsed: isOver=${isOver}, winner=${winnerValue}`);
       }
-      
-      // Parse board state
-      const boardArray = boardState.split(',')
-        .filter(cell => cell !== '')
-        .map(Number);
-      
-      const newBoard = [];
+    }
+    
+    // Parse board state; other board sizes end each row with ';'
+    const parseRow = (row) => row.split(',')
+      .filter(cell => cell !== '')
+      .map(Number);
+
+    const newBoard = [];
+    if (boardState.includes(';')) {
+      boardState.split(';')
+        .filter(row => row !== '')
+        .forEach(row => newBoard.push(parseRow(row)));
+    } else {
+      const boardArray = parseRow(boardState);
       for (let i = 0; i < 6; i++) {
         newBoard.push(boardArray.slice(i * 7, (i + 1) * 7));
       }
-      setBoard(newBoard);
+    }
+    setBoard(newBoard);
 
-      // Parse game state
-      const gameIsOver = isOver === 1;
-      setGameOver(gameIsOver);
-      setWinner(winnerValue);
-      console.log("Game state updated: gameOver =", gameIsOver, "winner =", winnerValue);
+    // Parse game state
+    const gameIsOver = isOver === 1;
+    setGameOver(gameIsOver);
+    setWinner(winnerValue);
+    console.log("Game state updated: gameOver =", gameIsOver, "winner =", winnerValue);
 
-      // Parse winning positions if they exist
-      if (parts.length > 2) {
-        if (parts[2] === "draw") {
-          console.log("Game ended in a draw");
-          // Keep winningPositions empty for a draw
-          setWinningPositions([]);
-        } else if (isOver === 1 && winnerValue !== 0) {
-          const positions = parts[2].split(',')
-            .filter(pos => pos !== '')
-            .map(Number);
-          const winningPos = [];
-          for (let i = 0; i < positions.length; i += 2) {
-            if (i + 1 < positions.length) {
-              winningPos.push([positions[i], positions[i + 1]]);
-            }
+    // Parse winning positions if they exist
+    if (parts.length > 2) {
+      if (parts[2] === "draw") {
+        console.log("Game ended in a draw");
+        // Keep winningPositions empty for a draw
+        setWinningPositions([]);
+      } else if (isOver === 1 && winnerValue !== 0) {
+        const positions = parts[2].split(',')
+          .filter(pos => pos !== '')
+          .map(Number);
+        const winningPos = [];
+        for (let i = 0; i < positions.length; i += 2) {
+          if (i + 1 < positions.length) {
+            winningPos.push([positions[i], positions[i + 1]]);
           }
-          setWinningPositions(winningPos);
-        } else {
-          setWinningPositions([]);
         }
+        setWinningPositions(winningPos);
       } else {
         setWinningPositions([]);
       }
-      
-      // Return whether the game is over
-      return gameIsOver;
-    } catch (error) {
-      console.error('Error fetching board state:', error);
-      return false;
+    } else {
+      setWinningPositions([]);
     }
+    
+    // Return whether the game is over
+    return gameIsOver;
   };
 
   const makeMove = async (column) => {
@@ -120,7 +132,7 @@ function App() {
       const newBoard = JSON.parse(JSON.stringify(board)); // Deep copy
       let validMove = false;
       // Find lowest empty row in selected column
-      for (let row = 5; row >= 0; row--) {
+      for (let row = newBoard.length - 1; row >= 0; row--) {
         if (newBoard[row][column] === 0) {
           // Create a copy of the board and place the player's piece
           newBoard[row][column] = 1; // Player is 1
@@ -137,12 +149,13 @@ function App() {
         return;
       }
 
-      // Now send the move to the server
+      // One request makes our move and the AI's reply; the response holds the
+      // board after each, one per line
       const formData = new URLSearchParams();
       formData.append('column', column);
 
       console.log("Sending move to server...");
-      const response = await fetch('http://localhost:8080/move', {
+      const response = await fetch('http://localhost:8080/play', {
         method: 'POST',
         headers: {
           'Content-Type': 'application/x-www-form-urlencoded',
@@ -154,59 +167,18 @@ function App() {
         throw new Error('Move failed');
       }
 
-      // Get latest board state from server and check if game is over
-      const isGameOver = await fetchBoardState();
+      const [afterPlayer, afterAI] = (await response.text()).split('\n');
+      const isGameOver = applyBoardState(afterPlayer);
       console.log("After player move, gameOver =", isGameOver);
-
-      // Check if the game is over after player's move
-      if (isGameOver) {
-        console.log("Game over after player move");
-        setIsAIMove(false);
-        return;
+      if (!isGameOver) {
+        applyBoardState(afterAI);
+        console.log("Board updated after AI move");
       }
-
-      // Make AI move with a small delay
-      console.log("Triggering AI move in 1 second...");
-      setTimeout(makeAIMove, 1000);
     } catch (error) {
       console.error('Error making move:', error);
       // Refresh board state to correct any inconsistencies
       fetchBoardState();
-      setIsAIMove(false);
-    }
-  };
-
-  const makeAIMove = async () => {
-    console.log("🤖 AI MAKING MOVE - START");
-    console.log("Game state before AI move:", { gameOver, winner, isAIMove });
-    
-    try {
-      console.log("Sending AI move request to server...");
-      const aiResponse = await fetch('http://localhost:8080/ai-move', {
-        method: 'POST',
-        headers: {
-          'Content-Type': 'application/x-www-form-urlencoded',
-        },
-      });
-
-      console.log("AI move response status:", aiResponse.status);
-      
-      if (!aiResponse.ok) {
-        throw new Error(`AI move failed with status ${aiResponse.status}`);
-      }
-      
-      const responseText = await aiResponse.text();
-      console.log("AI move response body:", responseText);
-
-      // Update the board
-      await fetchBoardState();
-      console.log("Board state fetched after AI move");
-    } catch (error) {
-      console.error('❌ Error making AI move:', error);
-      console.log("Attempting to recover by fetching the current board state...");
-      await fetchBoardState();
     } finally {
-      console.log("🤖 AI MAKING MOVE - END");
       setIsAIMove(false);
     }
   };